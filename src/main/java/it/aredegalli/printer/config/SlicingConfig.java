@@ -1,14 +1,19 @@
 package it.aredegalli.printer.config;
 
+import it.aredegalli.printer.service.slicing.limit.SlicingConcurrencyLimiter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.http.client.ClientHttpRequestFactoryBuilder;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.retry.annotation.EnableRetry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
 import java.time.Duration;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 @EnableRetry
@@ -21,22 +26,98 @@ public class SlicingConfig {
     @Value("${slicing.engines.external.connection-timeout-seconds:30}")
     private int connectionTimeoutSeconds;
 
+    @Value("${slicing.queue.processing.queue-capacity:0}")
+    private int queueCapacity;
+
+    @Value("${slicing.queue.processing.shutdown-drain-seconds:120}")
+    private int shutdownDrainSeconds;
+
+    @Value("${slicing.analysis.index-threads:1}")
+    private int indexThreads;
+
+    @Value("${slicing.engines.health.probe-threads:2}")
+    private int probeThreads;
+
+    @Value("${slicing.engines.health.connect-timeout-ms:2000}")
+    private long probeConnectTimeoutMs;
+
+    @Value("${slicing.engines.health.read-timeout-ms:5000}")
+    private long probeReadTimeoutMs;
+
     @Bean("slicingRestTemplate")
     public RestTemplate slicingRestTemplate(RestTemplateBuilder builder) {
         log.info("Configuring slicing RestTemplate with timeout: {}s, connection timeout: {}s",
                 timeoutSeconds, connectionTimeoutSeconds);
 
+        // One shared JDK HttpClient keeps connections to the CuraEngine instances alive across jobs
         return builder
+                .requestFactoryBuilder(ClientHttpRequestFactoryBuilder.jdk()
+                        .withHttpClientCustomizer(client -> client.version(HttpClient.Version.HTTP_1_1)))
                 .connectTimeout(Duration.ofSeconds(connectionTimeoutSeconds))
                 .readTimeout(Duration.ofSeconds(timeoutSeconds))
                 .build();
     }
 
+    /**
+     * Bounded pool running slicing jobs; submissions beyond its capacity are rejected, and running
+     * jobs are given time to finish when the application shuts down
+     */
+    @Bean("slicingTaskExecutor")
+    public ThreadPoolTaskExecutor slicingTaskExecutor(SlicingConcurrencyLimiter concurrencyLimiter) {
+        // Sized for the highest limit the adaptive limiter may reach; the limiter decides how many run
+        int workers = concurrencyLimiter.getMaxLimit();
+        log.info("Configuring slicing executor: {} workers, queue capacity: {}", workers, queueCapacity);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("slicing-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(shutdownDrainSeconds);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Loads and builds G-code indexes in the background so telemetry never waits on a full file scan
+     */
+    @Bean("gcodeIndexExecutor")
+    public ThreadPoolTaskExecutor gcodeIndexExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(indexThreads);
+        executor.setMaxPoolSize(indexThreads);
+        executor.setQueueCapacity(64);
+        executor.setThreadNamePrefix("gcode-index-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Short timeouts so that an unresponsive endpoint only delays its own probe by a few seconds
+     */
     @Bean("healthCheckRestTemplate")
     public RestTemplate healthCheckRestTemplate(RestTemplateBuilder builder) {
         return builder
-                .connectTimeout(Duration.ofSeconds(10))
-                .readTimeout(Duration.ofSeconds(15))
+                .connectTimeout(Duration.ofMillis(probeConnectTimeoutMs))
+                .readTimeout(Duration.ofMillis(probeReadTimeoutMs))
                 .build();
     }
+
+    /**
+     * Runs engine health probes off the shared scheduler thread; a probe still running is not queued again
+     */
+    @Bean("healthProbeExecutor")
+    public ThreadPoolTaskExecutor healthProbeExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(probeThreads);
+        executor.setMaxPoolSize(probeThreads);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("engine-probe-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
 }
\ No newline at end of file
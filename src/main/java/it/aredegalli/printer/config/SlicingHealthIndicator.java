@@ -23,6 +23,7 @@ public class SlicingHealthIndicator implements HealthIndicator {
             Map<String, String> engines = engineSelector.getAvailableEngines();
             builder.withDetail("available_engines", engines.size());
             builder.withDetail("engines", engines);
+            builder.withDetail("engine_availability", engineSelector.getEngineAvailability());
 
             // Check default engine
             try {
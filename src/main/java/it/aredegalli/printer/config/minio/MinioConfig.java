@@ -11,6 +11,7 @@ import software.amazon.awssdk.http.apache.ApacheHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 
 import java.net.URI;
 import java.time.Duration;
@@ -33,6 +34,9 @@ public class MinioConfig {
     @Value("${minio.region:us-east-1}")
     private String region;
 
+    @Value("${minio.public-endpoint:}")
+    private String publicEndpoint;
+
     @Bean
     public S3Client s3Client() {
         SdkHttpClient httpClient = ApacheHttpClient.builder()
@@ -65,4 +69,25 @@ public class MinioConfig {
                 )
                 .build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Signs URLs for clients reading from object storage directly, so they name the endpoint those clients reach
+     */
+    @Bean
+    public S3Presigner s3Presigner() {
+        return S3Presigner.builder()
+                .endpointOverride(URI.create(publicEndpoint.isBlank() ? host + ":" + port : publicEndpoint))
+                .credentialsProvider(
+                        StaticCredentialsProvider.create(
+                                AwsBasicCredentials.create(accessKey, secretKey)
+                        )
+                )
+                .region(Region.of(region))
+                .serviceConfiguration(
+                        S3Configuration.builder()
+                                .pathStyleAccessEnabled(true)
+                                .build()
+                )
+                .build();
+    }
+}
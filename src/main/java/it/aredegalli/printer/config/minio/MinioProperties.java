@@ -11,4 +11,5 @@ public class MinioProperties {
     private String secretKey;
     private String port;
     private String region;
+    private String publicEndpoint;
 }
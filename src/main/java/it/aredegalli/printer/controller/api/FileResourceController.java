@@ -1,10 +1,18 @@
 package it.aredegalli.printer.controller.api;
 
+import it.aredegalli.printer.dto.resource.PresignedUploadDto;
+import it.aredegalli.printer.dto.resource.PresignedUploadRequestDto;
+import it.aredegalli.printer.dto.resource.UploadSessionDto;
+import it.aredegalli.printer.dto.resource.UploadSessionRequestDto;
 import it.aredegalli.printer.service.log.LogService;
+import it.aredegalli.printer.service.resource.FileDownloadHelper;
 import it.aredegalli.printer.service.resource.FileResourceService;
+import it.aredegalli.printer.service.resource.UploadSessionService;
 import it.aredegalli.printer.util.PrinterCostants;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -13,7 +21,6 @@ import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.UUID;
 
 @RestController
@@ -21,7 +28,12 @@ import java.util.UUID;
 @RequestMapping("/api/file")
 public class FileResourceController {
 
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+    private static final String UPLOAD_CHECKSUM = "Upload-Checksum";
+
     private final FileResourceService fileResourceService;
+    private final FileDownloadHelper fileDownloadHelper;
+    private final UploadSessionService uploadSessionService;
     private final LogService log;
 
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -46,16 +58,88 @@ public class FileResourceController {
         }
     }
 
+    /**
+     * First step of a direct upload of a model: the client PUTs the file to the returned URL, then calls
+     * {@code /upload/finalize}, which registers the file and its Model
+     */
+    @PostMapping("/upload/presign")
+    public ResponseEntity<PresignedUploadDto> presignUpload(@RequestBody PresignedUploadRequestDto request) {
+        log.info("FileResourceController", "Direct upload requested for file: " + request.getFileName());
+        return ResponseEntity.ok(fileResourceService.presignUpload(request, PrinterCostants.PRINTER_MODEL_STORAGE_BUCKET_NAME, true));
+    }
+
+    @PostMapping("/upload/image/presign")
+    public ResponseEntity<PresignedUploadDto> presignImageUpload(@RequestBody PresignedUploadRequestDto request) {
+        log.info("FileResourceController", "Direct image upload requested for file: " + request.getFileName());
+        return ResponseEntity.ok(fileResourceService.presignUpload(request, PrinterCostants.PRINTER_IMAGE_STORAGE_BUCKET_NAME, false));
+    }
+
+    @PostMapping("/upload/finalize")
+    public ResponseEntity<UUID> finalizeUpload(@RequestParam("token") @NotNull String token) {
+        return ResponseEntity.ok(fileResourceService.finalizeUpload(token).getId());
+    }
+
+    /**
+     * Resumable upload of a model: chunks are PATCHed to {@code /upload/resumable/{id}} from the offset
+     * the session reports, then {@code /upload/resumable/{id}/complete} registers the file and its Model
+     */
+    @PostMapping("/upload/resumable")
+    public ResponseEntity<UploadSessionDto> createUploadSession(@RequestBody UploadSessionRequestDto request) {
+        log.info("FileResourceController", "Resumable upload requested for file: " + request.getFileName());
+        return ResponseEntity.ok(uploadSessionService.create(request, PrinterCostants.PRINTER_MODEL_STORAGE_BUCKET_NAME, true));
+    }
+
+    @PostMapping("/upload/image/resumable")
+    public ResponseEntity<UploadSessionDto> createImageUploadSession(@RequestBody UploadSessionRequestDto request) {
+        log.info("FileResourceController", "Resumable image upload requested for file: " + request.getFileName());
+        return ResponseEntity.ok(uploadSessionService.create(request, PrinterCostants.PRINTER_IMAGE_STORAGE_BUCKET_NAME, false));
+    }
+
+    @GetMapping("/upload/resumable/{id}")
+    public ResponseEntity<UploadSessionDto> getUploadSession(@PathVariable("id") UUID id) {
+        UploadSessionDto session = uploadSessionService.get(id);
+        return ResponseEntity.ok()
+                .header(UPLOAD_OFFSET, String.valueOf(session.getOffset()))
+                .cacheControl(CacheControl.noStore())
+                .body(session);
+    }
+
+    @PatchMapping("/upload/resumable/{id}")
+    public ResponseEntity<Void> appendUploadChunk(@PathVariable("id") UUID id,
+                                                  @RequestHeader(UPLOAD_OFFSET) long offset,
+                                                  @RequestHeader(value = UPLOAD_CHECKSUM, required = false) String checksum,
+                                                  HttpServletRequest request) throws IOException {
+        long committed = uploadSessionService.append(id, offset, checksum, request.getInputStream());
+        return ResponseEntity.noContent()
+                .header(UPLOAD_OFFSET, String.valueOf(committed))
+                .build();
+    }
+
+    @PostMapping("/upload/resumable/{id}/complete")
+    public ResponseEntity<UUID> completeUploadSession(@PathVariable("id") UUID id) {
+        log.info("FileResourceController", "Completing resumable upload: " + id);
+        return ResponseEntity.ok(uploadSessionService.complete(id).getId());
+    }
+
+    @DeleteMapping("/upload/resumable/{id}")
+    public ResponseEntity<Void> abortUploadSession(@PathVariable("id") UUID id) {
+        uploadSessionService.abort(id);
+        return ResponseEntity.noContent().build();
+    }
+
     @GetMapping("/download")
-    public ResponseEntity<StreamingResponseBody> download(@RequestParam("id") @NotNull UUID id) {
+    public ResponseEntity<StreamingResponseBody> download(@RequestParam("id") @NotNull UUID id,
+                                                          @RequestHeader HttpHeaders headers) {
         log.info("FileResourceController", "Download requested for file ID: " + id);
-        return _download(fileResourceService.download(id), id);
+        return fileDownloadHelper.download(fileResourceService.getById(id), id.toString(), headers);
     }
 
     @GetMapping("/download/glb")
-    public ResponseEntity<StreamingResponseBody> downloadGlb(@RequestParam("id") @NotNull UUID id) {
+    public ResponseEntity<StreamingResponseBody> downloadGlb(@RequestParam("id") @NotNull UUID id,
+                                                             @RequestHeader HttpHeaders headers) {
         log.info("FileResourceController", "GLB Download requested for file ID: " + id);
-        return _download(fileResourceService.downloadGlb(id), id);
+        return fileDownloadHelper.derived(fileResourceService.getById(id), "glb", id.toString(), headers,
+                () -> fileResourceService.downloadGlb(id));
     }
 
     @GetMapping("/download/ensure")
@@ -63,25 +147,4 @@ public class FileResourceController {
         log.info("FileResourceController", "Ensuring download resource for file ID: " + resourceId + " and driver ID: " + driverId);
         return ResponseEntity.ok(this.fileResourceService.ensureResource(resourceId, driverId));
     }
-
-    private ResponseEntity<StreamingResponseBody> _download(InputStream inputStream, UUID id) {
-        StreamingResponseBody responseBody = outputStream -> {
-            try (inputStream) {
-                byte[] buffer = new byte[4096];
-                int bytesRead;
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
-                }
-                outputStream.flush();
-            } catch (IOException e) {
-                log.error("FileResourceController", "Error streaming file with ID: " + id);
-                throw new RuntimeException("Error streaming file", e);
-            }
-        };
-
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + id + "\"")
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(responseBody);
-    }
 }
@@ -1,5 +1,6 @@
 package it.aredegalli.printer.controller.api.slicing;
 
+import it.aredegalli.printer.dto.slicing.SlicingMaterialQuoteDto;
 import it.aredegalli.printer.dto.slicing.SlicingResultDto;
 import it.aredegalli.printer.service.log.LogService;
 import it.aredegalli.printer.service.slicing.SlicingService;
@@ -31,6 +32,12 @@ public class SlicingController {
         return ResponseEntity.ok(slicingService.getAllSlicingResultBySourceId(id));
     }
 
+    @GetMapping("/quote")
+    public ResponseEntity<List<SlicingMaterialQuoteDto>> getMaterialQuotes(@RequestParam("id") @NotNull UUID id) {
+        log.info("SlicingController", "getMaterialQuotes with id: " + id);
+        return ResponseEntity.ok(slicingService.getMaterialQuotes(id));
+    }
+
     @DeleteMapping()
     public ResponseEntity<Void> deleteSlicingResultById(@RequestParam("id") @NotNull UUID id) {
         log.info("SlicingController", "deleteSlicingResultById with id: " + id);
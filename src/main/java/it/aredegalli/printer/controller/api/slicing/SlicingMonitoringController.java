@@ -4,6 +4,7 @@ import it.aredegalli.printer.enums.slicing.SlicingStatus;
 import it.aredegalli.printer.repository.slicing.queue.SlicingQueueRepository;
 import it.aredegalli.printer.scheduled.slicing.SlicingQueueProcessor;
 import it.aredegalli.printer.service.log.LogService;
+import it.aredegalli.printer.service.slicing.limit.SlicingConcurrencyLimiter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.http.ResponseEntity;
@@ -23,6 +24,7 @@ public class SlicingMonitoringController {
     private final SlicingQueueRepository slicingQueueRepository;
     private final SlicingQueueProcessor queueProcessor;
     private final LogService logService;
+    private final SlicingConcurrencyLimiter concurrencyLimiter;
 
     @GetMapping("/stats")
     public ResponseEntity<Map<String, Object>> getQueueStatistics() {
@@ -133,6 +135,12 @@ public class SlicingMonitoringController {
             metrics.put("total_processed", queueProcessor.getProcessedCount());
             metrics.put("total_failed", queueProcessor.getFailedCount());
             metrics.put("currently_processing", queueProcessor.getCurrentlyProcessing());
+            metrics.put("executor_active", queueProcessor.getActiveCount());
+            metrics.put("executor_queued", queueProcessor.getQueuedCount());
+            metrics.put("executor_rejected", queueProcessor.getRejectedCount());
+            metrics.put("concurrency_limit", concurrencyLimiter.getLimit());
+            metrics.put("concurrency_in_flight", concurrencyLimiter.getInFlight());
+            metrics.put("concurrency_limit_history", concurrencyLimiter.getHistory());
 
             long totalProcessed = queueProcessor.getProcessedCount();
             long totalFailed = queueProcessor.getFailedCount();
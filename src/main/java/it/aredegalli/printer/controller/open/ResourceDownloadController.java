@@ -1,19 +1,28 @@
 package it.aredegalli.printer.controller.open;
 
+import it.aredegalli.printer.model.resource.FileResource;
+import it.aredegalli.printer.service.job.stream.JobGcodeStream;
+import it.aredegalli.printer.service.job.stream.JobGcodeStreamService;
+import it.aredegalli.printer.service.log.LogService;
+import it.aredegalli.printer.service.resource.FileDownloadHelper;
 import it.aredegalli.printer.service.resource.FileResourceService;
+import it.aredegalli.printer.service.storage.GzipMembers;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.net.URI;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/public/download")
@@ -21,26 +30,59 @@ import java.io.InputStream;
 public class ResourceDownloadController {
 
     private final FileResourceService fileResourceService;
+    private final JobGcodeStreamService jobGcodeStreamService;
+    private final FileDownloadHelper fileDownloadHelper;
+    private final LogService log;
 
+    /**
+     * Files stored compressed are sent as stored to clients accepting gzip, and decompressed on the fly for the others.
+     * Job streams depend on the job's progress and are never cached; files are, see {@link FileDownloadHelper}.
+     * With direct downloads enabled, content sent as stored is not proxied: once the token is validated the client
+     * is redirected to a short-lived URL on object storage.
+     */
     @GetMapping
-    public ResponseEntity<StreamingResponseBody> downloadResource(@RequestParam("token") @NotNull String token) {
-        InputStream inputStream = fileResourceService.download(token);
-        StreamingResponseBody responseBody = outputStream -> {
-            try (inputStream) {
-                byte[] buffer = new byte[4096];
-                int bytesRead;
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
-                }
-                outputStream.flush();
-            } catch (IOException e) {
-                throw new RuntimeException("Error streaming file", e);
+    public ResponseEntity<StreamingResponseBody> downloadResource(@RequestParam("token") @NotNull String token,
+                                                                  @RequestHeader HttpHeaders headers) {
+        boolean acceptsGzip = FileDownloadHelper.acceptsGzip(headers.getFirst(HttpHeaders.ACCEPT_ENCODING));
+
+        Optional<JobGcodeStream> jobStream = jobGcodeStreamService.open(token);
+        if (jobStream.isPresent()) {
+            JobGcodeStream stream = jobStream.get();
+            Optional<URI> direct = stream.presignDownload(acceptsGzip);
+            if (direct.isPresent()) {
+                log.info("ResourceDownloadController", "Direct download of " + stream.getFileName());
+                return redirect(direct.get());
+            }
+
+            boolean compressed = acceptsGzip && stream.isStoredCompressed();
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + stream.getFileName() + "\"")
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .cacheControl(CacheControl.noStore())
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM);
+            if (compressed) {
+                builder.header(HttpHeaders.CONTENT_ENCODING, GzipMembers.ENCODING);
             }
-        };
+            return builder.body(outputStream -> stream.writeTo(outputStream, compressed));
+        }
+
+        FileResource fileResource = fileResourceService.resolve(token);
+        Optional<URI> direct = fileResourceService.presignDownload(fileResource, token, acceptsGzip);
+        if (direct.isPresent()) {
+            log.info("ResourceDownloadController", "Direct download of file " + fileResource.getId());
+            return redirect(direct.get());
+        }
+        return fileDownloadHelper.download(fileResource, token, headers);
+    }
 
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + token + "\"")
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(responseBody);
+    /**
+     * The signed URL expires, so the redirect must not be cached
+     */
+    private static ResponseEntity<StreamingResponseBody> redirect(URI location) {
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .location(location)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .cacheControl(CacheControl.noStore())
+                .build();
     }
 }
@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -11,5 +13,6 @@ public class PrinterHeartbeatResponseDto {
 
     private String driverId;
     private String statusCode;
+    private List<String> capabilities;
 
 }
\ No newline at end of file
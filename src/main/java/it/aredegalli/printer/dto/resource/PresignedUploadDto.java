@@ -0,0 +1,29 @@
+package it.aredegalli.printer.dto.resource;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PresignedUploadDto {
+
+    /**
+     * URL to PUT the content to, with exactly the given headers
+     */
+    private String url;
+    private Map<String, String> headers;
+    private Instant expiresAt;
+
+    /**
+     * Passed to the finalize call once the PUT succeeded
+     */
+    private String uploadToken;
+
+}
@@ -0,0 +1,23 @@
+package it.aredegalli.printer.dto.resource;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PresignedUploadRequestDto {
+
+    private String fileName;
+    private String contentType;
+    private long size;
+
+    /**
+     * SHA-256 of the content, in hex; object storage rejects an upload not matching it
+     */
+    private String sha256;
+
+}
@@ -0,0 +1,32 @@
+package it.aredegalli.printer.dto.resource;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadSessionDto {
+
+    private UUID id;
+    private String fileName;
+    private long size;
+
+    /**
+     * Every chunk but the last must be exactly this long
+     */
+    private int chunkSize;
+
+    /**
+     * Bytes stored so far; the next chunk starts here
+     */
+    private long offset;
+    private Instant expiresAt;
+
+}
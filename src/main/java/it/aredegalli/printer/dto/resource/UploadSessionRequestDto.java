@@ -0,0 +1,18 @@
+package it.aredegalli.printer.dto.resource;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadSessionRequestDto {
+
+    private String fileName;
+    private String contentType;
+    private long size;
+
+}
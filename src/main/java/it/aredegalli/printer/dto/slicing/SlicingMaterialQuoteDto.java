@@ -0,0 +1,29 @@
+package it.aredegalli.printer.dto.slicing;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SlicingMaterialQuoteDto {
+
+    private UUID slicingResultId;
+    private UUID materialId;
+    private String materialName;
+    private String typeName;
+    private String brandName;
+
+    private BigDecimal diameterMm;
+    private BigDecimal filamentLengthMm;
+    private BigDecimal volumeMm3;
+    private BigDecimal weightG;
+    private BigDecimal cost;
+
+}
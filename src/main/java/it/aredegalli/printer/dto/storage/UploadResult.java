@@ -8,4 +8,7 @@ import lombok.Data;
 public class UploadResult {
     private final String objectKey;
     private final byte[] hashBytes;
+    private final long size;
+    private final long storedSize;
+    private final String contentEncoding;
 }
@@ -3,6 +3,7 @@ package it.aredegalli.printer.mapper.driver;
 import it.aredegalli.printer.dto.driver.DriverDto;
 import it.aredegalli.printer.model.driver.Driver;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 
 import java.util.List;
 
@@ -11,6 +12,7 @@ public interface DriverMapper {
 
     DriverDto toDto(Driver driver);
 
+    @Mapping(target = "binaryGcode", ignore = true)
     Driver toEntity(DriverDto dto);
 
     List<DriverDto> toDtoList(List<Driver> drivers);
@@ -24,6 +24,10 @@ public interface SlicingQueueMapper {
     @Mapping(source = "modelId", target = "model", qualifiedByName = "uuidToModel")
     @Mapping(source = "slicingPropertyId", target = "slicingProperty", qualifiedByName = "uuidToSlicingProperty")
     @Mapping(source = "status", target = "status", qualifiedByName = "slicingStatusToString")
+    @Mapping(target = "workerId", ignore = true)
+    @Mapping(target = "leaseExpiresAt", ignore = true)
+    @Mapping(target = "attemptCount", ignore = true)
+    @Mapping(target = "nextAttemptAt", ignore = true)
     SlicingQueue toEntity(SlicingQueueDto dto);
 
     List<SlicingQueueDto> toDtoList(List<SlicingQueue> entities);
@@ -63,5 +67,9 @@ public interface SlicingQueueMapper {
     @Mapping(source = "modelId", target = "model", qualifiedByName = "uuidToModel")
     @Mapping(source = "slicingPropertyId", target = "slicingProperty", qualifiedByName = "uuidToSlicingProperty")
     @Mapping(source = "status", target = "status", qualifiedByName = "slicingStatusToString")
+    @Mapping(target = "workerId", ignore = true)
+    @Mapping(target = "leaseExpiresAt", ignore = true)
+    @Mapping(target = "attemptCount", ignore = true)
+    @Mapping(target = "nextAttemptAt", ignore = true)
     void updateEntityFromDto(SlicingQueueDto dto, @MappingTarget SlicingQueue entity);
 }
\ No newline at end of file
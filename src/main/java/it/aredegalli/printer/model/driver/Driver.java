@@ -37,4 +37,7 @@ public class Driver {
 
     @Lob
     private String publicKey;
+
+    @Column(name = "binary_gcode")
+    private Boolean binaryGcode;
 }
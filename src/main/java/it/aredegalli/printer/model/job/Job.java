@@ -44,6 +44,9 @@ public class Job {
     @Column(name = "start_offset_line")
     private Integer startOffsetLine;
 
+    @Column(name = "stream_prefix_lines")
+    private Integer streamPrefixLines;
+
     @Column(name = "created_at")
     private Instant createdAt;
 
@@ -33,6 +33,12 @@ public class FileResource {
     @Column(name = "file_size", nullable = false)
     private long fileSize;
 
+    @Column(name = "content_encoding")
+    private String contentEncoding;
+
+    @Column(name = "compressed_size")
+    private Long compressedSize;
+
     @Column(name = "file_hash", nullable = false, unique = true)
     private byte[] fileHash;
 
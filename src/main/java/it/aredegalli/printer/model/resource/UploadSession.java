@@ -0,0 +1,86 @@
+package it.aredegalli.printer.model.resource;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A resumable upload: the file arrives in chunks of a fixed size, each stored as a part of a multipart upload,
+ * and is registered as a {@link FileResource} once complete
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "upload_session")
+public class UploadSession {
+
+    @Id
+    @GeneratedValue
+    @Column(nullable = false, updatable = false)
+    private UUID id;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(name = "file_type", nullable = false)
+    private String fileType;
+
+    @Column(name = "file_size", nullable = false)
+    private long fileSize;
+
+    @Column(name = "chunk_size", nullable = false)
+    private int chunkSize;
+
+    @Column(name = "bucket_name", nullable = false)
+    private String bucketName;
+
+    /**
+     * Whether the file is a model, registered with its GLB conversion and its Model
+     */
+    @Column(name = "model", nullable = false)
+    private boolean model;
+
+    @Column(name = "object_key", nullable = false)
+    private String objectKey;
+
+    @Column(name = "storage_upload_id", nullable = false)
+    private String storageUploadId;
+
+    /**
+     * ETags of the parts stored so far, in order
+     */
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "part_etags", columnDefinition = "jsonb", nullable = false)
+    @Builder.Default
+    private List<String> partETags = new ArrayList<>();
+
+    @Column(name = "committed_offset", nullable = false)
+    private long committedOffset;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    /**
+     * Key of the stored file once the multipart upload is completed; a failed registration is retried from it
+     */
+    @Column(name = "stored_key")
+    private String storedKey;
+
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
+}
@@ -4,8 +4,11 @@ import it.aredegalli.printer.model.slicing.result.SlicingResult;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Digits;
 import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.math.BigDecimal;
+import java.util.Map;
 import java.util.UUID;
 
 @Getter
@@ -50,4 +53,18 @@ public class SlicingMetric {
     @Digits(integer = 8, fraction = 2)
     @Column(name = "support_volume_mm3", columnDefinition = "DECIMAL(10,2)")
     private BigDecimal supportVolumeMm3;
+
+    /**
+     * Filament fed by the whole print, independent of the material
+     */
+    @Digits(integer = 10, fraction = 2)
+    @Column(name = "filament_length_mm", columnDefinition = "DECIMAL(12,2)")
+    private BigDecimal filamentLengthMm;
+
+    /**
+     * Filament fed per {@link it.aredegalli.printer.service.slicing.analysis.ExtrusionFeature}, in mm
+     */
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "feature_extrusion_mm", columnDefinition = "jsonb")
+    private Map<String, BigDecimal> featureExtrusionMm;
 }
\ No newline at end of file
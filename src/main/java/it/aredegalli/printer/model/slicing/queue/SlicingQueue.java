@@ -57,4 +57,18 @@ public class SlicingQueue {
     @Column(name = "created_by_user_id")
     private String createdByUserId;
 
+    @Size(max = 100)
+    @Column(name = "worker_id", length = 100)
+    private String workerId;
+
+    @Column(name = "lease_expires_at")
+    private Instant leaseExpiresAt;
+
+    @ColumnDefault("0")
+    @Column(name = "attempt_count")
+    private Integer attemptCount;
+
+    @Column(name = "next_attempt_at")
+    private Instant nextAttemptAt;
+
 }
\ No newline at end of file
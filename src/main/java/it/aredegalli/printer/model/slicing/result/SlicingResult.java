@@ -16,7 +16,9 @@ import java.util.UUID;
 @AllArgsConstructor
 @Builder
 @Entity
-@Table(name = "slicing_result")
+@Table(name = "slicing_result", indexes = {
+        @Index(name = "idx_slicing_result_cache_key", columnList = "cache_key")
+})
 public class SlicingResult {
 
     @Id
@@ -32,6 +34,10 @@ public class SlicingResult {
     @JoinColumn(name = "generated_resource_id", nullable = false)
     private FileResource generatedFile;
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "binary_resource_id")
+    private FileResource binaryFile;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "slicing_property_id", nullable = false)
     private SlicingProperty slicingProperty;
@@ -39,6 +45,9 @@ public class SlicingResult {
     @Column(nullable = false)
     private long lines;
 
+    @Column(name = "cache_key", length = 64)
+    private String cacheKey;
+
     @Column(name = "created_at", nullable = false, columnDefinition = "TIMESTAMPTZ DEFAULT now()")
     private Instant createdAt;
 
@@ -4,6 +4,10 @@ import it.aredegalli.printer.enums.job.JobStatusEnum;
 import it.aredegalli.printer.model.job.Job;
 import it.aredegalli.printer.model.printer.Printer;
 import it.aredegalli.printer.repository.UUIDRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.List;
@@ -22,4 +26,9 @@ public interface JobRepository extends UUIDRepository<Job> {
     List<Job> findByStatusAndStartedAtBefore(JobStatusEnum status, Instant startedAtBefore);
 
     long countByStatus(JobStatusEnum status);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Job j SET j.streamPrefixLines = :lines WHERE j.id = :id")
+    int updateStreamPrefixLines(@Param("id") UUID id, @Param("lines") Integer lines);
 }
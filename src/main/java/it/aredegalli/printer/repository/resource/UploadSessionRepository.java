@@ -0,0 +1,13 @@
+package it.aredegalli.printer.repository.resource;
+
+import it.aredegalli.printer.model.resource.UploadSession;
+import it.aredegalli.printer.repository.UUIDRepository;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface UploadSessionRepository extends UUIDRepository<UploadSession> {
+
+    List<UploadSession> findByExpiresAtBefore(Instant cutoff);
+
+}
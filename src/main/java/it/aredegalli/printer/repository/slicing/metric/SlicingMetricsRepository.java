@@ -2,7 +2,10 @@ package it.aredegalli.printer.repository.slicing.metric;
 
 import it.aredegalli.printer.model.slicing.metric.SlicingMetric;
 import it.aredegalli.printer.repository.UUIDRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -11,4 +14,11 @@ public interface SlicingMetricsRepository extends UUIDRepository<SlicingMetric>
     Optional<SlicingMetric> findBySlicingResultId(UUID slicingResultId);
 
     void deleteBySlicingResultId(UUID slicingResultId);
+
+    /**
+     * The metrics of a slicing result paired with every material, with its type and brand names, in one query
+     */
+    @Query("SELECT s, m, t.name, b.name FROM SlicingMetric s, Material m LEFT JOIN m.type t LEFT JOIN m.brand b " +
+            "WHERE s.slicingResult.id = :slicingResultId ORDER BY m.name ASC")
+    List<Object[]> findWithMaterials(@Param("slicingResultId") UUID slicingResultId);
 }
\ No newline at end of file
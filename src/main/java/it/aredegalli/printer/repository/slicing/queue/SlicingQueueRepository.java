@@ -2,12 +2,16 @@ package it.aredegalli.printer.repository.slicing.queue;
 
 import it.aredegalli.printer.model.slicing.queue.SlicingQueue;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
@@ -18,6 +22,13 @@ public interface SlicingQueueRepository extends JpaRepository<SlicingQueue, UUID
             "ORDER BY sq.priority DESC, sq.createdAt ASC")
     List<SlicingQueue> findNextInQueue();
 
+    @Query("SELECT sq FROM SlicingQueue sq " +
+            "JOIN FETCH sq.model m " +
+            "JOIN FETCH m.fileResource " +
+            "JOIN FETCH sq.slicingProperty " +
+            "WHERE sq.id = :id")
+    Optional<SlicingQueue> findForProcessing(@Param("id") UUID id);
+
     @Query("SELECT sq FROM SlicingQueue sq " +
             "WHERE sq.status = :status " +
             "ORDER BY sq.priority DESC, sq.createdAt ASC")
@@ -48,4 +59,86 @@ public interface SlicingQueueRepository extends JpaRepository<SlicingQueue, UUID
     List<SlicingQueue> findStaleProcessingJobs(
             @Param("status") String status,
             @Param("threshold") Instant threshold);
-}
\ No newline at end of file
+
+    /**
+     * Atomically move up to {@code limit} queued jobs that are due to processing under this worker's lease,
+     * counting the attempt. Rows locked by another node are skipped, so concurrent claimers never get the same job.
+     */
+    @Transactional
+    @Query(value = "UPDATE slicing_queue SET status = 'PRO', worker_id = :workerId, " +
+            "lease_expires_at = :leaseExpiresAt, started_at = COALESCE(started_at, now()), " +
+            "attempt_count = COALESCE(attempt_count, 0) + 1 " +
+            "WHERE id IN (SELECT id FROM slicing_queue " +
+            "WHERE status = 'QUE' " +
+            "AND (next_attempt_at IS NULL OR next_attempt_at <= now()) " +
+            "ORDER BY priority DESC, created_at ASC " +
+            "LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id", nativeQuery = true)
+    List<UUID> claimNext(@Param("workerId") String workerId,
+                         @Param("leaseExpiresAt") Instant leaseExpiresAt,
+                         @Param("limit") int limit);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE SlicingQueue sq SET sq.leaseExpiresAt = :leaseExpiresAt " +
+            "WHERE sq.workerId = :workerId AND sq.status = 'PRO' AND sq.id IN :ids")
+    int renewLeases(@Param("workerId") String workerId,
+                    @Param("ids") Collection<UUID> ids,
+                    @Param("leaseExpiresAt") Instant leaseExpiresAt);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE SlicingQueue sq SET sq.status = 'QUE', sq.workerId = NULL, sq.leaseExpiresAt = NULL " +
+            "WHERE sq.id = :id AND sq.workerId = :workerId AND sq.status = 'PRO'")
+    int releaseClaim(@Param("id") UUID id, @Param("workerId") String workerId);
+
+    /**
+     * Record the outcome of a job, only while this worker still holds its claim:
+     * a worker whose lease expired must not overwrite what the job's new owner does with it
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE SlicingQueue sq SET sq.status = 'COM', sq.completedAt = :now, sq.leaseExpiresAt = NULL " +
+            "WHERE sq.id = :id AND sq.workerId = :workerId AND sq.status = 'PRO'")
+    int completeClaim(@Param("id") UUID id, @Param("workerId") String workerId, @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE SlicingQueue sq SET sq.status = 'FAI', sq.completedAt = :now, sq.leaseExpiresAt = NULL, " +
+            "sq.errorMessage = :errorMessage " +
+            "WHERE sq.id = :id AND sq.workerId = :workerId AND sq.status = 'PRO'")
+    int failClaim(@Param("id") UUID id, @Param("workerId") String workerId, @Param("now") Instant now,
+                  @Param("errorMessage") String errorMessage);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE SlicingQueue sq SET sq.status = 'QUE', sq.workerId = NULL, sq.leaseExpiresAt = NULL, " +
+            "sq.nextAttemptAt = :nextAttemptAt, sq.errorMessage = :errorMessage " +
+            "WHERE sq.id = :id AND sq.workerId = :workerId AND sq.status = 'PRO'")
+    int retryClaim(@Param("id") UUID id, @Param("workerId") String workerId,
+                   @Param("nextAttemptAt") Instant nextAttemptAt, @Param("errorMessage") String errorMessage);
+
+    /**
+     * Put back in the queue the jobs whose worker stopped renewing its lease, while they have attempts left;
+     * the expired attempt was counted when the job was claimed
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE SlicingQueue sq SET sq.status = 'QUE', sq.workerId = NULL, sq.leaseExpiresAt = NULL, " +
+            "sq.errorMessage = :errorMessage " +
+            "WHERE sq.status = 'PRO' AND sq.leaseExpiresAt < :now AND COALESCE(sq.attemptCount, 0) < :maxAttempts")
+    int requeueExpiredLeases(@Param("now") Instant now, @Param("maxAttempts") int maxAttempts,
+                             @Param("errorMessage") String errorMessage);
+
+    /**
+     * Fail the jobs whose worker stopped renewing its lease on their last attempt,
+     * so a job that keeps bringing its worker down is not claimed forever
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE SlicingQueue sq SET sq.status = 'FAI', sq.completedAt = :now, sq.leaseExpiresAt = NULL, " +
+            "sq.errorMessage = :errorMessage " +
+            "WHERE sq.status = 'PRO' AND sq.leaseExpiresAt < :now AND COALESCE(sq.attemptCount, 0) >= :maxAttempts")
+    int failExpiredLeases(@Param("now") Instant now, @Param("maxAttempts") int maxAttempts,
+                          @Param("errorMessage") String errorMessage);
+}
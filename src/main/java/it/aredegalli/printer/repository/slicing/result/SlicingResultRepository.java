@@ -1,13 +1,28 @@
 package it.aredegalli.printer.repository.slicing.result;
 
+import it.aredegalli.printer.model.resource.FileResource;
 import it.aredegalli.printer.model.slicing.result.SlicingResult;
 import it.aredegalli.printer.repository.UUIDRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface SlicingResultRepository extends UUIDRepository<SlicingResult> {
 
     List<SlicingResult> findBySourceFile_Id(UUID sourceFileId);
 
+    Optional<SlicingResult> findFirstByCacheKeyOrderByCreatedAtDesc(String cacheKey);
+
+    Optional<SlicingResult> findFirstByCacheKeyAndSourceFile_IdAndSlicingProperty_Id(String cacheKey, UUID sourceFileId,
+                                                                                      UUID slicingPropertyId);
+
+    @Query("SELECT r.generatedFile FROM SlicingResult r WHERE r.id = :id")
+    Optional<FileResource> findGeneratedFile(@Param("id") UUID id);
+
+    @Query("SELECT r.binaryFile FROM SlicingResult r WHERE r.id = :id")
+    Optional<FileResource> findBinaryFile(@Param("id") UUID id);
+
 }
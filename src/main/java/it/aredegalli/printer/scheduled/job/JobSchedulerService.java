@@ -7,9 +7,9 @@ import it.aredegalli.printer.model.driver.Driver;
 import it.aredegalli.printer.model.job.Job;
 import it.aredegalli.printer.repository.driver.DriverRepository;
 import it.aredegalli.printer.repository.job.JobRepository;
+import it.aredegalli.printer.service.job.stream.JobGcodeStreamService;
 import it.aredegalli.printer.service.kafka.control.status.PrinterStatusControlService;
 import it.aredegalli.printer.service.log.LogService;
-import it.aredegalli.printer.service.resource.FileResourceService;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -34,7 +34,7 @@ public class JobSchedulerService {
 
     private final JobRepository jobRepository;
     private final DriverRepository driverRepository;
-    private final FileResourceService fileResourceService;
+    private final JobGcodeStreamService jobGcodeStreamService;
     private final PrinterStatusControlService printerStatusControlService;
     private final LogService logService;
 
@@ -133,13 +133,11 @@ public class JobSchedulerService {
 
             jobRepository.save(job);
 
-            String gcodeJwtToken = this.fileResourceService.ensureResource(
-                    job.getSlicingResult().getGeneratedFile().getId(), driver.getId());
+            // The streamed G-code already carries the start and end G-code and resumes at the job's offset
+            String gcodeJwtToken = this.jobGcodeStreamService.createDownloadToken(job, driver);
 
             PrinterStartRequestDto startRequest = PrinterStartRequestDto.builder()
                     .driverId(driver.getId().toString())
-                    .startGCode(driver.getCustomStartGCode())
-                    .endGCode(driver.getCustomEndGCode())
                     .gcodeUrl(this.deploymentUrl + "/public/download?token=" + gcodeJwtToken)
                     .build();
 
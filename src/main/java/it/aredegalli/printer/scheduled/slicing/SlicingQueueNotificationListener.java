@@ -0,0 +1,116 @@
+package it.aredegalli.printer.scheduled.slicing;
+
+import it.aredegalli.printer.service.log.LogService;
+import it.aredegalli.printer.service.slicing.event.SlicingQueuedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cross-node slicing dispatch over Postgres LISTEN/NOTIFY: every enqueue notifies the channel when its
+ * transaction commits, and every node listening on it tries to claim work right away.
+ * The listening connection is held for the life of the process, so it is opened apart from the pool.
+ */
+@Component
+@RequiredArgsConstructor
+public class SlicingQueueNotificationListener {
+
+    public static final String CHANNEL = "slicing_queue";
+
+    private final DataSourceProperties dataSourceProperties;
+    private final JdbcTemplate jdbcTemplate;
+    private final SlicingQueueProcessor slicingQueueProcessor;
+    private final LogService logService;
+
+    @Value("${slicing.queue.notify.enabled:true}")
+    private boolean notifyEnabled;
+
+    @Value("${slicing.queue.notify.reconnect-delay-ms:5000}")
+    private long reconnectDelayMs;
+
+    private volatile boolean running = false;
+    private Thread listenerThread;
+
+    /**
+     * NOTIFY is transactional in Postgres, so sending it before commit delivers it exactly when the job becomes visible
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onSlicingQueued(SlicingQueuedEvent event) {
+        // Retries are not claimable yet; the enqueuing node schedules their dispatch, the poll covers the rest
+        if (!notifyEnabled || !event.isDue()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class, CHANNEL, event.queueId().toString());
+        } catch (Exception e) {
+            logService.warn("SlicingQueueNotificationListener", "Could not notify slicing queue: " + e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!notifyEnabled) {
+            return;
+        }
+
+        running = true;
+        listenerThread = new Thread(this::listen, "slicing-queue-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                logService.info("SlicingQueueNotificationListener", "Listening for slicing queue notifications");
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications((int) reconnectDelayMs);
+                    if (notifications != null && notifications.length > 0) {
+                        slicingQueueProcessor.requestDispatch();
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                logService.warn("SlicingQueueNotificationListener",
+                        "Slicing queue listener failed, reconnecting: " + e.getMessage());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(reconnectDelayMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -1,22 +1,37 @@
 package it.aredegalli.printer.scheduled.slicing;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import it.aredegalli.printer.enums.slicing.SlicingStatus;
-import it.aredegalli.printer.model.slicing.queue.SlicingQueue;
 import it.aredegalli.printer.repository.slicing.queue.SlicingQueueRepository;
 import it.aredegalli.printer.service.log.LogService;
 import it.aredegalli.printer.service.slicing.SlicingService;
+import it.aredegalli.printer.service.slicing.event.SlicingQueuedEvent;
+import it.aredegalli.printer.service.slicing.limit.SlicingConcurrencyLimiter;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
@@ -26,6 +41,10 @@ public class SlicingQueueProcessor implements HealthIndicator {
     private final SlicingQueueRepository slicingQueueRepository;
     private final SlicingService slicingService;
     private final LogService logService;
+    private final ThreadPoolTaskExecutor slicingTaskExecutor;
+    private final MeterRegistry meterRegistry;
+    private final TaskScheduler taskScheduler;
+    private final SlicingConcurrencyLimiter concurrencyLimiter;
 
     @Value("${slicing.queue.processing.enabled:true}")
     private boolean processingEnabled;
@@ -33,45 +52,93 @@ public class SlicingQueueProcessor implements HealthIndicator {
     @Value("${slicing.queue.processing.max-concurrent:2}")
     private int maxConcurrentJobs;
 
-    @Value("${slicing.queue.stale-timeout-minutes:30}")
-    private int staleTimeoutMinutes;
+    @Value("${slicing.queue.worker-id:}")
+    private String workerId;
+
+    @Value("${slicing.queue.lease-seconds:30}")
+    private int leaseSeconds;
+
+    @Value("${slicing.queue.retry.max-attempts:4}")
+    private int maxAttempts;
 
     private final AtomicInteger processedCount = new AtomicInteger(0);
     private final AtomicInteger failedCount = new AtomicInteger(0);
     private final Set<String> currentlyProcessing = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean dispatchRequested = new AtomicBoolean(false);
     private Instant lastProcessingTime = Instant.now();
 
-    @Scheduled(fixedDelay = 15000)
-    public void processQueue() {
+    private Counter rejectedCounter;
+    private Timer jobTimer;
+
+    @PostConstruct
+    public void init() {
+        if (workerId == null || workerId.isBlank()) {
+            workerId = resolveHostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        }
+        logService.info("SlicingQueueProcessor", "Slicing worker id: " + workerId);
+
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        Gauge.builder("slicing.executor.active", slicingTaskExecutor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("Slicing jobs currently running")
+                .register(meterRegistry);
+        Gauge.builder("slicing.executor.queued", slicingTaskExecutor, SlicingQueueProcessor::queuedCount)
+                .description("Slicing jobs waiting for a worker")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("slicing.executor.rejected")
+                .description("Slicing jobs rejected because the executor was full or shutting down")
+                .register(meterRegistry);
+        jobTimer = Timer.builder("slicing.job.duration")
+                .description("Wall time of a slicing job")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start queued jobs as soon as the enqueuing transaction commits on this node, or when a retry becomes due
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onSlicingQueued(SlicingQueuedEvent event) {
+        if (event.isDue()) {
+            requestDispatch();
+        } else {
+            taskScheduler.schedule(this::requestDispatch, event.notBefore());
+        }
+    }
+
+    /**
+     * Schedule an immediate queue pass; requests arriving before it starts are folded into it
+     */
+    public void requestDispatch() {
+        if (dispatchRequested.compareAndSet(false, true)) {
+            taskScheduler.schedule(() -> {
+                dispatchRequested.set(false);
+                processQueue();
+            }, Instant.now());
+        }
+    }
+
+    /**
+     * Safety net only: dispatch is normally driven by enqueue events and job completions
+     */
+    @Scheduled(fixedDelayString = "${slicing.queue.poll-interval-ms:60000}")
+    public synchronized void processQueue() {
         if (!processingEnabled) {
             return;
         }
 
         try {
-            long currentProcessingJobs = slicingQueueRepository.countByStatus(SlicingStatus.PROCESSING.getCode());
-
-            if (currentProcessingJobs >= maxConcurrentJobs) {
+            int availableSlots = availableSlots();
+            if (availableSlots <= 0) {
                 return;
             }
 
-            List<SlicingQueue> nextJobs = slicingQueueRepository.findNextInQueue();
-            if (nextJobs.isEmpty()) {
-                return;
-            }
+            List<UUID> claimed = slicingQueueRepository.claimNext(workerId, leaseExpiry(), availableSlots);
 
-            int availableSlots = (int) (maxConcurrentJobs - currentProcessingJobs);
-            int jobsToProcess = Math.min(nextJobs.size(), availableSlots);
-
-            for (int i = 0; i < jobsToProcess; i++) {
-                SlicingQueue job = nextJobs.get(i);
-                String jobKey = job.getId().toString();
-
-                if (currentlyProcessing.contains(jobKey)) {
-                    continue;
-                }
-
-                currentlyProcessing.add(jobKey);
-                processJobAsync(job);
+            for (UUID jobId : claimed) {
+                currentlyProcessing.add(jobId.toString());
+                processJobAsync(jobId);
             }
 
             lastProcessingTime = Instant.now();
@@ -82,50 +149,101 @@ public class SlicingQueueProcessor implements HealthIndicator {
         }
     }
 
-    @Scheduled(fixedDelay = 300000)
-    public void cleanupStaleJobs() {
+    /**
+     * Extend the lease of every job running on this node
+     */
+    @Scheduled(fixedDelayString = "${slicing.queue.heartbeat-interval-ms:10000}")
+    public void renewLeases() {
+        if (currentlyProcessing.isEmpty()) {
+            return;
+        }
+
+        try {
+            List<UUID> ids = currentlyProcessing.stream().map(UUID::fromString).toList();
+            slicingQueueRepository.renewLeases(workerId, ids, leaseExpiry());
+        } catch (Exception e) {
+            logService.error("SlicingQueueProcessor", "Error renewing slicing leases: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Requeue jobs left in processing by a node that stopped renewing their lease, or fail them once they
+     * have used up their attempts; this is what recovers stuck jobs, however long a job that keeps its lease takes
+     */
+    @Scheduled(fixedDelayString = "${slicing.queue.recovery-interval-ms:10000}")
+    public void recoverExpiredLeases() {
         if (!processingEnabled) {
             return;
         }
 
         try {
-            Instant staleThreshold = Instant.now().minus(staleTimeoutMinutes, ChronoUnit.MINUTES);
-
-            List<SlicingQueue> staleJobs = slicingQueueRepository
-                    .findByStatusOrderByPriorityDescCreatedAtAsc(SlicingStatus.PROCESSING.getCode())
-                    .stream()
-                    .filter(job -> job.getStartedAt() != null && job.getStartedAt().isBefore(staleThreshold))
-                    .toList();
-
-            for (SlicingQueue staleJob : staleJobs) {
-                staleJob.setStatus(SlicingStatus.FAILED.getCode());
-                staleJob.setErrorMessage("Job timed out after " + staleTimeoutMinutes + " minutes");
-                staleJob.setCompletedAt(Instant.now());
-                slicingQueueRepository.save(staleJob);
-
-                currentlyProcessing.remove(staleJob.getId().toString());
-                logService.error("SlicingQueueProcessor", "Marked stale job as failed: " + staleJob.getId());
+            Instant now = Instant.now();
+            int failed = slicingQueueRepository.failExpiredLeases(now, maxAttempts,
+                    "Slicing lease expired, no attempts left");
+            if (failed > 0) {
+                failedCount.addAndGet(failed);
+                logService.error("SlicingQueueProcessor", "Failed " + failed + " slicing jobs whose lease expired on their last attempt");
             }
 
+            int recovered = slicingQueueRepository.requeueExpiredLeases(now, maxAttempts, "Slicing lease expired");
+            if (recovered > 0) {
+                logService.warn("SlicingQueueProcessor", "Requeued " + recovered + " slicing jobs with an expired lease");
+            }
         } catch (Exception e) {
-            logService.error("SlicingQueueProcessor", "Error in stale job cleanup: " + e.getMessage());
+            logService.error("SlicingQueueProcessor", "Error recovering expired leases: " + e.getMessage());
         }
     }
 
-    private void processJobAsync(SlicingQueue job) {
-        new Thread(() -> {
-            String jobKey = job.getId().toString();
-            try {
-                logService.info("SlicingQueueProcessor", "Processing slicing for queue: " + job.getId());
-                slicingService.processSlicing(job.getId());
-                processedCount.incrementAndGet();
-            } catch (Exception e) {
-                logService.error("SlicingQueueProcessor", "Failed to process queue: " + job.getId() + " - " + e.getMessage());
-                failedCount.incrementAndGet();
-            } finally {
-                currentlyProcessing.remove(jobKey);
-            }
-        }, "SlicingThread-" + job.getId()).start();
+    private void processJobAsync(UUID jobId) {
+        String jobKey = jobId.toString();
+        concurrencyLimiter.jobStarted();
+        try {
+            slicingTaskExecutor.execute(() -> {
+                try {
+                    logService.info("SlicingQueueProcessor", "Processing slicing for queue: " + jobId);
+                    jobTimer.record(() -> slicingService.processSlicing(jobId));
+                    processedCount.incrementAndGet();
+                } catch (Exception e) {
+                    logService.error("SlicingQueueProcessor", "Failed to process queue: " + jobId + " - " + e.getMessage());
+                    failedCount.incrementAndGet();
+                } finally {
+                    currentlyProcessing.remove(jobKey);
+                    concurrencyLimiter.jobFinished();
+                    requestDispatch();
+                }
+            });
+        } catch (TaskRejectedException e) {
+            currentlyProcessing.remove(jobKey);
+            concurrencyLimiter.jobFinished();
+            slicingQueueRepository.releaseClaim(jobId, workerId);
+            rejectedCounter.increment();
+            logService.warn("SlicingQueueProcessor", "Slicing executor rejected queue: " + jobId);
+        }
+    }
+
+    /**
+     * Free slots on this node: bounded by the executor and by the adaptive concurrency limit
+     */
+    private int availableSlots() {
+        int executorSlots = slicingTaskExecutor.getMaxPoolSize() + slicingTaskExecutor.getQueueCapacity()
+                - slicingTaskExecutor.getActiveCount() - queuedCount(slicingTaskExecutor);
+        return Math.min(executorSlots, concurrencyLimiter.available());
+    }
+
+    private Instant leaseExpiry() {
+        return Instant.now().plusSeconds(leaseSeconds);
+    }
+
+    private static String resolveHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "slicing-worker";
+        }
+    }
+
+    private static int queuedCount(ThreadPoolTaskExecutor executor) {
+        return executor.getThreadPoolExecutor().getQueue().size();
     }
 
     @Override
@@ -141,6 +259,10 @@ public class SlicingQueueProcessor implements HealthIndicator {
                     .withDetail("processing_jobs", processing)
                     .withDetail("currently_processing", currentlyProcessing.size())
                     .withDetail("max_concurrent", maxConcurrentJobs)
+                    .withDetail("concurrency_limit", concurrencyLimiter.getLimit())
+                    .withDetail("executor_active", slicingTaskExecutor.getActiveCount())
+                    .withDetail("executor_queued", queuedCount(slicingTaskExecutor))
+                    .withDetail("executor_rejected", (long) rejectedCounter.count())
                     .withDetail("total_processed", processedCount.get())
                     .withDetail("total_failed", failedCount.get())
                     .withDetail("last_processing", lastProcessingTime);
@@ -173,10 +295,26 @@ public class SlicingQueueProcessor implements HealthIndicator {
         return currentlyProcessing.size();
     }
 
+    public int getActiveCount() {
+        return slicingTaskExecutor.getActiveCount();
+    }
+
+    public int getQueuedCount() {
+        return queuedCount(slicingTaskExecutor);
+    }
+
+    public long getRejectedCount() {
+        return (long) rejectedCounter.count();
+    }
+
     public Instant getLastProcessingTime() {
         return lastProcessingTime;
     }
 
+    public String getWorkerId() {
+        return workerId;
+    }
+
     public boolean isProcessingEnabled() {
         return processingEnabled;
     }
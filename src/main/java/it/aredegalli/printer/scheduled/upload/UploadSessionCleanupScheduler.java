@@ -0,0 +1,18 @@
+package it.aredegalli.printer.scheduled.upload;
+
+import it.aredegalli.printer.service.resource.UploadSessionService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class UploadSessionCleanupScheduler {
+
+    private final UploadSessionService uploadSessionService;
+
+    @Scheduled(fixedDelay = 3600000) // 1 hour
+    public void abortExpiredUploads() {
+        uploadSessionService.abortExpired();
+    }
+}
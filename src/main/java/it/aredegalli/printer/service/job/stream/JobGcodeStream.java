@@ -0,0 +1,316 @@
+package it.aredegalli.printer.service.job.stream;
+
+import it.aredegalli.printer.service.slicing.analysis.GcodeIndex;
+import it.aredegalli.printer.service.slicing.analysis.GcodeScanner;
+import it.aredegalli.printer.service.slicing.gcode.BinaryGcode;
+import it.aredegalli.printer.service.slicing.gcode.BinaryGcodeWriter;
+import it.aredegalli.printer.service.storage.GzipMembers;
+import it.aredegalli.printer.service.storage.StorageService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.IntConsumer;
+
+/**
+ * G-code of a job as its driver executes it: the driver's start G-code, the stored file from the resume line on,
+ * preceded by the machine state in effect there, and the driver's end G-code.
+ * The stored file is read once from the checkpoint before the resume line and never held in memory.
+ * Drivers accepting {@link BinaryGcode} get the stored binary file, or the text transcoded when resuming.
+ */
+public final class JobGcodeStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final GcodeIndex.MachineState FILE_START = new GcodeIndex.MachineState(null, null, null, null, 0, false);
+
+    private final StorageService storageService;
+    private final String bucket;
+    private final String objectKey;
+    private final String contentEncoding;
+    private final String binaryBucket;
+    private final String binaryObjectKey;
+    private final String fileName;
+    private final String startGcode;
+    private final String endGcode;
+    private final long resumeLine;
+    private final GcodeIndex.Checkpoint checkpoint;
+    private final IntConsumer prefixListener;
+
+    JobGcodeStream(StorageService storageService, String bucket, String objectKey, String contentEncoding,
+                   String binaryBucket, String binaryObjectKey, String fileName, String startGcode, String endGcode, long resumeLine, GcodeIndex.Checkpoint checkpoint,
+                   IntConsumer prefixListener) {
+        this.storageService = storageService;
+        this.bucket = bucket;
+        this.objectKey = objectKey;
+        this.contentEncoding = contentEncoding;
+        this.binaryBucket = binaryBucket;
+        this.binaryObjectKey = binaryObjectKey;
+        this.fileName = fileName;
+        this.startGcode = startGcode;
+        this.endGcode = endGcode;
+        this.resumeLine = resumeLine;
+        this.checkpoint = checkpoint;
+        this.prefixListener = prefixListener;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Whether the G-code is sent as {@link BinaryGcode}
+     */
+    public boolean isBinary() {
+        return binaryObjectKey != null;
+    }
+
+    /**
+     * Whether the stored file is compressed, so a compressed stream can pass its bytes through
+     */
+    public boolean isStoredCompressed() {
+        return !isBinary() && GzipMembers.ENCODING.equals(contentEncoding);
+    }
+
+    /**
+     * Short-lived URL reading the stored file straight from object storage, when the job's G-code is that file
+     * unchanged: no start or end G-code and no resume. A compressed file is only sent as stored to clients accepting gzip.
+     */
+    public Optional<URI> presignDownload(boolean acceptsGzip) {
+        if (resumeLine > 0 || block(startGcode).length > 0 || block(endGcode).length > 0) {
+            return Optional.empty();
+        }
+
+        Optional<URI> url;
+        if (isBinary()) {
+            url = storageService.presignDownload(binaryBucket, binaryObjectKey, fileName, null);
+        } else if (contentEncoding == null || (acceptsGzip && isStoredCompressed())) {
+            url = storageService.presignDownload(bucket, objectKey, fileName, contentEncoding);
+        } else {
+            url = Optional.empty();
+        }
+        url.ifPresent(direct -> prefixListener.accept(0));
+        return url;
+    }
+
+    /**
+     * Write the transformed G-code; the number of lines written before the stored file's resume line
+     * is reported to the prefix listener before any of them is sent.
+     * Compressed output is gzip whose members after the resume point are the stored ones, sent as they are;
+     * only the spliced G-code and the rest of the member holding the resume point are compressed here.
+     */
+    public void writeTo(OutputStream target, boolean compressed) throws IOException {
+        if (compressed && !isStoredCompressed()) {
+            throw new IllegalArgumentException("Stored G-code is not compressed");
+        }
+
+        OutputStream out = new BufferedOutputStream(target, BUFFER_SIZE);
+        if (isBinary()) {
+            writeBinary(out);
+            out.flush();
+            return;
+        }
+
+        writeText(out, compressed);
+        byte[] end = block(endGcode);
+        if (compressed) {
+            writeMember(out, end);
+        } else {
+            out.write(end);
+        }
+        out.flush();
+    }
+
+    /**
+     * Binary G-code: the stored blocks as they are, after its metadata and a block with the start G-code;
+     * when resuming, the text from the resume line is encoded here instead
+     */
+    private void writeBinary(OutputStream out) throws IOException {
+        BinaryGcodeWriter writer = new BinaryGcodeWriter(out, null);
+        if (resumeLine <= 0) {
+            byte[] start = block(startGcode);
+            prefixListener.accept(lineCount(start));
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    storageService.download(binaryBucket, binaryObjectKey), BUFFER_SIZE))) {
+                BinaryGcode.readHeader(in);
+                BinaryGcode.Block block = BinaryGcode.readBlock(in);
+                while (block != null && block.type() == BinaryGcode.METADATA) {
+                    block.writeTo(out);
+                    block = BinaryGcode.readBlock(in);
+                }
+                writer.write(start);
+                writer.flushBlock();
+                while (block != null) {
+                    block.writeTo(out);
+                    block = BinaryGcode.readBlock(in);
+                }
+            }
+        } else {
+            writeText(writer, false);
+        }
+        writer.write(block(endGcode));
+        writer.finish();
+    }
+
+    /**
+     * Start G-code, resume state and the stored file, without the end G-code
+     */
+    private void writeText(OutputStream out, boolean compressed) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] start = block(startGcode);
+
+        if (resumeLine <= 0) {
+            prefixListener.accept(lineCount(start));
+            if (compressed) {
+                writeMember(out, start);
+                try (InputStream in = storageService.download(bucket, objectKey)) {
+                    in.transferTo(out);
+                }
+            } else {
+                out.write(start);
+                try (InputStream in = storageService.download(bucket, objectKey, contentEncoding, 0)) {
+                    in.transferTo(out);
+                }
+            }
+        } else {
+            long fromLine = checkpoint != null ? checkpoint.line() : 0;
+            long fromOffset = checkpoint != null ? checkpoint.offset() : 0;
+            GcodeIndex.MachineState state = checkpoint != null ? checkpoint.state() : FILE_START;
+
+            long passFrom = -1;
+            try (InputStream in = storageService.download(bucket, objectKey, contentEncoding, fromOffset)) {
+                // Lines between the checkpoint and the resume line are only scanned, to carry the state forward
+                GcodeScanner scanner = new GcodeScanner();
+                long skip = resumeLine - fromLine;
+                long resumeOffset = fromOffset;
+                int read = 0;
+                int resumeAt = 0;
+                while (skip > 0 && (read = in.read(buffer)) != -1) {
+                    resumeAt = 0;
+                    while (resumeAt < read && skip > 0) {
+                        if (buffer[resumeAt++] == '\n') {
+                            skip--;
+                        }
+                    }
+                    scanner.update(buffer, 0, resumeAt);
+                    resumeOffset += resumeAt;
+                }
+                if (skip > 0) {
+                    throw new IOException("Resume line " + resumeLine + " is past the end of the file");
+                }
+
+                byte[] resume = resumeState(scanner.stateAfter(state));
+                prefixListener.accept(lineCount(start) + lineCount(resume));
+                int leftover = Math.max(0, read - resumeAt);
+
+                if (compressed) {
+                    GzipMembers members = storageService.gzipMembers(bucket, objectKey);
+                    int member = members.memberAt(resumeOffset);
+                    int passMember = resumeOffset == members.uncompressedStart(member) ? member : member + 1;
+                    long tail = members.uncompressedStart(passMember) - resumeOffset;
+
+                    GzipMembers.Writer head = new GzipMembers.Writer(out, Integer.MAX_VALUE);
+                    head.write(start);
+                    head.write(resume);
+                    int fromBuffer = (int) Math.min(leftover, tail);
+                    head.write(buffer, resumeAt, fromBuffer);
+                    tail -= fromBuffer;
+                    while (tail > 0) {
+                        int n = in.read(buffer, 0, (int) Math.min(buffer.length, tail));
+                        if (n == -1) {
+                            throw new IOException("Stored G-code ended before its last member");
+                        }
+                        head.write(buffer, 0, n);
+                        tail -= n;
+                    }
+                    head.finish();
+                    passFrom = passMember < members.count() ? members.compressedStart(passMember) : -1;
+                } else {
+                    out.write(start);
+                    out.write(resume);
+                    out.write(buffer, resumeAt, leftover);
+                    in.transferTo(out);
+                }
+            }
+
+            if (passFrom >= 0) {
+                try (InputStream in = storageService.download(bucket, objectKey, passFrom)) {
+                    in.transferTo(out);
+                }
+            }
+        }
+    }
+
+    private static void writeMember(OutputStream out, byte[] data) throws IOException {
+        if (data.length == 0) {
+            return;
+        }
+        GzipMembers.Writer member = new GzipMembers.Writer(out, Integer.MAX_VALUE);
+        member.write(data);
+        member.finish();
+    }
+
+    /**
+     * Commands restoring the state a print had at the resume line: temperatures, fan, E mode and position, Z
+     */
+    private byte[] resumeState(GcodeIndex.MachineState state) {
+        List<String> commands = new ArrayList<>();
+        commands.add(";RESUME_FROM_LINE:" + resumeLine);
+        if (state.bedTemp() != null) {
+            commands.add("M140 S" + state.bedTemp());
+        }
+        if (state.hotendTemp() != null) {
+            commands.add("M104 S" + state.hotendTemp());
+        }
+        if (state.bedTemp() != null) {
+            commands.add("M190 S" + state.bedTemp());
+        }
+        if (state.hotendTemp() != null) {
+            commands.add("M109 S" + state.hotendTemp());
+        }
+        commands.add("G90");
+        commands.add(state.relativeE() ? "M83" : "M82");
+        commands.add("G92 E" + format(state.e()));
+        if (state.z() != null) {
+            commands.add("G0 Z" + format(state.z()));
+        }
+        if (state.fanSpeed() != null) {
+            commands.add(state.fanSpeed() > 0 ? "M106 S" + state.fanSpeed() : "M107");
+        }
+        return (String.join("\n", commands) + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String format(double value) {
+        return BigDecimal.valueOf(value).setScale(5, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Custom G-code as whole lines, or nothing when blank
+     */
+    private static byte[] block(String gcode) {
+        if (gcode == null || gcode.isBlank()) {
+            return new byte[0];
+        }
+        String normalized = gcode.replace("\r\n", "\n").strip();
+        return (normalized + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int lineCount(byte[] bytes) {
+        int count = 0;
+        for (byte b : bytes) {
+            if (b == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
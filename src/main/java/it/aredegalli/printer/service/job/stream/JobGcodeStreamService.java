@@ -0,0 +1,19 @@
+package it.aredegalli.printer.service.job.stream;
+
+import it.aredegalli.printer.model.driver.Driver;
+import it.aredegalli.printer.model.job.Job;
+
+import java.util.Optional;
+
+public interface JobGcodeStreamService {
+
+    /**
+     * Download token granting the driver the G-code of the job, transformed for it
+     */
+    String createDownloadToken(Job job, Driver driver);
+
+    /**
+     * Stream of the job granted by the token, or empty if it is not a job token
+     */
+    Optional<JobGcodeStream> open(String token);
+}
@@ -0,0 +1,80 @@
+package it.aredegalli.printer.service.job.stream;
+
+import it.aredegalli.common.exception.BadRequestException;
+import it.aredegalli.common.exception.NotFoundException;
+import it.aredegalli.printer.model.driver.Driver;
+import it.aredegalli.printer.model.job.Job;
+import it.aredegalli.printer.model.resource.FileResource;
+import it.aredegalli.printer.repository.driver.DriverRepository;
+import it.aredegalli.printer.repository.job.JobRepository;
+import it.aredegalli.printer.repository.slicing.result.SlicingResultRepository;
+import it.aredegalli.printer.service.log.LogService;
+import it.aredegalli.printer.service.resource.ResourceSecureDownloadHelper;
+import it.aredegalli.printer.service.slicing.analysis.GcodeIndex;
+import it.aredegalli.printer.service.slicing.gcode.BinaryGcode;
+import it.aredegalli.printer.service.slicing.index.GcodeIndexService;
+import it.aredegalli.printer.service.storage.StorageService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@Service
+@RequiredArgsConstructor
+public class JobGcodeStreamServiceImpl implements JobGcodeStreamService {
+
+    private final JobRepository jobRepository;
+    private final DriverRepository driverRepository;
+    private final SlicingResultRepository slicingResultRepository;
+    private final GcodeIndexService gcodeIndexService;
+    private final StorageService storageService;
+    private final ResourceSecureDownloadHelper resourceSecureDownloadHelper;
+    private final LogService logService;
+
+    @Override
+    public String createDownloadToken(Job job, Driver driver) {
+        return resourceSecureDownloadHelper.generateJobStreamToken(job.getId().toString(), driver.getId().toString());
+    }
+
+    @Override
+    public Optional<JobGcodeStream> open(String token) {
+        String jobId = resourceSecureDownloadHelper.validateTokenAndExtractJobId(token);
+        if (jobId == null) {
+            return Optional.empty();
+        }
+
+        Job job = jobRepository.findById(UUID.fromString(jobId))
+                .orElseThrow(() -> new NotFoundException("Job not found"));
+        Driver driver = driverRepository.findById(job.getPrinter().getDriverId())
+                .orElseThrow(() -> new NotFoundException("Driver not found"));
+        FileResource gcodeFile = slicingResultRepository.findGeneratedFile(job.getSlicingResult().getId())
+                .orElseThrow(() -> new NotFoundException("G-code not found"));
+
+        FileResource binaryFile = Boolean.TRUE.equals(driver.getBinaryGcode())
+                ? slicingResultRepository.findBinaryFile(job.getSlicingResult().getId()).orElse(null)
+                : null;
+
+        long resumeLine = job.getStartOffsetLine() != null ? Math.max(0, job.getStartOffsetLine()) : 0;
+        GcodeIndex.Checkpoint checkpoint = null;
+        if (resumeLine > 0) {
+            GcodeIndex index = gcodeIndexService.find(gcodeFile)
+                    .orElseThrow(() -> new NotFoundException("G-code index not available"));
+            if (resumeLine >= index.getTotalLines()) {
+                throw new BadRequestException("Resume line " + resumeLine + " is past the end of the G-code");
+            }
+            checkpoint = index.checkpointBefore(resumeLine);
+        }
+
+        logService.info("JobGcodeStreamServiceImpl", String.format("Streaming %s G-code of job %s from line %d, seeking to byte %d",
+                binaryFile != null ? "binary" : "text", job.getId(), resumeLine, checkpoint != null ? checkpoint.offset() : 0));
+
+        UUID id = job.getId();
+        return Optional.of(new JobGcodeStream(storageService, gcodeFile.getBucketName(), gcodeFile.getObjectKey(),
+                gcodeFile.getContentEncoding(),
+                binaryFile != null ? binaryFile.getBucketName() : null,
+                binaryFile != null ? binaryFile.getObjectKey() : null,
+                "job-" + id + (binaryFile != null ? BinaryGcode.EXTENSION : ".gcode"), driver.getCustomStartGCode(), driver.getCustomEndGCode(), resumeLine, checkpoint,
+                prefixLines -> jobRepository.updateStreamPrefixLines(id, prefixLines)));
+    }
+}
@@ -12,6 +12,8 @@ import it.aredegalli.printer.repository.job.JobProgressSnapshotRepository;
 import it.aredegalli.printer.repository.job.JobRepository;
 import it.aredegalli.printer.repository.printer.PrinterRepository;
 import it.aredegalli.printer.repository.printer.PrinterStatusRepository;
+import it.aredegalli.printer.service.slicing.index.GcodeIndexService;
+import it.aredegalli.printer.service.slicing.index.GcodeProgress;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
@@ -24,6 +26,7 @@ import org.springframework.stereotype.Service;
 import java.time.Instant;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
@@ -39,6 +42,7 @@ public class PrinterCheckServiceImpl implements PrinterCheckService {
     private final PrinterRepository printerRepository;
     private final PrinterStatusRepository printerStatusRepository;
     private final JobProgressSnapshotRepository jobProgressSnapshotRepository;
+    private final GcodeIndexService gcodeIndexService;
 
     // Track processed messages to avoid duplicates
     private final Set<String> recentlyProcessed = ConcurrentHashMap.newKeySet();
@@ -128,6 +132,8 @@ public class PrinterCheckServiceImpl implements PrinterCheckService {
         } catch (Exception ignored) {
         }
 
+        Optional<GcodeProgress> estimate = this.estimateProgress(job, check);
+
         JobProgressSnapshot progress = JobProgressSnapshot.builder()
                 .job(job)
                 .recordedAt(Instant.now())
@@ -149,9 +155,9 @@ public class PrinterCheckServiceImpl implements PrinterCheckService {
                 .averageSpeed(parseBigDecimal(check.getAverageSpeed()))
                 .exceptions(check.getExceptions())
                 .logs(check.getLogs())
-                .localProgressPercentage(null)
-                .estimatedRemainingTimeMin(null)
-                .materialUsedG(null)
+                .localProgressPercentage(estimate.map(GcodeProgress::percentage).orElse(null))
+                .estimatedRemainingTimeMin(estimate.map(GcodeProgress::remainingMinutes).orElse(null))
+                .materialUsedG(estimate.map(GcodeProgress::materialUsedG).orElse(null))
                 .errorCount(this.getErrorCountFromLog(check.getLogs()))
                 .warningCount(this.getWarningCountFromLog(check.getLogs()))
                 .build();
@@ -169,6 +175,35 @@ public class PrinterCheckServiceImpl implements PrinterCheckService {
                 check.getDriverId(), check.getJobId());
     }
 
+    /**
+     * Progress from the G-code index at the reported command offset, or at the reported layer
+     */
+    private Optional<GcodeProgress> estimateProgress(Job job, PrinterCheckResponseDto check) {
+        if (job.getSlicingResult() == null) {
+            return Optional.empty();
+        }
+
+        try {
+            return this.gcodeIndexService.estimate(job.getSlicingResult().getId(),
+                    toFileLine(job, parseLong(check.getCommandOffset())), parseInteger(check.getLayer()));
+        } catch (Exception e) {
+            log.warn("[CHECK] Progress estimate failed for job {}: {}", check.getJobId(), e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Drivers count lines of the streamed G-code, which starts with the start G-code and resume state
+     * and then continues the stored file from the job's start offset
+     */
+    private static Long toFileLine(Job job, Long commandOffset) {
+        if (commandOffset == null || job.getStreamPrefixLines() == null) {
+            return commandOffset;
+        }
+        long startLine = job.getStartOffsetLine() != null ? job.getStartOffsetLine() : 0;
+        return startLine + Math.max(0, commandOffset - job.getStreamPrefixLines());
+    }
+
     private Integer getErrorCountFromLog(String checkLog) {
         return checkLog != null ? checkLog.split("ERR").length - 1 : 0;
     }
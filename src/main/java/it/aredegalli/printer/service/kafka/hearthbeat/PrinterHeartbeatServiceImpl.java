@@ -3,10 +3,13 @@ package it.aredegalli.printer.service.kafka.hearthbeat;
 import it.aredegalli.printer.dto.kafka.hearthbeat.PrinterHeartbeatRequestDto;
 import it.aredegalli.printer.dto.kafka.hearthbeat.PrinterHeartbeatResponseDto;
 import it.aredegalli.printer.enums.kafka.KafkaTopicEnum;
+import it.aredegalli.printer.model.driver.Driver;
 import it.aredegalli.printer.model.printer.Printer;
 import it.aredegalli.printer.model.printer.PrinterStatus;
+import it.aredegalli.printer.repository.driver.DriverRepository;
 import it.aredegalli.printer.repository.printer.PrinterRepository;
 import it.aredegalli.printer.repository.printer.PrinterStatusRepository;
+import it.aredegalli.printer.service.slicing.gcode.BinaryGcode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
@@ -19,7 +22,9 @@ import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
@@ -31,6 +36,7 @@ public class PrinterHeartbeatServiceImpl implements PrinterHeartbeatService {
     private final KafkaTemplate<String, Object> kafkaTemplate;
     private final PrinterRepository printerRepository;
     private final PrinterStatusRepository printerStatusRepository;
+    private final DriverRepository driverRepository;
     private final TaskExecutor kafkaListenerTaskExecutor;
 
     @Override()
@@ -72,6 +78,7 @@ public class PrinterHeartbeatServiceImpl implements PrinterHeartbeatService {
                 printer.setLastSeen(Instant.now());
 
                 this.printerRepository.save(printer);
+                updateCapabilities(UUID.fromString(heartbeat.getDriverId()), heartbeat.getCapabilities());
             } catch (Exception e) {
                 log.error("[HEARTBEAT] Failed to process heartbeat record: key={} partition={} offset={}", record.key(), record.partition(), record.offset(), e);
             } finally {
@@ -86,6 +93,27 @@ public class PrinterHeartbeatServiceImpl implements PrinterHeartbeatService {
         });
     }
 
+    /**
+     * Record what the driver accepts; drivers that send no capabilities keep what was last recorded
+     */
+    private void updateCapabilities(UUID driverId, List<String> capabilities) {
+        if (capabilities == null) {
+            return;
+        }
+
+        Driver driver = this.driverRepository.findById(driverId).orElse(null);
+        if (driver == null) {
+            return;
+        }
+
+        Boolean binaryGcode = capabilities.contains(BinaryGcode.CAPABILITY);
+        if (!Objects.equals(driver.getBinaryGcode(), binaryGcode)) {
+            driver.setBinaryGcode(binaryGcode);
+            this.driverRepository.save(driver);
+            log.info("[HEARTBEAT] Driver {} binary G-code support: {}", driverId, binaryGcode);
+        }
+    }
+
     private static PrinterHeartbeatResponseDto deserializeHeartbeatResponse(Object payload) {
         PrinterHeartbeatResponseDto heartbeat;
 
@@ -94,7 +122,10 @@ public class PrinterHeartbeatServiceImpl implements PrinterHeartbeatService {
             Map<String, Object> map = (Map<String, Object>) payload;
             heartbeat = new PrinterHeartbeatResponseDto(
                     (String) map.get("driverId"),
-                    (String) map.get("statusCode")
+                    (String) map.get("statusCode"),
+                    map.get("capabilities") instanceof List<?> capabilities
+                            ? capabilities.stream().map(String::valueOf).toList()
+                            : null
             );
         } else if (payload instanceof PrinterHeartbeatResponseDto) {
             heartbeat = (PrinterHeartbeatResponseDto) payload;
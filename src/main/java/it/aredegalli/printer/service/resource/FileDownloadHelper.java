@@ -0,0 +1,206 @@
+package it.aredegalli.printer.service.resource;
+
+import it.aredegalli.printer.model.resource.FileResource;
+import it.aredegalli.printer.service.storage.GzipMembers;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * HTTP responses for stored files. Stored content never changes for a given hash, so responses carry a strong ETag
+ * derived from it, are cacheable as immutable, answer If-None-Match with 304 and serve a single byte range.
+ */
+@Component
+@RequiredArgsConstructor
+public class FileDownloadHelper {
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable();
+    private static final String BYTES = "bytes";
+    private static final String NO_RANGES = "none";
+
+    private final FileResourceService fileResourceService;
+
+    /**
+     * The file as stored: compressed files go as they are to clients accepting gzip, whole, and decompressed
+     * to the others, who may ask for a range of the content
+     */
+    public ResponseEntity<StreamingResponseBody> download(FileResource file, String fileName, HttpHeaders request) {
+        boolean compressed = acceptsGzip(request.getFirst(HttpHeaders.ACCEPT_ENCODING))
+                && GzipMembers.ENCODING.equals(file.getContentEncoding());
+        String etag = etag(file, compressed ? GzipMembers.ENCODING : null);
+        if (etag != null && matches(request.getFirst(HttpHeaders.IF_NONE_MATCH), etag)) {
+            return headers(ResponseEntity.status(HttpStatus.NOT_MODIFIED), fileName, etag).build();
+        }
+
+        if (compressed) {
+            ResponseEntity.BodyBuilder builder = headers(ResponseEntity.ok(), fileName, etag)
+                    .header(HttpHeaders.CONTENT_ENCODING, GzipMembers.ENCODING)
+                    .header(HttpHeaders.ACCEPT_RANGES, NO_RANGES);
+            if (file.getCompressedSize() != null) {
+                builder.contentLength(file.getCompressedSize());
+            }
+            return builder.body(body(fileResourceService.downloadStored(file)));
+        }
+
+        Long size = file.getFileSize();
+        if (size == null) {
+            return headers(ResponseEntity.ok(), fileName, etag)
+                    .header(HttpHeaders.ACCEPT_RANGES, NO_RANGES)
+                    .body(body(fileResourceService.download(file)));
+        }
+
+        HttpRange range = range(request, etag);
+        if (range != null) {
+            long start;
+            long end;
+            try {
+                start = range.getRangeStart(size);
+                end = range.getRangeEnd(size);
+            } catch (IllegalArgumentException e) {
+                return headers(ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE), fileName, etag)
+                        .header(HttpHeaders.CONTENT_RANGE, BYTES + " */" + size)
+                        .build();
+            }
+            long length = end - start + 1;
+            return headers(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), fileName, etag)
+                    .header(HttpHeaders.ACCEPT_RANGES, BYTES)
+                    .header(HttpHeaders.CONTENT_RANGE, BYTES + " " + start + "-" + end + "/" + size)
+                    .contentLength(length)
+                    .body(body(fileResourceService.download(file, start, length)));
+        }
+
+        return headers(ResponseEntity.ok(), fileName, etag)
+                .header(HttpHeaders.ACCEPT_RANGES, BYTES)
+                .contentLength(size)
+                .body(body(fileResourceService.download(file)));
+    }
+
+    /**
+     * Content derived from a stored file, e.g. its GLB conversion, sent whole; it is only fetched when the client
+     * does not have it already
+     */
+    public ResponseEntity<StreamingResponseBody> derived(FileResource source, String variant, String fileName,
+                                                         HttpHeaders request, Supplier<InputStream> content) {
+        String etag = etag(source, variant);
+        if (etag != null && matches(request.getFirst(HttpHeaders.IF_NONE_MATCH), etag)) {
+            return headers(ResponseEntity.status(HttpStatus.NOT_MODIFIED), fileName, etag).build();
+        }
+        return headers(ResponseEntity.ok(), fileName, etag)
+                .header(HttpHeaders.ACCEPT_RANGES, NO_RANGES)
+                .body(body(content.get()));
+    }
+
+    /**
+     * Whether gzip, or any coding, is listed in Accept-Encoding without a zero quality
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase(GzipMembers.ENCODING) && !name.equals("*")) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim().replace(" ", "");
+                if (parameter.startsWith("q=")) {
+                    refused = parameter.substring(2).matches("0(\\.0*)?");
+                }
+            }
+            if (!refused) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ResponseEntity.BodyBuilder headers(ResponseEntity.BodyBuilder builder, String fileName, String etag) {
+        builder.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+        if (etag != null) {
+            builder.eTag(etag).cacheControl(IMMUTABLE);
+        }
+        return builder;
+    }
+
+    private static StreamingResponseBody body(InputStream content) {
+        return outputStream -> {
+            try (content) {
+                content.transferTo(outputStream);
+                outputStream.flush();
+            }
+        };
+    }
+
+    /**
+     * Strong ETag of a representation of the file: its content hash, with the variant when it is not the content as is
+     */
+    private static String etag(FileResource file, String variant) {
+        if (file.getFileHash() == null) {
+            return null;
+        }
+        String hash = HexFormat.of().formatHex(file.getFileHash());
+        return "\"" + hash + (variant != null ? "-" + variant : "") + "\"";
+    }
+
+    /**
+     * If-None-Match comparison, which is weak: a W/ prefix is ignored
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String candidate = tag.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The requested range, or null for the whole file: no Range header, a malformed one, several ranges,
+     * or an If-Range naming another version (or a date, as files carry no Last-Modified)
+     */
+    private static HttpRange range(HttpHeaders request, String etag) {
+        String header = request.getFirst(HttpHeaders.RANGE);
+        if (header == null) {
+            return null;
+        }
+        String ifRange = request.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange != null && (etag == null || !ifRange.trim().equals(etag))) {
+            return null;
+        }
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(header);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return ranges.size() == 1 ? ranges.get(0) : null;
+    }
+}
@@ -1,10 +1,15 @@
 package it.aredegalli.printer.service.resource;
 
+import it.aredegalli.printer.dto.resource.PresignedUploadDto;
+import it.aredegalli.printer.dto.resource.PresignedUploadRequestDto;
+import it.aredegalli.printer.dto.storage.UploadResult;
 import it.aredegalli.printer.model.resource.FileResource;
 import jakarta.transaction.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.InputStream;
+import java.net.URI;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface FileResourceService {
@@ -14,10 +19,57 @@ public interface FileResourceService {
     @Transactional
     FileResource uploadModel(MultipartFile file);
 
+    /**
+     * File for content already stored, the existing one if the same content was uploaded before;
+     * a model also gets its GLB conversion and its Model
+     */
+    @Transactional
+    FileResource register(UploadResult result, String fileName, String contentType, String bucket, boolean model);
+
+    /**
+     * Lets the client upload the file to object storage itself; {@link #finalizeUpload(String)} registers it afterwards,
+     * as a model when {@code model} is set
+     */
+    PresignedUploadDto presignUpload(PresignedUploadRequestDto request, String bucket, boolean model);
+
+    /**
+     * File of a direct upload once its size and hash are verified; content uploaded before is not stored twice
+     */
+    @Transactional
+    FileResource finalizeUpload(String uploadToken);
+
+    FileResource getById(UUID id);
+
     InputStream download(UUID id);
 
     InputStream download(String jwtToken);
 
+    /**
+     * File granted by a download token
+     */
+    FileResource resolve(String jwtToken);
+
+    /**
+     * Content of the file, decoded if it is stored compressed
+     */
+    InputStream download(FileResource fileResource);
+
+    /**
+     * {@code length} bytes of the content of the file from the given offset
+     */
+    InputStream download(FileResource fileResource, long fromOffset, long length);
+
+    /**
+     * Bytes of the file as stored, still compressed if it is stored compressed
+     */
+    InputStream downloadStored(FileResource fileResource);
+
+    /**
+     * Short-lived URL of the file as stored in object storage, when that is what the client would be sent:
+     * a compressed file only goes as stored to clients accepting gzip; empty when direct downloads are disabled
+     */
+    Optional<URI> presignDownload(FileResource fileResource, String fileName, boolean acceptsGzip);
+
     InputStream downloadGlb(UUID id);
 
     String ensureResource(UUID fileResourceId, UUID driverId);
@@ -1,11 +1,16 @@
 package it.aredegalli.printer.service.resource;
 
+import it.aredegalli.common.exception.BadRequestException;
+import it.aredegalli.printer.dto.resource.PresignedUploadDto;
+import it.aredegalli.printer.dto.resource.PresignedUploadRequestDto;
 import it.aredegalli.printer.dto.storage.UploadResult;
 import it.aredegalli.printer.model.model.Model;
 import it.aredegalli.printer.model.resource.FileResource;
 import it.aredegalli.printer.repository.model.ModelRepository;
 import it.aredegalli.printer.repository.resource.FileResourceRepository;
 import it.aredegalli.printer.service.glb.StlGlbConvertService;
+import it.aredegalli.printer.service.storage.GzipMembers;
+import it.aredegalli.printer.service.storage.PresignedUpload;
 import it.aredegalli.printer.service.storage.StorageService;
 import it.aredegalli.printer.util.PrinterCostants;
 import jakarta.persistence.EntityNotFoundException;
@@ -16,13 +21,20 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
 import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
 public class FileResourceServiceImpl implements FileResourceService {
 
+    // An upload started just before its URL expires may still be running then
+    private static final Duration FINALIZE_GRACE = Duration.ofHours(1);
+
     private final FileResourceRepository repo;
     private final StorageService storage;
     private final StlGlbConvertService stlGlbConvertService;
@@ -40,33 +52,87 @@ public class FileResourceServiceImpl implements FileResourceService {
                     bucket
             );
 
-            FileResource fr = this.repo.findByFileHash(result.getHashBytes());
+            return this.register(result, file.getOriginalFilename(), file.getContentType(), bucket, false);
+        } catch (IOException e) {
+            throw new RuntimeException("Upload fallito", e);
+        }
+    }
+
+    @Override
+    public PresignedUploadDto presignUpload(PresignedUploadRequestDto request, String bucket, boolean model) {
+        if (request.getFileName() == null || request.getFileName().isBlank()) {
+            throw new BadRequestException("Nome del file mancante");
+        }
+        byte[] hashBytes;
+        try {
+            hashBytes = HexFormat.of().parseHex(request.getSha256() != null ? request.getSha256() : "");
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Hash SHA-256 non valido");
+        }
+        if (hashBytes.length != 32) {
+            throw new BadRequestException("Hash SHA-256 non valido");
+        }
+        String contentType = request.getContentType() != null && !request.getContentType().isBlank()
+                ? request.getContentType()
+                : "application/octet-stream";
+
+        PresignedUpload upload = storage.presignUpload(bucket, request.getSize(), hashBytes, contentType)
+                .orElseThrow(() -> new BadRequestException("Upload diretti non abilitati"));
+        StagedUpload staged = new StagedUpload(bucket, upload.objectKey(), request.getFileName(), contentType,
+                request.getSize(), HexFormat.of().formatHex(hashBytes), model);
+
+        return PresignedUploadDto.builder()
+                .url(upload.url().toString())
+                .headers(upload.headers())
+                .expiresAt(upload.expiresAt())
+                .uploadToken(resourceSecureDownloadHelper.generateUploadToken(staged, upload.expiresAt().plus(FINALIZE_GRACE)))
+                .build();
+    }
+
+    @Override
+    @Transactional
+    public FileResource finalizeUpload(String uploadToken) {
+        StagedUpload staged = resourceSecureDownloadHelper.validateUploadToken(uploadToken);
+        if (staged == null) {
+            throw new BadRequestException("Token di upload non valido");
+        }
 
-            if (fr != null) {
-                return fr;
-            }
+        UploadResult result = storage.finalizeUpload(staged.bucket(), staged.objectKey(), staged.size(),
+                HexFormat.of().parseHex(staged.sha256()));
+        return this.register(result, staged.fileName(), staged.contentType(), staged.bucket(), staged.model());
+    }
 
-            fr = FileResource.builder()
-                    .fileName(file.getOriginalFilename())
-                    .fileType(file.getContentType())
-                    .fileSize(file.getSize())
+    @Override
+    @Transactional
+    public FileResource register(UploadResult result, String fileName, String contentType, String bucket, boolean model) {
+        FileResource fr = this.repo.findByFileHash(result.getHashBytes());
+
+        if (fr == null) {
+            fr = repo.save(FileResource.builder()
+                    .fileName(fileName)
+                    .fileType(contentType)
+                    .fileSize(result.getSize())
                     .fileHash(result.getHashBytes())
                     .objectKey(result.getObjectKey())
                     .bucketName(bucket)
                     .uploadedAt(Instant.now())
-                    .build();
-
-            fr = repo.save(fr);
-            return fr;
-        } catch (IOException e) {
-            throw new RuntimeException("Upload fallito", e);
+                    .build());
         }
+        if (model) {
+            this.createModel(fr);
+        }
+        return fr;
     }
 
     @Transactional
     @Override
     public FileResource uploadModel(MultipartFile file) {
         FileResource fr = this.upload(file, PrinterCostants.PRINTER_MODEL_STORAGE_BUCKET_NAME);
+        this.createModel(fr);
+        return fr;
+    }
+
+    private void createModel(FileResource fr) {
         stlGlbConvertService.convertStlToGlb(fr.getObjectKey());
 
         Model model = Model.builder()
@@ -77,21 +143,58 @@ public class FileResourceServiceImpl implements FileResourceService {
                 .build();
 
         this.modelRepository.save(model);
+    }
 
-        return fr;
+    @Override
+    public FileResource getById(UUID id) {
+        return repo.findById(id)
+                .orElseThrow(() -> new EntityNotFoundException("File non trovato: " + id));
     }
 
     @Override
     public InputStream download(UUID id) {
-        FileResource fr = repo.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException("File non trovato: " + id));
-        return storage.download(fr.getBucketName(), fr.getObjectKey());
+        return this.download(this.getById(id));
     }
 
     @Override
     public InputStream download(String jwtToken) {
+        return this.download(this.resolve(jwtToken));
+    }
+
+    @Override
+    public FileResource resolve(String jwtToken) {
         String resourceId = this.resourceSecureDownloadHelper.validateTokenAndExtractResourceId(jwtToken);
-        return this.download(UUID.fromString(resourceId));
+        if (resourceId == null) {
+            throw new EntityNotFoundException("Token di download non valido");
+        }
+        UUID id = UUID.fromString(resourceId);
+        return repo.findById(id)
+                .orElseThrow(() -> new EntityNotFoundException("File non trovato: " + id));
+    }
+
+    @Override
+    public InputStream download(FileResource fileResource) {
+        return storage.download(fileResource.getBucketName(), fileResource.getObjectKey(), fileResource.getContentEncoding(), 0);
+    }
+
+    @Override
+    public InputStream download(FileResource fileResource, long fromOffset, long length) {
+        return storage.download(fileResource.getBucketName(), fileResource.getObjectKey(), fileResource.getContentEncoding(),
+                fromOffset, length);
+    }
+
+    @Override
+    public InputStream downloadStored(FileResource fileResource) {
+        return storage.download(fileResource.getBucketName(), fileResource.getObjectKey());
+    }
+
+    @Override
+    public Optional<URI> presignDownload(FileResource fileResource, String fileName, boolean acceptsGzip) {
+        String contentEncoding = fileResource.getContentEncoding();
+        if (contentEncoding != null && !(acceptsGzip && GzipMembers.ENCODING.equals(contentEncoding))) {
+            return Optional.empty();
+        }
+        return storage.presignDownload(fileResource.getBucketName(), fileResource.getObjectKey(), fileName, contentEncoding);
     }
 
     @Override
@@ -9,6 +9,7 @@ import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Instant;
 import java.util.Date;
 
 @Component
@@ -44,6 +45,39 @@ public class ResourceSecureDownloadHelper {
                 .sign(algorithm);
     }
 
+    /**
+     * Token for the G-code of a job, streamed ready to execute by the job's driver
+     */
+    public String generateJobStreamToken(String jobId, String driverId) {
+        Date now = new Date();
+        Date expiration = new Date(now.getTime() + (tokenExpirationSeconds * 1000L));
+
+        return JWT.create()
+                .withIssuer("secure-download-service")
+                .withSubject(driverId)
+                .withClaim("jobId", jobId)
+                .withClaim("downloadPurpose", "job-gcode-stream")
+                .withIssuedAt(now)
+                .withExpiresAt(expiration)
+                .sign(algorithm);
+    }
+
+    /**
+     * Job granted by a job stream token, or null if the token is not a valid one
+     */
+    public String validateTokenAndExtractJobId(String token) {
+        try {
+            JWTVerifier verifier = JWT.require(algorithm)
+                    .withIssuer("secure-download-service")
+                    .withClaim("downloadPurpose", "job-gcode-stream")
+                    .build();
+
+            return verifier.verify(token).getClaim("jobId").asString();
+        } catch (JWTVerificationException e) {
+            return null;
+        }
+    }
+
     /**
      * Valida il token e restituisce i dati della risorsa
      */
@@ -62,4 +96,47 @@ public class ResourceSecureDownloadHelper {
             return null;
         }
     }
+
+    /**
+     * Token for finalizing a direct upload, carrying what the client announced for it
+     */
+    public String generateUploadToken(StagedUpload upload, Instant expiresAt) {
+        return JWT.create()
+                .withIssuer("secure-download-service")
+                .withClaim("bucket", upload.bucket())
+                .withClaim("objectKey", upload.objectKey())
+                .withClaim("fileName", upload.fileName())
+                .withClaim("contentType", upload.contentType())
+                .withClaim("size", upload.size())
+                .withClaim("sha256", upload.sha256())
+                .withClaim("model", upload.model())
+                .withClaim("downloadPurpose", "staged-upload")
+                .withIssuedAt(new Date())
+                .withExpiresAt(Date.from(expiresAt))
+                .sign(algorithm);
+    }
+
+    /**
+     * Upload granted by an upload token, or null if the token is not a valid one
+     */
+    public StagedUpload validateUploadToken(String token) {
+        try {
+            JWTVerifier verifier = JWT.require(algorithm)
+                    .withIssuer("secure-download-service")
+                    .withClaim("downloadPurpose", "staged-upload")
+                    .build();
+
+            DecodedJWT jwt = verifier.verify(token);
+            return new StagedUpload(
+                    jwt.getClaim("bucket").asString(),
+                    jwt.getClaim("objectKey").asString(),
+                    jwt.getClaim("fileName").asString(),
+                    jwt.getClaim("contentType").asString(),
+                    jwt.getClaim("size").asLong(),
+                    jwt.getClaim("sha256").asString(),
+                    Boolean.TRUE.equals(jwt.getClaim("model").asBoolean()));
+        } catch (JWTVerificationException e) {
+            return null;
+        }
+    }
 }
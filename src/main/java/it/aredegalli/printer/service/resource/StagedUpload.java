@@ -0,0 +1,9 @@
+package it.aredegalli.printer.service.resource;
+
+/**
+ * What a client announced when it was granted a direct upload, carried by the upload token until it is finalized;
+ * {@code model} files are registered with their GLB conversion and their Model
+ */
+public record StagedUpload(String bucket, String objectKey, String fileName, String contentType, long size, String sha256,
+                           boolean model) {
+}
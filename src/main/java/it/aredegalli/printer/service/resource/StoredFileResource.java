@@ -0,0 +1,52 @@
+package it.aredegalli.printer.service.resource;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.InputStream;
+import java.util.function.Supplier;
+
+/**
+ * Re-openable {@link org.springframework.core.io.Resource} over a stored file.
+ * Every {@link #getInputStream()} opens a fresh storage stream, so the content is never buffered
+ * and the same resource can be sent again on retry.
+ */
+public class StoredFileResource extends AbstractResource {
+
+    private final Supplier<InputStream> opener;
+    private final String filename;
+    private final long contentLength;
+
+    public StoredFileResource(Supplier<InputStream> opener, String filename, long contentLength) {
+        this.opener = opener;
+        this.filename = filename;
+        this.contentLength = contentLength;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return opener.get();
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * Known up front from the file metadata; the default implementation would read the whole stream
+     */
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Stored file [" + filename + "]";
+    }
+}
@@ -0,0 +1,39 @@
+package it.aredegalli.printer.service.resource;
+
+import it.aredegalli.printer.dto.resource.UploadSessionDto;
+import it.aredegalli.printer.dto.resource.UploadSessionRequestDto;
+import it.aredegalli.printer.model.resource.FileResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+/**
+ * Resumable uploads: a client sends the file in chunks, can ask where to resume after a failure,
+ * and completes the upload once every chunk is stored.
+ */
+public interface UploadSessionService {
+
+    UploadSessionDto create(UploadSessionRequestDto request, String bucket, boolean model);
+
+    UploadSessionDto get(UUID id);
+
+    /**
+     * Stores the chunk starting at the committed offset, once it matches its checksum, e.g. "sha256 &lt;base64&gt;";
+     * returns the new committed offset
+     */
+    long append(UUID id, long offset, String checksum, InputStream chunk) throws IOException;
+
+    /**
+     * Registers the uploaded file, see {@link FileResourceService#register}; may be called again when registration fails.
+     * Not transactional as a whole: the completed storage upload is recorded before the file is registered.
+     */
+    FileResource complete(UUID id);
+
+    void abort(UUID id);
+
+    /**
+     * Drops the uploads left unfinished past their expiration
+     */
+    void abortExpired();
+}
@@ -0,0 +1,263 @@
+package it.aredegalli.printer.service.resource;
+
+import it.aredegalli.common.exception.BadRequestException;
+import it.aredegalli.common.exception.NotFoundException;
+import it.aredegalli.printer.dto.resource.UploadSessionDto;
+import it.aredegalli.printer.dto.resource.UploadSessionRequestDto;
+import it.aredegalli.printer.dto.storage.UploadResult;
+import it.aredegalli.printer.model.resource.FileResource;
+import it.aredegalli.printer.model.resource.UploadSession;
+import it.aredegalli.printer.repository.resource.UploadSessionRepository;
+import it.aredegalli.printer.service.log.LogService;
+import it.aredegalli.printer.service.storage.MultipartUpload;
+import it.aredegalli.printer.service.storage.StorageService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chunks are stored as the parts of a multipart upload, so all but the last have the same, fixed size.
+ * The SHA-256 of the file is computed as chunks arrive; chunks of a session handled by another node, or before
+ * a restart, leave it to be computed from the stored file when the upload is completed.
+ */
+@Service
+@RequiredArgsConstructor
+public class UploadSessionServiceImpl implements UploadSessionService {
+
+    private static final long MB = 1024L * 1024L;
+    // Smallest part object storage accepts, but for the last one
+    private static final int MIN_CHUNK_SIZE = (int) (5 * MB);
+    private static final String CHECKSUM_ALGORITHM = "sha256";
+
+    private final UploadSessionRepository repo;
+    private final StorageService storage;
+    private final FileResourceService fileResourceService;
+    private final LogService logService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${storage.resumable-upload.chunk-size-mb:8}")
+    private int chunkSizeMb;
+
+    @Value("${storage.resumable-upload.max-size-mb:1024}")
+    private long maxSizeMb;
+
+    @Value("${storage.resumable-upload.expiration-hours:24}")
+    private long expirationHours;
+
+    /**
+     * Hash of the content received so far by this node, by session
+     */
+    private final Map<UUID, PartialHash> hashes = new ConcurrentHashMap<>();
+
+    private record PartialHash(long offset, MessageDigest digest) {
+    }
+
+    @Override
+    public UploadSessionDto create(UploadSessionRequestDto request, String bucket, boolean model) {
+        if (request.getFileName() == null || request.getFileName().isBlank()) {
+            throw new BadRequestException("Nome del file mancante");
+        }
+        if (request.getSize() <= 0 || request.getSize() > maxSizeMb * MB) {
+            throw new BadRequestException("Dimensione dell'upload non ammessa: " + request.getSize());
+        }
+        String contentType = request.getContentType() != null && !request.getContentType().isBlank()
+                ? request.getContentType()
+                : "application/octet-stream";
+
+        MultipartUpload upload = storage.startMultipartUpload(bucket, contentType);
+        Instant now = Instant.now();
+        UploadSession session = repo.save(UploadSession.builder()
+                .fileName(request.getFileName())
+                .fileType(contentType)
+                .fileSize(request.getSize())
+                .chunkSize((int) Math.max(MIN_CHUNK_SIZE, chunkSizeMb * MB))
+                .bucketName(bucket)
+                .model(model)
+                .objectKey(upload.objectKey())
+                .storageUploadId(upload.uploadId())
+                .partETags(new ArrayList<>())
+                .committedOffset(0)
+                .createdAt(now)
+                .expiresAt(now.plus(Duration.ofHours(expirationHours)))
+                .build());
+
+        logService.info("UploadSessionServiceImpl", String.format("Resumable upload %s started for %s, %d bytes",
+                session.getId(), session.getFileName(), session.getFileSize()));
+        return toDto(session);
+    }
+
+    @Override
+    public UploadSessionDto get(UUID id) {
+        return toDto(find(id));
+    }
+
+    @Override
+    public long append(UUID id, long offset, String checksum, InputStream chunk) throws IOException {
+        UploadSession session = find(id);
+        long committed = session.getCommittedOffset();
+        if (committed == session.getFileSize()) {
+            throw new BadRequestException("Upload già completo: " + id);
+        }
+        if (offset != committed) {
+            throw new BadRequestException("Offset " + offset + " diverso da quello registrato: " + committed);
+        }
+        byte[] expected = parseChecksum(checksum);
+
+        int length = (int) Math.min(session.getChunkSize(), session.getFileSize() - committed);
+        byte[] data = chunk.readNBytes(length + 1);
+        if (data.length != length) {
+            throw new BadRequestException("Il chunk deve essere di " + length + " byte");
+        }
+        if (!MessageDigest.isEqual(sha256().digest(data), expected)) {
+            throw new BadRequestException("Checksum del chunk non corrispondente all'offset " + offset);
+        }
+
+        int partNumber = session.getPartETags().size() + 1;
+        String eTag = storage.uploadPart(session.getBucketName(), upload(session), partNumber, data);
+
+        session.getPartETags().add(eTag);
+        session.setCommittedOffset(committed + length);
+        session.setExpiresAt(Instant.now().plus(Duration.ofHours(expirationHours)));
+        try {
+            repo.save(session);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw new BadRequestException("Chunk all'offset " + offset + " già ricevuto");
+        }
+
+        PartialHash partial = hashes.get(id);
+        MessageDigest digest = committed == 0 ? sha256()
+                : partial != null && partial.offset() == committed ? partial.digest() : null;
+        if (digest != null) {
+            digest.update(data);
+            hashes.put(id, new PartialHash(committed + length, digest));
+        } else {
+            hashes.remove(id);
+        }
+        return committed + length;
+    }
+
+    /**
+     * The stored file is recorded on the session before it is registered, so that a registration that fails
+     * can be retried by completing the session again
+     */
+    @Override
+    public FileResource complete(UUID id) {
+        UploadSession session = find(id);
+        if (session.getCommittedOffset() != session.getFileSize()) {
+            throw new BadRequestException("Upload incompleto: " + session.getCommittedOffset() + " di " + session.getFileSize() + " byte");
+        }
+
+        if (session.getStoredKey() == null) {
+            PartialHash partial = hashes.get(id);
+            byte[] hash = partial != null && partial.offset() == session.getFileSize() ? partial.digest().digest() : null;
+            UploadResult result = storage.completeMultipartUpload(session.getBucketName(), upload(session),
+                    session.getPartETags(), session.getFileSize(), hash);
+            hashes.remove(id);
+
+            session.setStoredKey(result.getObjectKey());
+            try {
+                session = repo.save(session);
+            } catch (ObjectOptimisticLockingFailureException e) {
+                throw new BadRequestException("Upload già in completamento: " + id);
+            }
+            logService.info("UploadSessionServiceImpl", String.format("Resumable upload %s of %s completed%s",
+                    id, session.getFileName(), hash == null ? ", hashed from storage" : ""));
+        }
+
+        UploadSession completed = session;
+        return transactionTemplate.execute(status -> {
+            repo.delete(completed);
+            return fileResourceService.register(stored(completed), completed.getFileName(), completed.getFileType(),
+                    completed.getBucketName(), completed.isModel());
+        });
+    }
+
+    @Override
+    public void abort(UUID id) {
+        abort(find(id));
+    }
+
+    @Override
+    public void abortExpired() {
+        for (UploadSession session : repo.findByExpiresAtBefore(Instant.now())) {
+            try {
+                abort(session);
+                logService.info("UploadSessionServiceImpl", "Expired resumable upload " + session.getId() + " aborted");
+            } catch (Exception e) {
+                logService.error("UploadSessionServiceImpl", "Failed to abort resumable upload " + session.getId() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void abort(UploadSession session) {
+        storage.abortMultipartUpload(session.getBucketName(), upload(session));
+        hashes.remove(session.getId());
+        repo.delete(session);
+    }
+
+    private UploadSession find(UUID id) {
+        return repo.findById(id)
+                .orElseThrow(() -> new NotFoundException("Upload non trovato: " + id));
+    }
+
+    private static MultipartUpload upload(UploadSession session) {
+        return new MultipartUpload(session.getObjectKey(), session.getStorageUploadId());
+    }
+
+    /**
+     * Stored files are keyed by the hex SHA-256 of their content
+     */
+    private static UploadResult stored(UploadSession session) {
+        return new UploadResult(session.getStoredKey(), HexFormat.of().parseHex(session.getStoredKey()),
+                session.getFileSize(), session.getFileSize(), null);
+    }
+
+    /**
+     * Digest of an "Upload-Checksum" value: the algorithm and the base64 digest, separated by a space
+     */
+    private static byte[] parseChecksum(String checksum) {
+        String[] parts = checksum != null ? checksum.trim().split("\\s+") : new String[0];
+        if (parts.length != 2 || !parts[0].equalsIgnoreCase(CHECKSUM_ALGORITHM)) {
+            throw new BadRequestException("Checksum del chunk mancante o non sha256");
+        }
+        try {
+            return Base64.getDecoder().decode(parts[1]);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Checksum del chunk non valido");
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static UploadSessionDto toDto(UploadSession session) {
+        return UploadSessionDto.builder()
+                .id(session.getId())
+                .fileName(session.getFileName())
+                .size(session.getFileSize())
+                .chunkSize(session.getChunkSize())
+                .offset(session.getCommittedOffset())
+                .expiresAt(session.getExpiresAt())
+                .build();
+    }
+}
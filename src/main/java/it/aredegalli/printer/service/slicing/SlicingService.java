@@ -1,5 +1,6 @@
 package it.aredegalli.printer.service.slicing;
 
+import it.aredegalli.printer.dto.slicing.SlicingMaterialQuoteDto;
 import it.aredegalli.printer.dto.slicing.SlicingResultDto;
 import it.aredegalli.printer.dto.slicing.queue.SlicingQueueDto;
 
@@ -11,6 +12,8 @@ public interface SlicingService {
 
     SlicingResultDto getSlicingResultById(UUID id);
 
+    List<SlicingMaterialQuoteDto> getMaterialQuotes(UUID id);
+
     void deleteSlicingResultById(UUID id);
 
     SlicingQueueDto getQueueStatus(UUID queueId);
@@ -1,7 +1,9 @@
 package it.aredegalli.printer.service.slicing;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import it.aredegalli.common.exception.NotFoundException;
 import it.aredegalli.printer.dto.material.MaterialDto;
+import it.aredegalli.printer.dto.slicing.SlicingMaterialQuoteDto;
 import it.aredegalli.printer.dto.slicing.SlicingResultDto;
 import it.aredegalli.printer.dto.slicing.queue.SlicingQueueDto;
 import it.aredegalli.printer.enums.slicing.SlicingStatus;
@@ -23,18 +25,29 @@ import it.aredegalli.printer.repository.slicing.result.SlicingResultMaterialRepo
 import it.aredegalli.printer.repository.slicing.result.SlicingResultRepository;
 import it.aredegalli.printer.repository.validation.ModelValidationRepository;
 import it.aredegalli.printer.service.log.LogService;
+import it.aredegalli.printer.service.slicing.cache.SlicingCacheService;
 import it.aredegalli.printer.service.slicing.engine.SlicingEngine;
 import it.aredegalli.printer.service.slicing.engine.SlicingEngineSelector;
+import it.aredegalli.printer.service.slicing.engine.cura.CuraEngineAdapter.RetryableSlicingException;
+import it.aredegalli.printer.service.slicing.event.SlicingQueuedEvent;
 import it.aredegalli.printer.service.slicing.metrics.SlicingMetricsService;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
@@ -53,6 +66,19 @@ public class SlicingServiceImpl implements SlicingService {
     private final ModelRepository modelRepository;
     private final ModelValidationRepository modelValidationRepository;
     private final SlicingQueueMapper slicingQueueMapper;
+    private final SlicingCacheService slicingCacheService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${slicing.queue.retry.max-attempts:4}")
+    private int maxAttempts;
+
+    @Value("${slicing.queue.retry.base-delay-seconds:10}")
+    private long retryBaseDelaySeconds;
+
+    @Value("${slicing.queue.retry.max-delay-seconds:300}")
+    private long retryMaxDelaySeconds;
 
     @Override
     public List<SlicingResultDto> getAllSlicingResultBySourceId(UUID sourceId) {
@@ -69,6 +95,11 @@ public class SlicingServiceImpl implements SlicingService {
                 .orElseThrow(() -> new NotFoundException("Slicing result not found"));
     }
 
+    @Override
+    public List<SlicingMaterialQuoteDto> getMaterialQuotes(UUID id) {
+        return metricsService.quoteMaterials(id);
+    }
+
     @Override
     @Transactional
     public void deleteSlicingResultById(UUID id) {
@@ -112,10 +143,12 @@ public class SlicingServiceImpl implements SlicingService {
                 .status(SlicingStatus.QUEUED.getCode())
                 .createdAt(Instant.now())
                 .progressPercentage(0)
+                .attemptCount(0)
                 .createdByUserId(userId)
                 .build();
 
         queue = slicingQueueRepository.save(queue);
+        eventPublisher.publishEvent(new SlicingQueuedEvent(queue.getId()));
         log.info("SlicingServiceImpl", "Slicing queued with ID: " + queue.getId());
         return queue.getId();
     }
@@ -133,52 +166,140 @@ public class SlicingServiceImpl implements SlicingService {
         return slicingQueueMapper.toDtoList(queue);
     }
 
+    /**
+     * Runs in three phases so that no database connection is held while the engine works:
+     * a short claim transaction loading the job, the engine and storage work outside any transaction,
+     * and a short commit transaction recording the outcome.
+     */
     @Override
-    @Transactional
     public void processSlicing(UUID queueId) {
-        SlicingQueue queue = slicingQueueRepository.findById(queueId).orElse(null);
-        if (queue == null) {
-            log.error("SlicingServiceImpl", "Queue not found: " + queueId);
-            return;
-        }
+        AtomicLong dbHeldNanos = new AtomicLong();
 
-        if (!SlicingStatus.QUEUED.getCode().equals(queue.getStatus())) {
-            log.warn("SlicingServiceImpl", "Queue " + queueId + " is already in status: " + queue.getStatus());
+        ClaimedJob claimed = transactionPhase("claim", dbHeldNanos, status -> claim(queueId));
+        if (claimed == null) {
             return;
         }
+        SlicingQueue queue = claimed.queue();
 
         log.info("SlicingServiceImpl", "Starting slicing process for queue: " + queueId);
         Instant startTime = Instant.now();
 
         try {
-            updateQueueStatus(queue, SlicingStatus.PROCESSING, "Starting slicing process");
-
-            ModelValidation validation = validateModelIfNeeded(queue.getModel());
-            if (validation.getHasErrors()) {
-                throw new SlicingProcessException("Model validation failed: " + validation.getErrorDetails());
+            if (claimed.validation().getHasErrors()) {
+                throw new SlicingProcessException("Model validation failed: " + claimed.validation().getErrorDetails());
             }
 
-            SlicingEngine engine = engineSelector.selectEngine(queue.getSlicingProperty(), queue.getModel());
-            SlicingResult result = engine.slice(queue.getModel(), queue.getSlicingProperty());
-
-            metricsService.calculateMetrics(result);
-            createQueueResult(queue, result);
+            SlicingResult result = executePhase(() -> {
+                SlicingEngine engine = engineSelector.selectEngine(queue.getSlicingProperty(), queue.getModel());
+                return slicingCacheService.slice(engine, queue.getModel(), queue.getSlicingProperty());
+            });
 
             Duration processingTime = Duration.between(startTime, Instant.now());
             String completionMessage = String.format("Slicing completed in %d seconds. Lines: %d",
                     processingTime.getSeconds(), result.getLines());
 
-            updateQueueStatus(queue, SlicingStatus.COMPLETED, completionMessage);
-            log.info("SlicingServiceImpl", completionMessage);
+            boolean recorded = transactionPhase("commit", dbHeldNanos, status -> {
+                if (slicingQueueRepository.completeClaim(queueId, queue.getWorkerId(), Instant.now()) == 0) {
+                    return false;
+                }
+                createQueueResult(queueId, result);
+                return true;
+            });
+            if (recorded) {
+                log.info("SlicingServiceImpl", completionMessage);
+            } else {
+                logLostClaim(queueId, completionMessage);
+            }
 
         } catch (Exception e) {
             Duration processingTime = Duration.between(startTime, Instant.now());
             String errorMessage = String.format("Slicing failed after %d seconds: %s",
                     processingTime.getSeconds(), e.getMessage());
 
-            updateQueueStatus(queue, SlicingStatus.FAILED, errorMessage);
-            log.error("SlicingServiceImpl", errorMessage);
+            boolean recorded = transactionPhase("commit", dbHeldNanos, status -> {
+                if (e instanceof RetryableSlicingException && attempts(queue) < maxAttempts) {
+                    return scheduleRetry(queue, errorMessage);
+                }
+                if (slicingQueueRepository.failClaim(queueId, queue.getWorkerId(), Instant.now(), errorMessage) == 0) {
+                    return false;
+                }
+                log.error("SlicingServiceImpl", errorMessage);
+                return true;
+            });
+            if (!recorded) {
+                logLostClaim(queueId, errorMessage);
+            }
+        } finally {
+            meterRegistry.timer("slicing.db.connection.held").record(dbHeldNanos.get(), TimeUnit.NANOSECONDS);
+            log.debug("SlicingServiceImpl", String.format("Queue %s held a database connection for %d ms",
+                    queueId, TimeUnit.NANOSECONDS.toMillis(dbHeldNanos.get())));
+        }
+    }
+
+    /**
+     * Load the claimed job with everything the engine needs, and validate the model
+     */
+    private ClaimedJob claim(UUID queueId) {
+        SlicingQueue queue = slicingQueueRepository.findForProcessing(queueId).orElse(null);
+        if (queue == null) {
+            log.error("SlicingServiceImpl", "Queue not found: " + queueId);
+            return null;
+        }
+
+        // Jobs reach this point already claimed by a worker, see SlicingQueueRepository#claimNext
+        if (!SlicingStatus.PROCESSING.getCode().equals(queue.getStatus())) {
+            log.warn("SlicingServiceImpl", "Queue " + queueId + " is not claimed, status: " + queue.getStatus());
+            return null;
+        }
+
+        return new ClaimedJob(queue, validateModelIfNeeded(queue.getModel()));
+    }
+
+    private <T> T transactionPhase(String phase, AtomicLong heldNanos, TransactionCallback<T> callback) {
+        long start = System.nanoTime();
+        try {
+            return transactionTemplate.execute(callback);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            heldNanos.addAndGet(elapsed);
+            meterRegistry.timer("slicing.phase.duration", "phase", phase).record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private <T> T executePhase(Supplier<T> work) {
+        return meterRegistry.timer("slicing.phase.duration", "phase", "execute").record(work);
+    }
+
+    /**
+     * Put the job back in the queue, claimable again only after an exponential backoff with jitter;
+     * false when this worker no longer holds the claim
+     */
+    private boolean scheduleRetry(SlicingQueue queue, String errorMessage) {
+        int attempt = attempts(queue);
+        long cap = Math.min(retryMaxDelaySeconds, retryBaseDelaySeconds << Math.min(attempt - 1, 20));
+        long delayMillis = ThreadLocalRandom.current().nextLong(cap * 500, cap * 1000 + 1);
+        Instant nextAttemptAt = Instant.now().plusMillis(delayMillis);
+
+        if (slicingQueueRepository.retryClaim(queue.getId(), queue.getWorkerId(), nextAttemptAt, errorMessage) == 0) {
+            return false;
         }
+
+        eventPublisher.publishEvent(new SlicingQueuedEvent(queue.getId(), nextAttemptAt));
+        log.warn("SlicingServiceImpl", String.format("%s - retry %d/%d scheduled at %s",
+                errorMessage, attempt + 1, maxAttempts, nextAttemptAt));
+        return true;
+    }
+
+    /**
+     * The lease expired while the engine worked and the job was requeued, possibly claimed again:
+     * its current state belongs to whoever holds it now
+     */
+    private void logLostClaim(UUID queueId, String outcome) {
+        log.warn("SlicingServiceImpl", "Queue " + queueId + " is no longer claimed by this worker, outcome dropped: " + outcome);
+    }
+
+    private int attempts(SlicingQueue queue) {
+        return queue.getAttemptCount() != null ? queue.getAttemptCount() : 0;
     }
 
     private Optional<SlicingQueue> findActiveQueueForModel(UUID modelId, UUID slicingPropertyId) {
@@ -227,25 +348,9 @@ public class SlicingServiceImpl implements SlicingService {
         return modelValidationRepository.save(validation);
     }
 
-    private void updateQueueStatus(SlicingQueue queue, SlicingStatus status, String message) {
-        queue.setStatus(status.getCode());
-
-        if (status == SlicingStatus.PROCESSING && queue.getStartedAt() == null) {
-            queue.setStartedAt(Instant.now());
-        } else if (status == SlicingStatus.COMPLETED || status == SlicingStatus.FAILED) {
-            queue.setCompletedAt(Instant.now());
-        }
-
-        if (status == SlicingStatus.FAILED) {
-            queue.setErrorMessage(message);
-        }
-
-        slicingQueueRepository.save(queue);
-    }
-
-    private void createQueueResult(SlicingQueue queue, SlicingResult result) {
+    private void createQueueResult(UUID queueId, SlicingResult result) {
         SlicingQueueResult queueResult = SlicingQueueResult.builder()
-                .slicingQueue(queue)
+                .slicingQueue(slicingQueueRepository.getReferenceById(queueId))
                 .slicingResult(result)
                 .build();
 
@@ -266,6 +371,9 @@ public class SlicingServiceImpl implements SlicingService {
         return dto;
     }
 
+    private record ClaimedJob(SlicingQueue queue, ModelValidation validation) {
+    }
+
     public static class SlicingProcessException extends RuntimeException {
         public SlicingProcessException(String message) {
             super(message);
@@ -0,0 +1,29 @@
+package it.aredegalli.printer.service.slicing.analysis;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * What extruded filament was used for, from the slicer's ";TYPE:" comments.
+ * A type belongs to the first feature, in declaration order, with one of its keywords in it,
+ * so "SUPPORT-INTERFACE" is support and "Solid infill" is skin; extrusion before any type comment is other.
+ */
+public enum ExtrusionFeature {
+
+    SUPPORT("support"),
+    ADHESION("skirt", "brim", "raft", "prime", "wipe"),
+    OUTER_WALL("wall-outer", "outer wall", "external perimeter", "overhang perimeter"),
+    INNER_WALL("wall", "perimeter"),
+    SKIN("skin", "solid", "top", "bottom", "ironing", "bridge"),
+    INFILL("fill"),
+    OTHER;
+
+    // Lower case, matched ignoring case
+    final byte[][] keywords;
+
+    ExtrusionFeature(String... keywords) {
+        this.keywords = new byte[keywords.length][];
+        for (int i = 0; i < keywords.length; i++) {
+            this.keywords[i] = keywords[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+}
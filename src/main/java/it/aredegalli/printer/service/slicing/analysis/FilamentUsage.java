@@ -0,0 +1,36 @@
+package it.aredegalli.printer.service.slicing.analysis;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Volume, weight and cost of a length of filament, for a given material
+ */
+public final class FilamentUsage {
+
+    private static final BigDecimal THOUSAND = BigDecimal.valueOf(1000);
+    private static final BigDecimal QUARTER_PI = BigDecimal.valueOf(Math.PI / 4);
+
+    private FilamentUsage() {
+    }
+
+    /**
+     * Volume in mm³ of filament of the given diameter; E moves are filament length, not deposited line length
+     */
+    public static BigDecimal volumeMm3(BigDecimal filamentLengthMm, BigDecimal diameterMm) {
+        return filamentLengthMm.multiply(diameterMm.pow(2), MathContext.DECIMAL64)
+                .multiply(QUARTER_PI, MathContext.DECIMAL64)
+                .setScale(2, RoundingMode.HALF_UP);
+    }
+
+    public static BigDecimal weightG(BigDecimal volumeMm3, BigDecimal densityGCm3) {
+        return volumeMm3.multiply(densityGCm3)
+                .divide(THOUSAND, 2, RoundingMode.HALF_UP);
+    }
+
+    public static BigDecimal cost(BigDecimal weightG, BigDecimal costPerKg) {
+        return weightG.multiply(costPerKg)
+                .divide(THOUSAND, 2, RoundingMode.HALF_UP);
+    }
+}
@@ -1,178 +1,273 @@
 package it.aredegalli.printer.service.slicing.analysis;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
- * Analyzes G-code files to extract real slicing metrics
+ * Analyzes G-code files to extract real slicing metrics.
+ * Stateless: every call scans with its own {@link GcodeScanner} and returns a fresh result.
  */
 @Component
 @Slf4j
 public class GcodeAnalyzer {
 
-    // G-code patterns for parsing
-    private static final Pattern LAYER_PATTERN = Pattern.compile(";\\s*LAYER\\s*[:\\s]\\s*(\\d+)", Pattern.CASE_INSENSITIVE);
-    private static final Pattern LAYER_HEIGHT_PATTERN = Pattern.compile(";\\s*layer_height\\s*=\\s*([\\d.]+)", Pattern.CASE_INSENSITIVE);
-    private static final Pattern PRINT_TIME_PATTERN = Pattern.compile(";\\s*estimated\\s+printing\\s+time.*?(\\d+)h\\s*(\\d+)m\\s*(\\d+)s", Pattern.CASE_INSENSITIVE);
-    private static final Pattern PRINT_TIME_PATTERN_2 = Pattern.compile(";\\s*TIME\\s*[:\\s]\\s*(\\d+)", Pattern.CASE_INSENSITIVE);
-    private static final Pattern FILAMENT_USED_PATTERN = Pattern.compile(";\\s*filament\\s+used.*?([\\d.]+)m", Pattern.CASE_INSENSITIVE);
-    private static final Pattern FILAMENT_WEIGHT_PATTERN = Pattern.compile(";\\s*filament\\s+used.*?([\\d.]+)g", Pattern.CASE_INSENSITIVE);
-    private static final Pattern EXTRUSION_PATTERN = Pattern.compile("G1.*?E([\\d.-]+)", Pattern.CASE_INSENSITIVE);
-    private static final Pattern SUPPORT_PATTERN = Pattern.compile(";\\s*TYPE:.*SUPPORT", Pattern.CASE_INSENSITIVE);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MB = 1024L * 1024L;
+    private static final long MAX_MAPPING = 1024L * MB;
+    private static final byte[] LAYER_MARKER = "\n;LAYER:".getBytes(StandardCharsets.US_ASCII);
 
-    private final GcodeMetrics metrics = new GcodeMetrics();
+    @Value("${slicing.analysis.parallelism:0}")
+    private int parallelism;
 
-    public GcodeMetrics analyzeGcode(InputStream gcodeStream) throws IOException {
-        reset();
+    @Value("${slicing.analysis.parallel-threshold-mb:64}")
+    private long parallelThresholdMb;
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(gcodeStream))) {
-            String line;
-            boolean inSupportSection = false;
+    @Value("${slicing.analysis.chunk-size-mb:16}")
+    private long chunkSizeMb;
 
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
+    @Value("${slicing.analysis.index-line-interval:1000}")
+    private int indexLineInterval;
 
-                // Parse header comments for metadata
-                parseMetadata(line);
+    // Material assumed for the weight and cost stored with a slicing; quotes for actual materials use the raw length
+    @Value("${slicing.analysis.default-material.diameter-mm:1.75}")
+    private BigDecimal defaultDiameterMm;
 
-                // Track layers
-                parseLayers(line);
+    @Value("${slicing.analysis.default-material.density-g-cm3:1.25}")
+    private BigDecimal defaultDensityGCm3;
 
-                // Track extrusion
-                if (line.startsWith("G1") && line.contains("E")) {
-                    parseExtrusion(line, inSupportSection);
-                }
+    @Value("${slicing.analysis.default-material.cost-per-kg:25.0}")
+    private BigDecimal defaultCostPerKg;
 
-                // Track support sections
-                if (SUPPORT_PATTERN.matcher(line).find()) {
-                    inSupportSection = true;
-                } else if (line.startsWith(";TYPE:") && !line.contains("SUPPORT")) {
-                    inSupportSection = false;
-                }
-            }
+    private ForkJoinPool pool;
 
-            calculateDerivedMetrics();
+    @PostConstruct
+    public void init() {
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public GcodeMetrics analyzeGcode(InputStream gcodeStream) throws IOException {
+        GcodeScanner scanner = newScanner();
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = gcodeStream.read(buffer)) != -1) {
+            scanner.update(buffer, 0, read);
         }
 
+        return complete(scanner);
+    }
+
+    /**
+     * Scanner for a whole file that also records the checkpoints of its {@link GcodeIndex}
+     */
+    public GcodeScanner newScanner() {
+        return new GcodeScanner(indexLineInterval, 0);
+    }
+
+    /**
+     * Finish a scanner fed by the caller and derive volume, weight and cost from what it collected
+     */
+    public GcodeMetrics complete(GcodeScanner scanner) {
+        GcodeMetrics metrics = scanner.finish();
+        calculateDerivedMetrics(metrics);
         return metrics;
     }
 
-    private void parseMetadata(String line) {
-        // Parse layer height
-        Matcher layerHeightMatcher = LAYER_HEIGHT_PATTERN.matcher(line);
-        if (layerHeightMatcher.find()) {
-            metrics.layerHeight = Double.parseDouble(layerHeightMatcher.group(1));
-        }
+    /**
+     * Whether a file of this size is better analyzed with {@link #analyzeFile(Path)} than streamed
+     */
+    public boolean isParallelWorthwhile(long size) {
+        return size >= parallelThresholdMb * MB;
+    }
 
-        // Parse print time (multiple formats)
-        Matcher printTimeMatcher = PRINT_TIME_PATTERN.matcher(line);
-        if (printTimeMatcher.find()) {
-            int hours = Integer.parseInt(printTimeMatcher.group(1));
-            int minutes = Integer.parseInt(printTimeMatcher.group(2));
-            int seconds = Integer.parseInt(printTimeMatcher.group(3));
-            metrics.estimatedPrintTimeMinutes = hours * 60 + minutes + (seconds > 30 ? 1 : 0);
-        }
+    /**
+     * Memory-map a local G-code file, split it at layer starts and scan the parts in parallel.
+     * The merged result is identical to a sequential {@link #analyzeGcode(InputStream)} of the same bytes.
+     */
+    public GcodeMetrics analyzeFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<Long> starts = chunkStarts(channel, size);
+
+            List<Callable<GcodeScanner>> tasks = new ArrayList<>(starts.size());
+            for (int i = 0; i < starts.size(); i++) {
+                long from = starts.get(i);
+                long to = i + 1 < starts.size() ? starts.get(i + 1) : size;
+                tasks.add(() -> scanRegion(channel, from, to));
+            }
 
-        // Alternative time format (seconds)
-        Matcher timeMatcher2 = PRINT_TIME_PATTERN_2.matcher(line);
-        if (timeMatcher2.find() && metrics.estimatedPrintTimeMinutes == 0) {
-            int totalSeconds = Integer.parseInt(timeMatcher2.group(1));
-            metrics.estimatedPrintTimeMinutes = (totalSeconds + 30) / 60; // Round to nearest minute
-        }
+            List<GcodeScanner> parts = new ArrayList<>(tasks.size());
+            for (Future<GcodeScanner> part : pool.invokeAll(tasks)) {
+                parts.add(part.get());
+            }
 
-        // Parse filament length
-        Matcher filamentMatcher = FILAMENT_USED_PATTERN.matcher(line);
-        if (filamentMatcher.find()) {
-            metrics.filamentLengthMm = (int) (Double.parseDouble(filamentMatcher.group(1)) * 1000);
+            log.debug("Analyzed {} bytes in {} parallel chunks", size, parts.size());
+
+            GcodeMetrics metrics = GcodeScanner.merge(parts);
+            calculateDerivedMetrics(metrics);
+            return metrics;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while analyzing " + file);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("G-code analysis failed for " + file, e.getCause());
         }
+    }
 
-        // Parse filament weight
-        Matcher weightMatcher = FILAMENT_WEIGHT_PATTERN.matcher(line);
-        if (weightMatcher.find()) {
-            metrics.materialWeightG = BigDecimal.valueOf(Double.parseDouble(weightMatcher.group(1)))
-                    .setScale(2, RoundingMode.HALF_UP);
+    /**
+     * Chunk offsets at least {@code chunk-size-mb} apart, each at the start of the first ";LAYER:n" line after that.
+     * Parts only start at layer lines, where a sequential pass records a checkpoint too: a part cut anywhere else
+     * would count its checkpoint interval from its own first line and index different lines. The rest of a file
+     * without further layer lines is therefore left in one part.
+     */
+    private List<Long> chunkStarts(FileChannel channel, long size) throws IOException {
+        long chunkSize = Math.max(1, chunkSizeMb) * MB;
+        List<Long> starts = new ArrayList<>();
+        starts.add(0L);
+
+        long next = chunkSize;
+        while (next < size) {
+            long start = findLayerLine(channel, next, size);
+            if (start < 0) {
+                break;
+            }
+            starts.add(start);
+            next = start + chunkSize;
         }
+
+        return starts;
     }
 
-    private void parseLayers(String line) {
-        Matcher layerMatcher = LAYER_PATTERN.matcher(line);
-        if (layerMatcher.find()) {
-            int layerNum = Integer.parseInt(layerMatcher.group(1));
-            metrics.layerCount = Math.max(metrics.layerCount, layerNum + 1);
+    /**
+     * Start of the first ";LAYER:" line after {@code from} followed by a layer number, or -1
+     */
+    private static long findLayerLine(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer next = ByteBuffer.allocate(1);
+        long position = from;
+        while (position < size) {
+            long marker = find(channel, position, size, LAYER_MARKER);
+            if (marker < 0) {
+                return -1;
+            }
+            next.clear();
+            if (channel.read(next, marker + LAYER_MARKER.length) == 1) {
+                byte c = next.get(0);
+                if ((c >= '0' && c <= '9') || c == '-') {
+                    // Split right after the newline
+                    return marker + 1;
+                }
+            }
+            position = marker + 1;
         }
+        return -1;
     }
 
-    private void parseExtrusion(String line, boolean isSupport) {
-        Matcher extrusionMatcher = EXTRUSION_PATTERN.matcher(line);
-        if (extrusionMatcher.find()) {
-            double extrusionAmount = Double.parseDouble(extrusionMatcher.group(1));
-
-            if (extrusionAmount > metrics.lastExtrusionValue) {
-                double extrusionDiff = extrusionAmount - metrics.lastExtrusionValue;
-                metrics.totalExtrusion += extrusionDiff;
+    /**
+     * Offset of the first occurrence of {@code pattern} in [from, to), or -1
+     */
+    private static long find(FileChannel channel, long from, long to, byte[] pattern) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = from;
+
+        while (position < to) {
+            window.clear();
+            window.limit((int) Math.min(window.capacity(), to - position));
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                return -1;
+            }
 
-                if (isSupport) {
-                    metrics.supportExtrusion += extrusionDiff;
+            byte[] bytes = window.array();
+            for (int i = 0; i + pattern.length <= read; i++) {
+                if (matches(bytes, i, pattern)) {
+                    return position + i;
                 }
             }
 
-            metrics.lastExtrusionValue = extrusionAmount;
+            if (position + read >= to) {
+                return -1;
+            }
+            // Overlap windows so a pattern crossing the edge is not missed
+            position += Math.max(1, read - pattern.length + 1);
         }
+
+        return -1;
     }
 
-    private void calculateDerivedMetrics() {
-        // Calculate material volume from extrusion
-        // Formula: volume = extrusion_length * (π * (nozzle_diameter/2)²) * layer_height
-        double nozzleDiameter = 0.4; // mm - should come from printer config
-        double nozzleArea = Math.PI * Math.pow(nozzleDiameter / 2, 2);
+    private static boolean matches(byte[] bytes, int offset, byte[] pattern) {
+        for (int k = 0; k < pattern.length; k++) {
+            if (bytes[offset + k] != pattern[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        if (metrics.layerHeight > 0) {
-            double volumeMm3 = metrics.totalExtrusion * nozzleArea * metrics.layerHeight;
-            metrics.materialVolumeMm3 = BigDecimal.valueOf(volumeMm3)
-                    .setScale(2, RoundingMode.HALF_UP);
+    private GcodeScanner scanRegion(FileChannel channel, long from, long to) throws IOException {
+        GcodeScanner scanner = new GcodeScanner(indexLineInterval, from);
+        byte[] buffer = new byte[BUFFER_SIZE];
 
-            double supportVolumeMm3 = metrics.supportExtrusion * nozzleArea * metrics.layerHeight;
-            metrics.supportVolumeMm3 = BigDecimal.valueOf(supportVolumeMm3)
-                    .setScale(2, RoundingMode.HALF_UP);
+        for (long window = from; window < to; window += MAX_MAPPING) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, window, Math.min(MAX_MAPPING, to - window));
+            while (mapped.hasRemaining()) {
+                int length = Math.min(buffer.length, mapped.remaining());
+                mapped.get(buffer, 0, length);
+                scanner.update(buffer, 0, length);
+            }
         }
 
+        return scanner;
+    }
+
+    private void calculateDerivedMetrics(GcodeMetrics metrics) {
+        // E moves are filament length: the volume is that length times the filament cross-section
+        metrics.materialVolumeMm3 = FilamentUsage.volumeMm3(BigDecimal.valueOf(metrics.totalExtrusion), defaultDiameterMm);
+        metrics.supportVolumeMm3 = FilamentUsage.volumeMm3(BigDecimal.valueOf(metrics.supportExtrusion), defaultDiameterMm);
+
         // Calculate weight if not found in comments
         if (metrics.materialWeightG.compareTo(BigDecimal.ZERO) == 0 &&
                 metrics.materialVolumeMm3.compareTo(BigDecimal.ZERO) > 0) {
-
-            // Default PLA density: 1.25 g/cm³
-            double densityGPerCm3 = 1.25;
-            double volumeCm3 = metrics.materialVolumeMm3.doubleValue() / 1000;
-            metrics.materialWeightG = BigDecimal.valueOf(volumeCm3 * densityGPerCm3)
-                    .setScale(2, RoundingMode.HALF_UP);
+            metrics.materialWeightG = FilamentUsage.weightG(metrics.materialVolumeMm3, defaultDensityGCm3);
         }
 
-        // Estimate cost (default: €25/kg for PLA)
         if (metrics.materialWeightG.compareTo(BigDecimal.ZERO) > 0) {
-            BigDecimal costPerKg = BigDecimal.valueOf(25.0);
-            metrics.estimatedCost = metrics.materialWeightG
-                    .divide(BigDecimal.valueOf(1000), 4, RoundingMode.HALF_UP)
-                    .multiply(costPerKg)
-                    .setScale(2, RoundingMode.HALF_UP);
+            metrics.estimatedCost = FilamentUsage.cost(metrics.materialWeightG, defaultCostPerKg);
         }
 
-        log.debug("GcodeAnalyzer", "Analysis complete: {} layers, {} min print time, {} g material",
+        log.debug("Analysis complete: {} layers, {} min print time, {} g material",
                 metrics.layerCount, metrics.estimatedPrintTimeMinutes, metrics.materialWeightG);
     }
 
-    private void reset() {
-        metrics.reset();
-    }
-
     public static class GcodeMetrics {
         public int layerCount = 0;
         public int estimatedPrintTimeMinutes = 0;
@@ -182,25 +277,14 @@ public class GcodeAnalyzer {
         public BigDecimal supportVolumeMm3 = BigDecimal.ZERO;
         public int filamentLengthMm = 0;
 
-        // Internal tracking
+        // Raw scan results
         public double layerHeight = 0.2;
         public double totalExtrusion = 0;
         public double supportExtrusion = 0;
-        public double lastExtrusionValue = 0;
-
-        public void reset() {
-            layerCount = 0;
-            estimatedPrintTimeMinutes = 0;
-            materialVolumeMm3 = BigDecimal.ZERO;
-            materialWeightG = BigDecimal.ZERO;
-            estimatedCost = BigDecimal.ZERO;
-            supportVolumeMm3 = BigDecimal.ZERO;
-            filamentLengthMm = 0;
-            layerHeight = 0.2;
-            totalExtrusion = 0;
-            supportExtrusion = 0;
-            lastExtrusionValue = 0;
-        }
+        public Map<ExtrusionFeature, Double> featureExtrusion = new EnumMap<>(ExtrusionFeature.class);
+
+        // Present when the scan recorded checkpoints
+        public GcodeIndex index;
 
         public int getLayerCount() {
             return layerCount;
@@ -229,5 +313,20 @@ public class GcodeAnalyzer {
         public int getFilamentLengthMm() {
             return filamentLengthMm;
         }
+
+        /**
+         * Filament fed, in mm, retractions excluded
+         */
+        public double getTotalExtrusion() {
+            return totalExtrusion;
+        }
+
+        public Map<ExtrusionFeature, Double> getFeatureExtrusion() {
+            return featureExtrusion;
+        }
+
+        public GcodeIndex getIndex() {
+            return index;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package it.aredegalli.printer.service.slicing.analysis;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Pass-through stream that feeds every byte it returns to a {@link GcodeScanner},
+ * so G-code is analyzed by whoever consumes it, e.g. the storage upload.
+ * Mark/reset is not supported: each byte reaches the scanner exactly once and in order.
+ */
+public class GcodeAnalyzingInputStream extends FilterInputStream {
+
+    private final GcodeScanner scanner;
+    private final byte[] single = new byte[1];
+
+    public GcodeAnalyzingInputStream(InputStream in, GcodeScanner scanner) {
+        super(in);
+        this.scanner = scanner;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            single[0] = (byte) b;
+            scanner.update(single, 0, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+            scanner.update(b, off, read);
+        }
+        return read;
+    }
+
+    /**
+     * Skipped bytes are still read so the scanner sees them
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
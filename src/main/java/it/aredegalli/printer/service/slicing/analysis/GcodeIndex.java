@@ -0,0 +1,368 @@
+package it.aredegalli.printer.service.slicing.analysis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Checkpoints of a G-code file taken at every layer start and every N lines:
+ * line number, byte offset, layer, estimated elapsed time, filament extruded so far and machine state.
+ * Built once while the file is scanned and stored next to it, so a printer position can be
+ * turned into progress, remaining time and material used with a binary search,
+ * and a print can be resumed from any line by seeking to the checkpoint before it.
+ * <p>
+ * Line numbers are 0-based and refer to the start of the line, before it is executed.
+ */
+public final class GcodeIndex {
+
+    private static final byte[] MAGIC = {'G', 'I', 'D', 'X'};
+    private static final int VERSION = 2;
+
+    private final long[] lines;
+    private final long[] offsets;
+    private final int[] layers;
+    private final long[] extruded;
+    private final int[] elapsedSeconds;
+    private final MachineState[] states;
+
+    private final long totalLines;
+    private final long totalBytes;
+    private final long totalExtruded;
+    private final int totalSeconds;
+    private final boolean timed;
+
+    private GcodeIndex(long[] lines, long[] offsets, int[] layers, long[] extruded, int[] elapsedSeconds,
+                       MachineState[] states,
+                       long totalLines, long totalBytes, long totalExtruded, int totalSeconds, boolean timed) {
+        this.lines = lines;
+        this.offsets = offsets;
+        this.layers = layers;
+        this.extruded = extruded;
+        this.elapsedSeconds = elapsedSeconds;
+        this.states = states;
+        this.totalLines = totalLines;
+        this.totalBytes = totalBytes;
+        this.totalExtruded = totalExtruded;
+        this.totalSeconds = totalSeconds;
+        this.timed = timed;
+    }
+
+    /**
+     * A resolved point of the file; values between checkpoints are interpolated by line
+     */
+    public record Position(long line, long offset, int layer, double elapsedSeconds, double extrudedMm) {
+    }
+
+    /**
+     * Machine state in effect at the start of a line; null values were not set by the file up to there.
+     * Temperatures and fan are those of the first hotend and fan, the fan speed on the 0-255 scale.
+     */
+    public record MachineState(Integer hotendTemp, Integer bedTemp, Integer fanSpeed, Double z,
+                               double e, boolean relativeE) {
+    }
+
+    /**
+     * A checkpoint: exact line start with its byte offset and machine state
+     */
+    public record Checkpoint(long line, long offset, int layer, MachineState state) {
+    }
+
+    /**
+     * Build from resolved checkpoints in file order.
+     * Elapsed time is interpolated by line between the time anchors, the start of the file at 0 s and,
+     * when known, the end of the file at {@code totalSeconds}; without any of them the index carries no time.
+     */
+    static GcodeIndex of(long[] lines, long[] offsets, int[] layers, long[] extruded, MachineState[] states, int count,
+                         long[] anchorLines, long[] anchorSeconds, int anchorCount,
+                         long totalLines, long totalBytes, long totalExtruded, long totalSeconds) {
+        // Collapse checkpoints taken twice on the same line, keeping the latest
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (n > 0 && lines[n - 1] == lines[i]) {
+                n--;
+            }
+            lines[n] = lines[i];
+            offsets[n] = offsets[i];
+            layers[n] = layers[i];
+            extruded[n] = extruded[i];
+            states[n] = states[i];
+            n++;
+        }
+
+        // Time anchors, from the start of the file to its end, never going backwards
+        int size = anchorCount + (totalSeconds >= 0 ? 2 : 1);
+        long[] timeLines = new long[size];
+        long[] timeSeconds = new long[size];
+        int t = 1;
+        for (int i = 0; i < anchorCount; i++, t++) {
+            timeLines[t] = anchorLines[i];
+            timeSeconds[t] = Math.max(timeSeconds[t - 1], anchorSeconds[i]);
+        }
+        if (totalSeconds >= 0) {
+            timeLines[t] = totalLines;
+            timeSeconds[t] = Math.max(timeSeconds[t - 1], totalSeconds);
+        }
+        boolean timed = size > 1;
+
+        int[] elapsed = new int[n];
+        if (timed) {
+            for (int i = 0, a = 0; i < n; i++) {
+                while (a + 1 < size && timeLines[a + 1] <= lines[i]) {
+                    a++;
+                }
+                elapsed[i] = (int) Math.round(a + 1 < size
+                        ? interpolate(lines[i], timeLines[a], timeLines[a + 1], timeSeconds[a], timeSeconds[a + 1])
+                        : timeSeconds[a]);
+            }
+        }
+
+        int seconds = timed ? (int) timeSeconds[size - 1] : -1;
+        return new GcodeIndex(Arrays.copyOf(lines, n), Arrays.copyOf(offsets, n), Arrays.copyOf(layers, n),
+                Arrays.copyOf(extruded, n), elapsed, Arrays.copyOf(states, n),
+                totalLines, totalBytes, totalExtruded, seconds, timed);
+    }
+
+    /**
+     * Position at the start of the given 0-based line
+     */
+    public Position atLine(long line) {
+        if (lines.length == 0) {
+            return new Position(line, 0, -1, 0, 0);
+        }
+
+        long target = Math.max(0, Math.min(line, totalLines));
+        int i = Arrays.binarySearch(lines, target);
+        if (i >= 0) {
+            return entry(i);
+        }
+
+        int before = -i - 2;
+        if (before < 0) {
+            return new Position(target, 0, -1, 0, 0);
+        }
+        if (before + 1 >= lines.length) {
+            return between(before, target, totalLines, totalBytes, layers[before], totalSeconds, totalExtruded);
+        }
+        return between(before, target, lines[before + 1], offsets[before + 1], layers[before],
+                elapsedSeconds[before + 1], extruded[before + 1]);
+    }
+
+    /**
+     * Position at the start of the given layer, or null if the file has no such layer
+     */
+    public Position atLayer(int layer) {
+        for (int lo = 0, hi = layers.length - 1; lo <= hi; ) {
+            int mid = (lo + hi) >>> 1;
+            if (layers[mid] < layer) {
+                lo = mid + 1;
+            } else if (mid > 0 && layers[mid - 1] >= layer) {
+                hi = mid - 1;
+            } else {
+                return layers[mid] == layer ? entry(mid) : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Last checkpoint at or before the given 0-based line, or null if there is none
+     */
+    public Checkpoint checkpointBefore(long line) {
+        int i = Arrays.binarySearch(lines, line);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return i >= 0 ? new Checkpoint(lines[i], offsets[i], layers[i], states[i]) : null;
+    }
+
+    private Position entry(int i) {
+        return new Position(lines[i], offsets[i], layers[i], elapsedSeconds[i], toMm(extruded[i]));
+    }
+
+    private Position between(int i, long line, long nextLine, long nextOffset, int layer, long nextSeconds, long nextExtruded) {
+        return new Position(line,
+                Math.round(interpolate(line, lines[i], nextLine, offsets[i], nextOffset)),
+                layer,
+                timed ? interpolate(line, lines[i], nextLine, elapsedSeconds[i], nextSeconds) : 0,
+                toMm(Math.round(interpolate(line, lines[i], nextLine, extruded[i], nextExtruded))));
+    }
+
+    private static double interpolate(long x, long x0, long x1, long y0, long y1) {
+        if (x1 <= x0) {
+            return y0;
+        }
+        return y0 + (double) (y1 - y0) * (x - x0) / (x1 - x0);
+    }
+
+    private static double toMm(long fixed) {
+        return (double) fixed / GcodeScanner.E_SCALE;
+    }
+
+    public int size() {
+        return lines.length;
+    }
+
+    public long getTotalLines() {
+        return totalLines;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public double getTotalExtrudedMm() {
+        return toMm(totalExtruded);
+    }
+
+    /**
+     * Estimated print time in seconds, or -1 when the file carries no time information
+     */
+    public int getTotalSeconds() {
+        return totalSeconds;
+    }
+
+    public boolean isTimed() {
+        return timed;
+    }
+
+    // ======================================
+    // BINARY FORMAT
+    // ======================================
+
+    /**
+     * Header followed by delta-encoded varint checkpoints, each with its machine state
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 + lines.length * 8);
+        out.writeBytes(MAGIC);
+        out.write(VERSION);
+        out.write(timed ? 1 : 0);
+        writeVarLong(out, totalLines);
+        writeVarLong(out, totalBytes);
+        writeVarLong(out, totalExtruded);
+        writeVarLong(out, totalSeconds + 1L);
+        writeVarLong(out, lines.length);
+
+        long line = 0;
+        long offset = 0;
+        int layer = 0;
+        long filament = 0;
+        int seconds = 0;
+        for (int i = 0; i < lines.length; i++) {
+            writeVarLong(out, lines[i] - line);
+            writeVarLong(out, offsets[i] - offset);
+            writeVarLong(out, zigzag(layers[i] - layer));
+            writeVarLong(out, extruded[i] - filament);
+            writeVarLong(out, elapsedSeconds[i] - seconds);
+            writeState(out, states[i]);
+            line = lines[i];
+            offset = offsets[i];
+            layer = layers[i];
+            filament = extruded[i];
+            seconds = elapsedSeconds[i];
+        }
+
+        return out.toByteArray();
+    }
+
+    public static GcodeIndex read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a G-code index");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported G-code index version: " + version);
+        }
+
+        boolean timed = in.readUnsignedByte() == 1;
+        long totalLines = readVarLong(in);
+        long totalBytes = readVarLong(in);
+        long totalExtruded = readVarLong(in);
+        int totalSeconds = (int) (readVarLong(in) - 1);
+        int count = (int) readVarLong(in);
+
+        long[] lines = new long[count];
+        long[] offsets = new long[count];
+        int[] layers = new int[count];
+        long[] extruded = new long[count];
+        int[] elapsed = new int[count];
+        MachineState[] states = new MachineState[count];
+        for (int i = 0; i < count; i++) {
+            int previous = i > 0 ? i - 1 : -1;
+            lines[i] = (previous < 0 ? 0 : lines[previous]) + readVarLong(in);
+            offsets[i] = (previous < 0 ? 0 : offsets[previous]) + readVarLong(in);
+            layers[i] = (previous < 0 ? 0 : layers[previous]) + (int) unzigzag(readVarLong(in));
+            extruded[i] = (previous < 0 ? 0 : extruded[previous]) + readVarLong(in);
+            elapsed[i] = (previous < 0 ? 0 : elapsed[previous]) + (int) readVarLong(in);
+            states[i] = readState(in);
+        }
+
+        return new GcodeIndex(lines, offsets, layers, extruded, elapsed, states,
+                totalLines, totalBytes, totalExtruded, totalSeconds, timed);
+    }
+
+    /**
+     * Unset values are written as 0 and the others shifted by one; Z and E as fixed-point
+     */
+    private static void writeState(ByteArrayOutputStream out, MachineState state) {
+        writeVarLong(out, state.hotendTemp() != null ? state.hotendTemp() + 1L : 0);
+        writeVarLong(out, state.bedTemp() != null ? state.bedTemp() + 1L : 0);
+        writeVarLong(out, state.fanSpeed() != null ? state.fanSpeed() + 1L : 0);
+        writeVarLong(out, state.z() != null ? Math.round(state.z() * GcodeScanner.E_SCALE) + 1 : 0);
+        writeVarLong(out, zigzag(Math.round(state.e() * GcodeScanner.E_SCALE)));
+        out.write(state.relativeE() ? 1 : 0);
+    }
+
+    private static MachineState readState(DataInputStream in) throws IOException {
+        long hotend = readVarLong(in);
+        long bed = readVarLong(in);
+        long fan = readVarLong(in);
+        long z = readVarLong(in);
+        long e = unzigzag(readVarLong(in));
+        boolean relative = in.readUnsignedByte() == 1;
+        return new MachineState(
+                hotend > 0 ? (int) (hotend - 1) : null,
+                bed > 0 ? (int) (bed - 1) : null,
+                fan > 0 ? (int) (fan - 1) : null,
+                z > 0 ? toMm(z - 1) : null,
+                toMm(e),
+                relative);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated G-code index");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed G-code index");
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,826 @@
+package it.aredegalli.printer.service.slicing.analysis;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+
+/**
+ * Incremental G-code scanner working directly on raw bytes.
+ * Chunks are fed in order through {@link #update(byte[], int, int)} and may split lines anywhere;
+ * words and numbers are parsed in place, so no String or Matcher is created per line.
+ * An instance holds the state of a single analysis and is not thread-safe.
+ * <p>
+ * The extrusion mode, E position and feature section in effect before the first byte are not assumed:
+ * extrusion is tracked for both an absolute and a relative incoming mode against an unknown incoming position,
+ * and resolved in {@link #merge(List)}. A file can therefore be cut at line boundaries, its parts scanned
+ * independently and merged in order with the same result as a single pass.
+ * <p>
+ * With a checkpoint interval the scanner also records the checkpoints of a {@link GcodeIndex},
+ * each with the machine state needed to resume the print there.
+ */
+public final class GcodeScanner {
+
+    /**
+     * E values are kept as fixed-point longs with this many units per millimetre
+     */
+    static final long E_SCALE = 100_000L;
+
+    private static final int FRACTION_DIGITS = 5;
+    private static final long[] POW10 = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L};
+
+    private static final byte[] LAYER = ascii("layer");
+    private static final byte[] LAYER_HEIGHT = ascii("layer_height");
+    private static final byte[] TIME = ascii("time");
+    private static final byte[] TIME_ELAPSED = ascii("time_elapsed");
+    private static final byte[] ESTIMATED_PRINTING_TIME = ascii("estimated printing time");
+    private static final byte[] FILAMENT_USED = ascii("filament used");
+    private static final byte[] TYPE = ascii("type:");
+    private static final byte[] UNIT_M = ascii("m");
+    private static final byte[] UNIT_MM = ascii("mm");
+    private static final byte[] UNIT_G = ascii("g");
+
+    private static final ExtrusionFeature[] FEATURES = ExtrusionFeature.values();
+    private static final int FEATURE_INHERITED = -1;
+
+    private static final int LAYER_INHERITED = Integer.MIN_VALUE;
+    private static final int VALUE_INHERITED = Integer.MIN_VALUE;
+    private static final long Z_INHERITED = Long.MIN_VALUE;
+
+    private byte[] carry = new byte[256];
+    private int carryLength = 0;
+
+    // Cursor and success flag of the last number parsed
+    private int pos;
+    private boolean found;
+
+    private final Extrusion fromAbsolute = new Extrusion(false);
+    private final Extrusion fromRelative = new Extrusion(true);
+    private int feature = FEATURE_INHERITED;
+
+    // Last values set in this part; temperatures and fan of the first hotend and fan only
+    private int hotendTemp = VALUE_INHERITED;
+    private int bedTemp = VALUE_INHERITED;
+    private int fanSpeed = VALUE_INHERITED;
+    private long z = Z_INHERITED;
+    private boolean axesRelative = false;
+
+    private final int checkpointInterval;
+    private final long baseOffset;
+    private long received;
+    private long lines = 0;
+    private long lineStart;
+    private long sinceCheckpoint;
+    private int layer = LAYER_INHERITED;
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+    private final List<TimeAnchor> timeAnchors = new ArrayList<>();
+
+    private int maxLayer = -1;
+    private long layerHeight = 0;
+    private long estimatedSeconds = -1;
+    private long timeSeconds = -1;
+    private long filamentLengthMm = -1;
+    private long filamentWeightG = -1;
+
+    public GcodeScanner() {
+        this(0, 0);
+    }
+
+    /**
+     * @param checkpointInterval record an index checkpoint at every layer start and after this many lines
+     *                           without one; 0 disables
+     * @param baseOffset         byte offset of the first byte fed, when scanning a part of a file
+     */
+    public GcodeScanner(int checkpointInterval, long baseOffset) {
+        this.checkpointInterval = checkpointInterval;
+        this.baseOffset = baseOffset;
+        this.received = baseOffset;
+        this.lineStart = baseOffset;
+        this.sinceCheckpoint = checkpointInterval;
+    }
+
+    /**
+     * Scan the next chunk of the file
+     */
+    public void update(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        int start = offset;
+        long bufferBase = received - offset;
+
+        for (int i = offset; i < end; i++) {
+            if (buffer[i] == '\n') {
+                if (carryLength > 0) {
+                    append(buffer, start, i);
+                    line(carry, 0, carryLength);
+                    carryLength = 0;
+                } else {
+                    line(buffer, start, i);
+                }
+                lines++;
+                sinceCheckpoint++;
+                start = i + 1;
+                lineStart = bufferBase + start;
+            }
+        }
+
+        append(buffer, start, end);
+        received += length;
+    }
+
+    /**
+     * Scan the unterminated last line, if any, and return the raw metrics of the whole file
+     */
+    public GcodeAnalyzer.GcodeMetrics finish() {
+        return merge(List.of(this));
+    }
+
+    /**
+     * Combine scanners fed with consecutive parts of one file, in file order.
+     * A file starts in absolute extrusion mode at E0 outside any feature section.
+     */
+    public static GcodeAnalyzer.GcodeMetrics merge(List<GcodeScanner> parts) {
+        boolean relative = false;
+        long position = 0;
+        int feature = ExtrusionFeature.OTHER.ordinal();
+        int layer = -1;
+        int hotendTemp = -1;
+        int bedTemp = -1;
+        int fanSpeed = -1;
+        long z = -1;
+        long lines = 0;
+        long bytes = 0;
+
+        long extruded = 0;
+        long[] featureExtruded = new long[FEATURES.length];
+        int maxLayer = -1;
+        long layerHeight = 0;
+        long estimatedSeconds = -1;
+        long timeSeconds = -1;
+        long filamentLengthMm = -1;
+        long filamentWeightG = -1;
+
+        boolean indexed = false;
+        int count = 0;
+        int anchorCount = 0;
+        for (GcodeScanner part : parts) {
+            part.flush();
+            indexed |= part.checkpointInterval > 0;
+            count += part.checkpoints.size();
+            anchorCount += part.timeAnchors.size();
+        }
+        long[] indexLines = new long[count];
+        long[] indexOffsets = new long[count];
+        int[] indexLayers = new int[count];
+        long[] indexExtruded = new long[count];
+        GcodeIndex.MachineState[] indexStates = new GcodeIndex.MachineState[count];
+        long[] anchorLines = new long[anchorCount];
+        long[] anchorSeconds = new long[anchorCount];
+        count = 0;
+        anchorCount = 0;
+
+        for (GcodeScanner part : parts) {
+            Extrusion e = relative ? part.fromRelative : part.fromAbsolute;
+            long deferredDelta = e.deferred ? Math.max(0, e.deferredE - position) : 0;
+
+            for (Checkpoint checkpoint : part.checkpoints) {
+                indexLines[count] = lines + checkpoint.line();
+                indexOffsets[count] = checkpoint.offset();
+                indexLayers[count] = checkpoint.layer() == LAYER_INHERITED ? layer : checkpoint.layer();
+                indexExtruded[count] = extruded + (relative ? checkpoint.fromRelative() : checkpoint.fromAbsolute())
+                        + ((relative ? checkpoint.relativeDeferred() : checkpoint.absoluteDeferred()) ? deferredDelta : 0);
+                indexStates[count] = resolve(checkpoint.hotendTemp(), checkpoint.bedTemp(), checkpoint.fanSpeed(),
+                        checkpoint.z(), relative ? checkpoint.relativeE() : checkpoint.absoluteE(),
+                        hotendTemp, bedTemp, fanSpeed, z, position);
+                count++;
+            }
+            for (TimeAnchor anchor : part.timeAnchors) {
+                anchorLines[anchorCount] = lines + anchor.line();
+                anchorSeconds[anchorCount] = anchor.seconds();
+                anchorCount++;
+            }
+
+            extruded += e.extruded + deferredDelta;
+            for (int i = 0; i < featureExtruded.length; i++) {
+                featureExtruded[i] += e.featureExtruded[i];
+            }
+            featureExtruded[feature] += e.inheritedExtruded;
+            featureExtruded[e.deferredFeature == FEATURE_INHERITED ? feature : e.deferredFeature] += deferredDelta;
+
+            relative = e.relative;
+            position = e.positionKnown ? e.position : position + e.position;
+            feature = part.feature == FEATURE_INHERITED ? feature : part.feature;
+            layer = part.layer == LAYER_INHERITED ? layer : part.layer;
+            hotendTemp = part.hotendTemp == VALUE_INHERITED ? hotendTemp : part.hotendTemp;
+            bedTemp = part.bedTemp == VALUE_INHERITED ? bedTemp : part.bedTemp;
+            fanSpeed = part.fanSpeed == VALUE_INHERITED ? fanSpeed : part.fanSpeed;
+            z = part.z == Z_INHERITED ? z : part.z;
+            lines += part.lines;
+            bytes += part.received - part.baseOffset;
+
+            maxLayer = Math.max(maxLayer, part.maxLayer);
+            layerHeight = part.layerHeight > 0 ? part.layerHeight : layerHeight;
+            estimatedSeconds = part.estimatedSeconds >= 0 ? part.estimatedSeconds : estimatedSeconds;
+            timeSeconds = part.timeSeconds >= 0 ? part.timeSeconds : timeSeconds;
+            filamentLengthMm = part.filamentLengthMm >= 0 ? part.filamentLengthMm : filamentLengthMm;
+            filamentWeightG = part.filamentWeightG >= 0 ? part.filamentWeightG : filamentWeightG;
+        }
+
+        GcodeAnalyzer.GcodeMetrics metrics = new GcodeAnalyzer.GcodeMetrics();
+        metrics.layerCount = maxLayer + 1;
+        metrics.totalExtrusion = (double) extruded / E_SCALE;
+        metrics.supportExtrusion = (double) featureExtruded[ExtrusionFeature.SUPPORT.ordinal()] / E_SCALE;
+        metrics.featureExtrusion = new EnumMap<>(ExtrusionFeature.class);
+        for (ExtrusionFeature f : FEATURES) {
+            if (featureExtruded[f.ordinal()] > 0) {
+                metrics.featureExtrusion.put(f, (double) featureExtruded[f.ordinal()] / E_SCALE);
+            }
+        }
+
+        if (layerHeight > 0) {
+            metrics.layerHeight = (double) layerHeight / E_SCALE;
+        }
+
+        long seconds = estimatedSeconds >= 0 ? estimatedSeconds : timeSeconds;
+        if (seconds >= 0) {
+            metrics.estimatedPrintTimeMinutes = (int) ((seconds + 30) / 60);
+        }
+
+        if (filamentLengthMm >= 0) {
+            metrics.filamentLengthMm = (int) (filamentLengthMm / E_SCALE);
+        }
+        if (filamentWeightG >= 0) {
+            metrics.materialWeightG = BigDecimal.valueOf(filamentWeightG, FRACTION_DIGITS)
+                    .setScale(2, RoundingMode.HALF_UP);
+        }
+
+        if (indexed) {
+            metrics.index = GcodeIndex.of(indexLines, indexOffsets, indexLayers, indexExtruded, indexStates, count,
+                    anchorLines, anchorSeconds, anchorCount, lines, bytes, extruded, seconds);
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Machine state after the lines fed so far, which follow a point of the file in the given state.
+     * Used to carry a checkpoint's state forward to a line between checkpoints.
+     */
+    public GcodeIndex.MachineState stateAfter(GcodeIndex.MachineState incoming) {
+        Extrusion e = incoming.relativeE() ? fromRelative : fromAbsolute;
+        return resolve(hotendTemp, bedTemp, fanSpeed, z, e.state(),
+                value(incoming.hotendTemp()), value(incoming.bedTemp()), value(incoming.fanSpeed()),
+                incoming.z() != null ? toFixed(incoming.z()) : -1, toFixed(incoming.e()));
+    }
+
+    private static GcodeIndex.MachineState resolve(int hotendTemp, int bedTemp, int fanSpeed, long z, EState e,
+                                                   int incomingHotendTemp, int incomingBedTemp, int incomingFanSpeed,
+                                                   long incomingZ, long incomingE) {
+        hotendTemp = hotendTemp == VALUE_INHERITED ? incomingHotendTemp : hotendTemp;
+        bedTemp = bedTemp == VALUE_INHERITED ? incomingBedTemp : bedTemp;
+        fanSpeed = fanSpeed == VALUE_INHERITED ? incomingFanSpeed : fanSpeed;
+        z = z == Z_INHERITED ? incomingZ : z;
+        return new GcodeIndex.MachineState(
+                hotendTemp >= 0 ? hotendTemp : null,
+                bedTemp >= 0 ? bedTemp : null,
+                fanSpeed >= 0 ? fanSpeed : null,
+                z >= 0 ? (double) z / E_SCALE : null,
+                (double) (e.positionKnown() ? e.position() : incomingE + e.position()) / E_SCALE,
+                e.relative());
+    }
+
+    private static int value(Integer value) {
+        return value != null ? value : -1;
+    }
+
+    private static long toFixed(double mm) {
+        return Math.round(mm * E_SCALE);
+    }
+
+    private void flush() {
+        if (carryLength > 0) {
+            line(carry, 0, carryLength);
+            lines++;
+            sinceCheckpoint++;
+            carryLength = 0;
+            lineStart = received;
+        }
+    }
+
+    private void append(byte[] buffer, int from, int to) {
+        int length = to - from;
+        if (length <= 0) {
+            return;
+        }
+        if (carryLength + length > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(carry.length * 2, carryLength + length));
+        }
+        System.arraycopy(buffer, from, carry, carryLength, length);
+        carryLength += length;
+    }
+
+    private void line(byte[] b, int from, int to) {
+        // Counted from the last checkpoint, so parts starting at a layer line checkpoint like a single pass
+        if (checkpointInterval > 0 && sinceCheckpoint >= checkpointInterval) {
+            checkpoint();
+        }
+
+        from = skipSpaces(b, from, to);
+        if (from >= to) {
+            return;
+        }
+
+        byte first = b[from];
+        if (first == 'N' || first == 'n') {
+            // Line number prefix: skip it and dispatch on the command that follows
+            parseInt(b, from + 1, to);
+            from = skipSpaces(b, pos, to);
+            if (from >= to) {
+                return;
+            }
+            first = b[from];
+        }
+
+        switch (first) {
+            case ';' -> comment(b, from + 1, to);
+            case 'G', 'g' -> gCommand(b, from + 1, to);
+            case 'M', 'm' -> mCommand(b, from + 1, to);
+            default -> {
+            }
+        }
+    }
+
+    private void gCommand(byte[] b, int from, int to) {
+        long code = parseInt(b, from, to);
+        if (!found) {
+            return;
+        }
+        int end = commentStart(b, pos, to);
+
+        switch ((int) code) {
+            case 0, 1 -> move(b, pos, end);
+            case 90 -> {
+                axesRelative = false;
+                setRelative(false);
+            }
+            case 91 -> {
+                axesRelative = true;
+                setRelative(true);
+            }
+            case 92 -> setPosition(b, pos, end);
+            default -> {
+            }
+        }
+    }
+
+    private void mCommand(byte[] b, int from, int to) {
+        long code = parseInt(b, from, to);
+        if (!found) {
+            return;
+        }
+
+        int end = commentStart(b, pos, to);
+
+        switch ((int) code) {
+            case 82 -> setRelative(false);
+            case 83 -> setRelative(true);
+            case 104, 109 -> {
+                int temperature = temperature(b, pos, end);
+                if (found) {
+                    hotendTemp = temperature;
+                }
+            }
+            case 140, 190 -> {
+                int temperature = temperature(b, pos, end);
+                if (found) {
+                    bedTemp = temperature;
+                }
+            }
+            case 106 -> {
+                if (word(b, pos, end, 'p') == 0) {
+                    long speed = word(b, pos, end, 's');
+                    fanSpeed = found ? (int) Math.max(0, Math.min(255, speed / E_SCALE)) : 255;
+                }
+            }
+            case 107 -> {
+                if (word(b, pos, end, 'p') == 0) {
+                    fanSpeed = 0;
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Target of a temperature command for the first tool, from its S or R word
+     */
+    private int temperature(byte[] b, int from, int end) {
+        if (word(b, from, end, 't') != 0) {
+            found = false;
+            return 0;
+        }
+        long value = word(b, from, end, 's');
+        if (!found) {
+            value = word(b, from, end, 'r');
+        }
+        return (int) ((value + E_SCALE / 2) / E_SCALE);
+    }
+
+    private void checkpoint() {
+        sinceCheckpoint = 0;
+        checkpoints.add(new Checkpoint(lines, lineStart, layer,
+                fromAbsolute.extruded, fromAbsolute.deferred, fromRelative.extruded, fromRelative.deferred,
+                hotendTemp, bedTemp, fanSpeed, z, fromAbsolute.state(), fromRelative.state()));
+    }
+
+    private void move(byte[] b, int from, int end) {
+        if (!axesRelative) {
+            long value = word(b, from, end, 'z');
+            if (found && value >= 0) {
+                z = value;
+            }
+        }
+
+        long e = word(b, from, end, 'e');
+        if (found) {
+            fromAbsolute.move(e, feature);
+            fromRelative.move(e, feature);
+        }
+    }
+
+    private void setRelative(boolean relative) {
+        fromAbsolute.relative = relative;
+        fromRelative.relative = relative;
+    }
+
+    private void setPosition(byte[] b, int from, int end) {
+        long e = word(b, from, end, 'e');
+        if (found) {
+            fromAbsolute.setPosition(e);
+            fromRelative.setPosition(e);
+        } else if (!hasAxisWord(b, from, end)) {
+            // A bare G92 resets every axis
+            fromAbsolute.setPosition(0);
+            fromRelative.setPosition(0);
+        }
+    }
+
+    /**
+     * Fixed-point value of the first word with the given lower-case letter
+     */
+    private long word(byte[] b, int from, int end, char letter) {
+        for (int i = from; i < end; i++) {
+            if ((b[i] | 0x20) == letter) {
+                return parseFixed(b, i + 1, end);
+            }
+        }
+        found = false;
+        return 0;
+    }
+
+    private static boolean hasAxisWord(byte[] b, int from, int end) {
+        for (int i = from; i < end; i++) {
+            int c = b[i] | 0x20;
+            if (c == 'x' || c == 'y' || c == 'z') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void comment(byte[] b, int from, int to) {
+        int i = skipSpaces(b, from, to);
+
+        if (startsWith(b, i, to, LAYER_HEIGHT)) {
+            long value = parseFixed(b, skipSeparators(b, i + LAYER_HEIGHT.length, to), to);
+            if (found && value > 0) {
+                layerHeight = value;
+            }
+        } else if (startsWith(b, i, to, LAYER)) {
+            long number = keyedInt(b, i + LAYER.length, to);
+            if (found) {
+                layer = (int) number;
+                maxLayer = Math.max(maxLayer, layer);
+                if (checkpointInterval > 0) {
+                    checkpoint();
+                }
+            }
+        } else if (startsWith(b, i, to, TIME_ELAPSED)) {
+            long elapsed = parseFixed(b, skipSeparators(b, i + TIME_ELAPSED.length, to), to);
+            if (found && checkpointInterval > 0) {
+                timeAnchors.add(new TimeAnchor(lines, elapsed / E_SCALE));
+            }
+        } else if (startsWith(b, i, to, TIME)) {
+            long seconds = keyedInt(b, i + TIME.length, to);
+            if (found) {
+                timeSeconds = seconds;
+            }
+        } else if (startsWith(b, i, to, TYPE)) {
+            feature = feature(b, i + TYPE.length, to);
+        } else if (startsWith(b, i, to, ESTIMATED_PRINTING_TIME)) {
+            estimatedPrintingTime(b, i + ESTIMATED_PRINTING_TIME.length, to);
+        } else if (startsWith(b, i, to, FILAMENT_USED)) {
+            filamentUsed(b, i + FILAMENT_USED.length, to);
+        }
+    }
+
+    private static int feature(byte[] b, int from, int to) {
+        for (ExtrusionFeature f : FEATURES) {
+            for (byte[] keyword : f.keywords) {
+                if (contains(b, from, to, keyword)) {
+                    return f.ordinal();
+                }
+            }
+        }
+        return ExtrusionFeature.OTHER.ordinal();
+    }
+
+    /**
+     * Integer after a comment key followed by at least one ':' or whitespace, as in ";LAYER:12" or ";TIME:3600"
+     */
+    private long keyedInt(byte[] b, int from, int to) {
+        int i = skipSeparators(b, from, to);
+        if (i == from || i >= to || b[i] < '0' || b[i] > '9') {
+            found = false;
+            return 0;
+        }
+        return parseInt(b, i, to);
+    }
+
+    /**
+     * Durations like "1d 2h 3m 4s", optionally after a mode label and '='
+     */
+    private void estimatedPrintingTime(byte[] b, int from, int to) {
+        int equals = indexOf(b, from, to, (byte) '=');
+        int i = equals >= 0 ? equals + 1 : skipSeparators(b, from, to);
+
+        long seconds = 0;
+        boolean any = false;
+        while (true) {
+            i = skipSpaces(b, i, to);
+            long value = parseInt(b, i, to);
+            if (!found || pos >= to) {
+                break;
+            }
+            switch (b[pos] | 0x20) {
+                case 'd' -> seconds += value * 86_400;
+                case 'h' -> seconds += value * 3_600;
+                case 'm' -> seconds += value * 60;
+                case 's' -> seconds += value;
+                default -> {
+                    return;
+                }
+            }
+            any = true;
+            i = pos + 1;
+        }
+
+        if (any) {
+            estimatedSeconds = seconds;
+        }
+    }
+
+    /**
+     * Cura writes "Filament used: 1.23m", PrusaSlicer "filament used [mm] = 1234.5" and "filament used [g] = 3.7"
+     */
+    private void filamentUsed(byte[] b, int from, int to) {
+        int i = skipSpaces(b, from, to);
+        int unitFrom = -1;
+        int unitTo = -1;
+
+        if (i < to && b[i] == '[') {
+            int close = indexOf(b, i + 1, to, (byte) ']');
+            if (close < 0) {
+                return;
+            }
+            unitFrom = i + 1;
+            unitTo = close;
+            i = close + 1;
+        }
+
+        long value = parseFixed(b, skipSeparators(b, i, to), to);
+        if (!found) {
+            return;
+        }
+
+        if (unitFrom < 0) {
+            unitFrom = pos;
+            unitTo = pos;
+            while (unitTo < to && isLetter(b[unitTo])) {
+                unitTo++;
+            }
+        }
+
+        if (equalsIgnoreCase(b, unitFrom, unitTo, UNIT_M)) {
+            filamentLengthMm = value * 1000;
+        } else if (equalsIgnoreCase(b, unitFrom, unitTo, UNIT_MM)) {
+            filamentLengthMm = value;
+        } else if (equalsIgnoreCase(b, unitFrom, unitTo, UNIT_G)) {
+            filamentWeightG = value;
+        }
+    }
+
+    private long parseInt(byte[] b, int from, int to) {
+        long value = 0;
+        int i = from;
+        while (i < to && b[i] >= '0' && b[i] <= '9') {
+            value = value * 10 + (b[i] - '0');
+            i++;
+        }
+        found = i > from;
+        pos = i;
+        return value;
+    }
+
+    /**
+     * Signed decimal as a fixed-point long scaled by {@link #E_SCALE}; extra fraction digits are truncated
+     */
+    private long parseFixed(byte[] b, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (b[i] == '-' || b[i] == '+')) {
+            negative = b[i] == '-';
+            i++;
+        }
+
+        long value = 0;
+        int fraction = -1;
+        boolean digits = false;
+        for (; i < to; i++) {
+            byte c = b[i];
+            if (c >= '0' && c <= '9') {
+                digits = true;
+                if (fraction < 0) {
+                    value = value * 10 + (c - '0');
+                } else if (fraction < FRACTION_DIGITS) {
+                    value = value * 10 + (c - '0');
+                    fraction++;
+                }
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                break;
+            }
+        }
+
+        found = digits;
+        pos = i;
+        value *= POW10[FRACTION_DIGITS - Math.max(fraction, 0)];
+        return negative ? -value : value;
+    }
+
+    private static int commentStart(byte[] b, int from, int to) {
+        int comment = indexOf(b, from, to, (byte) ';');
+        return comment >= 0 ? comment : to;
+    }
+
+    private static int indexOf(byte[] b, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipSpaces(byte[] b, int from, int to) {
+        while (from < to && (b[from] == ' ' || b[from] == '\t' || b[from] == '\r')) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int skipSeparators(byte[] b, int from, int to) {
+        while (from < to && (b[from] == ' ' || b[from] == '\t' || b[from] == ':' || b[from] == '=')) {
+            from++;
+        }
+        return from;
+    }
+
+    private static boolean isLetter(byte c) {
+        int lower = c | 0x20;
+        return lower >= 'a' && lower <= 'z';
+    }
+
+    /**
+     * Case-insensitive prefix match; {@code word} must be lower case
+     */
+    private static boolean startsWith(byte[] b, int from, int to, byte[] word) {
+        if (to - from < word.length) {
+            return false;
+        }
+        for (int k = 0; k < word.length; k++) {
+            byte c = b[from + k];
+            if (c != word[k] && (!isLetter(c) || (c | 0x20) != word[k])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalsIgnoreCase(byte[] b, int from, int to, byte[] word) {
+        return to - from == word.length && startsWith(b, from, to, word);
+    }
+
+    private static boolean contains(byte[] b, int from, int to, byte[] word) {
+        for (int i = from; i <= to - word.length; i++) {
+            if (startsWith(b, i, to, word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * State at the start of a line, with extrusion still relative to the part's unknown incoming state
+     */
+    private record Checkpoint(long line, long offset, int layer,
+                              long fromAbsolute, boolean absoluteDeferred,
+                              long fromRelative, boolean relativeDeferred,
+                              int hotendTemp, int bedTemp, int fanSpeed, long z,
+                              EState absoluteE, EState relativeE) {
+    }
+
+    /**
+     * E mode and position of one extrusion branch; the position is an offset from the incoming one until known
+     */
+    private record EState(boolean relative, boolean positionKnown, long position) {
+    }
+
+    private record TimeAnchor(long line, long seconds) {
+    }
+
+    /**
+     * Extrusion under one assumption about the incoming E mode, against an unknown incoming E position
+     */
+    private static final class Extrusion {
+
+        private boolean relative;
+
+        // Absolute E once known, otherwise offset from the incoming position
+        private boolean positionKnown = false;
+        private long position = 0;
+
+        private long extruded = 0;
+        private final long[] featureExtruded = new long[FEATURES.length];
+        // Extruded before the first ;TYPE: line, in the incoming section
+        private long inheritedExtruded = 0;
+
+        // The first absolute move before the position is known: its delta needs the incoming position
+        private boolean deferred = false;
+        private long deferredE = 0;
+        private int deferredFeature = FEATURE_INHERITED;
+
+        private Extrusion(boolean relative) {
+            this.relative = relative;
+        }
+
+        private void move(long e, int feature) {
+            if (relative) {
+                position += e;
+                extrude(e, feature);
+            } else if (positionKnown) {
+                long delta = e - position;
+                position = e;
+                extrude(delta, feature);
+            } else {
+                deferred = true;
+                deferredE = e - position;
+                deferredFeature = feature;
+                position = e;
+                positionKnown = true;
+            }
+        }
+
+        private void setPosition(long e) {
+            position = e;
+            positionKnown = true;
+        }
+
+        private EState state() {
+            return new EState(relative, positionKnown, position);
+        }
+
+        /**
+         * Only forward filament movement counts; retractions are not material
+         */
+        private void extrude(long delta, int feature) {
+            if (delta <= 0) {
+                return;
+            }
+            extruded += delta;
+            if (feature == FEATURE_INHERITED) {
+                inheritedExtruded += delta;
+            } else {
+                featureExtruded[feature] += delta;
+            }
+        }
+    }
+}
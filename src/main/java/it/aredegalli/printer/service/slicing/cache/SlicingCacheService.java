@@ -0,0 +1,17 @@
+package it.aredegalli.printer.service.slicing.cache;
+
+import it.aredegalli.printer.model.model.Model;
+import it.aredegalli.printer.model.slicing.property.SlicingProperty;
+import it.aredegalli.printer.model.slicing.result.SlicingResult;
+import it.aredegalli.printer.service.slicing.engine.SlicingEngine;
+
+public interface SlicingCacheService {
+
+    /**
+     * Slice the model, reusing a result already produced for the same file content, engine version and
+     * resolved engine settings. Concurrent identical requests share a single engine run.
+     */
+    SlicingResult slice(SlicingEngine engine, Model model, SlicingProperty property);
+
+    String computeKey(SlicingEngine engine, Model model, SlicingProperty property);
+}
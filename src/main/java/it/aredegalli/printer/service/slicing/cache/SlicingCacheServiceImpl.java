@@ -0,0 +1,200 @@
+package it.aredegalli.printer.service.slicing.cache;
+
+import it.aredegalli.printer.model.model.Model;
+import it.aredegalli.printer.model.slicing.metric.SlicingMetric;
+import it.aredegalli.printer.model.slicing.property.SlicingProperty;
+import it.aredegalli.printer.model.slicing.result.SlicingResult;
+import it.aredegalli.printer.repository.slicing.result.SlicingResultRepository;
+import it.aredegalli.printer.service.log.LogService;
+import it.aredegalli.printer.service.slicing.engine.SlicingEngine;
+import it.aredegalli.printer.service.slicing.engine.cura.CuraEngineAdapter.RetryableSlicingException;
+import it.aredegalli.printer.service.slicing.engine.cura.CuraEngineAdapter.SlicingException;
+import it.aredegalli.printer.service.slicing.metrics.SlicingMetricsService;
+import it.aredegalli.printer.util.HashUtil;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@Service
+@RequiredArgsConstructor
+public class SlicingCacheServiceImpl implements SlicingCacheService {
+
+    private final SlicingResultRepository slicingResultRepository;
+    private final SlicingMetricsService metricsService;
+    private final HashUtil hashUtil;
+    private final LogService log;
+
+    /**
+     * Longest wait for an identical slice in flight, after which the waiter slices on its own
+     */
+    @Value("${slicing.engines.external.timeout-seconds:300}")
+    private long awaitTimeoutSeconds;
+
+    /**
+     * Engine runs in flight, by cache key; completed with the id of the stored result
+     */
+    private final Map<String, CompletableFuture<UUID>> inFlight = new ConcurrentHashMap<>();
+
+    @Override
+    public SlicingResult slice(SlicingEngine engine, Model model, SlicingProperty property) {
+        String key = computeKey(engine, model, property);
+
+        Optional<SlicingResult> cached = findCached(key, model, property);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        CompletableFuture<UUID> pending = new CompletableFuture<>();
+        CompletableFuture<UUID> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            log.info("SlicingCacheServiceImpl", "Identical slice in flight, waiting for it: " + key);
+            UUID resultId = await(existing);
+            if (resultId == null) {
+                log.warn("SlicingCacheServiceImpl", "Identical slice still running after " + awaitTimeoutSeconds
+                        + " seconds, slicing independently: " + key);
+                return sliceAndStore(engine, model, property, key);
+            }
+            SlicingResult source = slicingResultRepository.findById(resultId)
+                    .orElseThrow(() -> new SlicingException("Coalesced slicing result not found: " + resultId));
+            return reuse(source, model, property);
+        }
+
+        try {
+            SlicingResult result = sliceAndStore(engine, model, property, key);
+            publishWhenCommitted(key, pending, result.getId());
+            return result;
+        } catch (RuntimeException e) {
+            inFlight.remove(key, pending);
+            pending.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private SlicingResult sliceAndStore(SlicingEngine engine, Model model, SlicingProperty property, String key) {
+        SlicingResult result = engine.slice(model, property);
+        result.setCacheKey(key);
+        result = slicingResultRepository.save(result);
+        if (metricsService.getMetricsBySlicingResultId(result.getId()) == null) {
+            metricsService.calculateMetrics(result);
+        }
+        return result;
+    }
+
+    @Override
+    public String computeKey(SlicingEngine engine, Model model, SlicingProperty property) {
+        String sourceHash = HexFormat.of().formatHex(model.getFileResource().getFileHash());
+        return hashUtil.sha256(String.join("|",
+                sourceHash,
+                engine.getName(),
+                engine.getCacheVersion(),
+                engine.getParameterFingerprint(property)));
+    }
+
+    private Optional<SlicingResult> findCached(String key, Model model, SlicingProperty property) {
+        Optional<SlicingResult> exact = slicingResultRepository.findFirstByCacheKeyAndSourceFile_IdAndSlicingProperty_Id(
+                key, model.getFileResource().getId(), property.getId());
+        if (exact.isPresent()) {
+            log.info("SlicingCacheServiceImpl", "Slicing cache hit, reusing result: " + exact.get().getId());
+            return exact;
+        }
+
+        return slicingResultRepository.findFirstByCacheKeyOrderByCreatedAtDesc(key)
+                .map(source -> reuse(source, model, property));
+    }
+
+    /**
+     * Share the stored G-code of an equivalent result; a copy is made only when the source file or property differ
+     */
+    private SlicingResult reuse(SlicingResult source, Model model, SlicingProperty property) {
+        if (source.getSourceFile().getId().equals(model.getFileResource().getId())
+                && source.getSlicingProperty().getId().equals(property.getId())) {
+            return source;
+        }
+
+        SlicingResult copy = slicingResultRepository.save(SlicingResult.builder()
+                .sourceFile(model.getFileResource())
+                .generatedFile(source.getGeneratedFile())
+                .binaryFile(source.getBinaryFile())
+                .slicingProperty(property)
+                .lines(source.getLines())
+                .cacheKey(source.getCacheKey())
+                .createdAt(Instant.now())
+                .build());
+
+        SlicingMetric metrics = metricsService.getMetricsBySlicingResultId(source.getId());
+        if (metrics != null) {
+            metricsService.saveMetrics(SlicingMetric.builder()
+                    .slicingResult(copy)
+                    .sliceTimeSeconds(0)
+                    .estimatedPrintTimeMinutes(metrics.getEstimatedPrintTimeMinutes())
+                    .materialVolumeMm3(metrics.getMaterialVolumeMm3())
+                    .materialWeightG(metrics.getMaterialWeightG())
+                    .estimatedCost(metrics.getEstimatedCost())
+                    .layerCount(metrics.getLayerCount())
+                    .supportVolumeMm3(metrics.getSupportVolumeMm3())
+                    .filamentLengthMm(metrics.getFilamentLengthMm())
+                    .featureExtrusionMm(metrics.getFeatureExtrusionMm())
+                    .build());
+        } else {
+            metricsService.calculateMetrics(copy);
+        }
+
+        log.info("SlicingCacheServiceImpl", "Slicing cache hit, cloned result " + source.getId() + " into " + copy.getId());
+        return copy;
+    }
+
+    /**
+     * Waiters read the result from the database, so they are released only once it is committed
+     */
+    private void publishWhenCommitted(String key, CompletableFuture<UUID> pending, UUID resultId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            inFlight.remove(key, pending);
+            pending.complete(resultId);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                inFlight.remove(key, pending);
+                if (status == STATUS_COMMITTED) {
+                    pending.complete(resultId);
+                } else {
+                    pending.completeExceptionally(new SlicingException("Coalesced slicing was rolled back"));
+                }
+            }
+        });
+    }
+
+    /**
+     * Id of the result the identical slice stored, or null when it is still running after the slicing timeout
+     */
+    private UUID await(CompletableFuture<UUID> future) {
+        try {
+            return future.get(awaitTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SlicingException("Interrupted while waiting for identical slicing");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RetryableSlicingException) {
+                throw new RetryableSlicingException("Identical slicing failed: " + e.getCause().getMessage(), e.getCause());
+            }
+            throw new SlicingException("Identical slicing failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
@@ -13,4 +13,26 @@ public interface SlicingEngine {
     String getName();
 
     String getVersion();
+
+    /**
+     * Engine version slicing results are cached under. It is configured rather than reported by the endpoints,
+     * so it stays the same whichever instance answered the last probe; bump it to invalidate cached results.
+     */
+    String getCacheVersion();
+
+    /**
+     * Cached availability from the last background probe and the endpoint circuit breaker; never blocks on the network
+     */
+    boolean isAvailable();
+
+    /**
+     * Probe the engine over the network and refresh the cached health and version
+     */
+    void probeHealth();
+
+    /**
+     * Canonical form of the settings this engine actually uses for the given properties.
+     * Equal fingerprints on the same model and cache version produce the same output.
+     */
+    String getParameterFingerprint(SlicingProperty properties);
 }
\ No newline at end of file
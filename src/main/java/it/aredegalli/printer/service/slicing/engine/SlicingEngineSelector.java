@@ -57,7 +57,7 @@ public class SlicingEngineSelector {
             JobRequirements requirements = analyzeRequirements(properties, model);
 
             // Select engine based on requirements
-            SlicingEngine selectedEngine = selectBasedOnRequirements(requirements);
+            SlicingEngine selectedEngine = rerouteIfUnavailable(selectBasedOnRequirements(requirements));
 
             logService.info("SlicingEngineSelector",
                     String.format("Selected engine: %s for model: %s (complexity: %s, quality: %s)",
@@ -73,6 +73,26 @@ public class SlicingEngineSelector {
         }
     }
 
+    /**
+     * Swap an engine whose circuit is open or whose last probe failed for any available one.
+     * When none is available the original engine is kept, and it fails fast on its own.
+     */
+    private SlicingEngine rerouteIfUnavailable(SlicingEngine engine) {
+        if (engine.isAvailable()) {
+            return engine;
+        }
+
+        return engineMap.values().stream()
+                .filter(SlicingEngine::isAvailable)
+                .findFirst()
+                .map(alternative -> {
+                    logService.warn("SlicingEngineSelector",
+                            String.format("Engine %s unavailable, rerouting to %s", engine.getName(), alternative.getName()));
+                    return alternative;
+                })
+                .orElse(engine);
+    }
+
     /**
      * Get engine by name
      */
@@ -111,6 +131,17 @@ public class SlicingEngineSelector {
         return engineMap.containsKey(engineName.toLowerCase());
     }
 
+    /**
+     * Cached availability of every registered engine
+     */
+    public Map<String, Boolean> getEngineAvailability() {
+        Map<String, Boolean> availability = new HashMap<>();
+        for (SlicingEngine engine : engineMap.values()) {
+            availability.put(engine.getName(), engine.isAvailable());
+        }
+        return availability;
+    }
+
     /**
      * Get all available engine names
      */
@@ -9,29 +9,47 @@ import it.aredegalli.printer.repository.resource.FileResourceRepository;
 import it.aredegalli.printer.repository.slicing.result.SlicingResultRepository;
 import it.aredegalli.printer.service.log.LogService;
 import it.aredegalli.printer.service.resource.FileResourceService;
+import it.aredegalli.printer.service.resource.StoredFileResource;
+import it.aredegalli.printer.service.slicing.analysis.GcodeAnalyzer;
+import it.aredegalli.printer.service.slicing.analysis.GcodeAnalyzingInputStream;
+import it.aredegalli.printer.service.slicing.analysis.GcodeScanner;
 import it.aredegalli.printer.service.slicing.engine.SlicingEngine;
+import it.aredegalli.printer.service.slicing.engine.health.EngineCircuitBreaker;
+import it.aredegalli.printer.service.slicing.engine.health.EngineEndpointHealth;
+import it.aredegalli.printer.service.slicing.engine.pool.EngineEndpointPool;
+import it.aredegalli.printer.service.slicing.gcode.BinaryGcode;
+import it.aredegalli.printer.service.slicing.gcode.BinaryGcodeWriter;
+import it.aredegalli.printer.service.slicing.gcode.GcodeSpool;
+import it.aredegalli.printer.service.slicing.index.GcodeIndexService;
+import it.aredegalli.printer.service.slicing.limit.SlicingConcurrencyLimiter;
+import it.aredegalli.printer.service.slicing.metrics.SlicingMetricsService;
 import it.aredegalli.printer.service.storage.StorageService;
 import it.aredegalli.printer.util.PrinterCostants;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.*;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.TreeMap;
 
 /**
  * Enhanced CuraEngine adapter with comprehensive debug logging
@@ -45,6 +63,10 @@ public class CuraEngineAdapter implements SlicingEngine {
     private final FileResourceRepository fileResourceRepository;
     private final SlicingResultRepository slicingResultRepository;
     private final LogService logService;
+    private final SlicingConcurrencyLimiter concurrencyLimiter;
+    private final GcodeAnalyzer gcodeAnalyzer;
+    private final SlicingMetricsService metricsService;
+    private final GcodeIndexService gcodeIndexService;
 
     @Qualifier("slicingRestTemplate")
     private final RestTemplate restTemplate;
@@ -52,8 +74,17 @@ public class CuraEngineAdapter implements SlicingEngine {
     @Qualifier("healthCheckRestTemplate")
     private final RestTemplate healthCheckRestTemplate;
 
-    @Value("${slicing.engines.external.service-url}")
-    private String curaServiceUrl;
+    @Value("${slicing.engines.external.service-urls:${slicing.engines.external.service-url}}")
+    private List<String> curaServiceUrls;
+
+    @Value("${slicing.engines.external.cache-version:" + DEFAULT_VERSION + "}")
+    private String cacheVersion;
+
+    @Value("${slicing.engines.external.max-in-flight-per-endpoint:2}")
+    private int maxInFlightPerEndpoint;
+
+    @Value("${slicing.engines.external.acquire-timeout-seconds:5}")
+    private int acquireTimeoutSeconds;
 
     @Value("${slicing.engines.external.timeout-seconds:300}")
     private int timeoutSeconds;
@@ -61,6 +92,24 @@ public class CuraEngineAdapter implements SlicingEngine {
     @Value("${slicing.engines.external.connection-timeout-seconds:30}")
     private int connectionTimeoutSeconds;
 
+    @Value("${slicing.spool.directory:${java.io.tmpdir}}")
+    private String spoolDirectory;
+
+    // Off by default: the binary file is stored next to the text one, not instead of it
+    @Value("${slicing.binary-gcode.enabled:false}")
+    private boolean binaryGcodeEnabled;
+
+    @Value("${slicing.engines.health.ttl-ms:45000}")
+    private long healthTtlMs;
+
+    @Value("${slicing.engines.health.failure-threshold:3}")
+    private int circuitFailureThreshold;
+
+    @Value("${slicing.engines.health.open-seconds:30}")
+    private int circuitOpenSeconds;
+
+    private EngineEndpointPool endpointPool;
+
     // Generic build volume - can be overridden by printer at print time
     @Value("${slicing.default.build-volume.width:200}")
     private int defaultBuildVolumeWidth;
@@ -71,6 +120,8 @@ public class CuraEngineAdapter implements SlicingEngine {
     @Value("${slicing.default.build-volume.height:200}")
     private int defaultBuildVolumeHeight;
 
+    private static final String DEFAULT_VERSION = "5.6.0-Generic";
+
     // Quality profiles for consistent layer height mapping
     private static final Map<String, QualityProfile> QUALITY_PROFILES = Map.of(
             "draft", new QualityProfile("Draft", 0.3f, 80f, 15f, 2),
@@ -79,6 +130,28 @@ public class CuraEngineAdapter implements SlicingEngine {
             "ultra", new QualityProfile("Ultra", 0.1f, 30f, 30f, 4)
     );
 
+    @PostConstruct
+    public void initEndpointPool() {
+        List<EngineEndpointHealth> endpoints = curaServiceUrls.stream()
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(url -> url.endsWith("/") ? url.substring(0, url.length() - 1) : url)
+                .distinct()
+                .map(url -> new EngineEndpointHealth(url,
+                        new EngineCircuitBreaker(circuitFailureThreshold, Duration.ofSeconds(circuitOpenSeconds)),
+                        Duration.ofMillis(healthTtlMs), DEFAULT_VERSION))
+                .toList();
+
+        if (endpoints.isEmpty()) {
+            throw new IllegalStateException("No CuraEngine service URL configured");
+        }
+
+        endpointPool = new EngineEndpointPool(endpoints, maxInFlightPerEndpoint);
+        concurrencyLimiter.capAt(endpoints.size() * maxInFlightPerEndpoint);
+        logService.info("CuraEngineAdapter", String.format("CuraEngine pool: %d endpoints, max %d in flight each",
+                endpoints.size(), maxInFlightPerEndpoint));
+    }
+
     @Override
     public SlicingResult slice(Model model, SlicingProperty properties) {
         logService.info("CuraEngineAdapter", "=== STARTING CURA ENGINE SLICING ===");
@@ -98,19 +171,19 @@ public class CuraEngineAdapter implements SlicingEngine {
             }
             logService.info("CuraEngineAdapter", "STEP 1 COMPLETED: Model validation successful");
 
-            // 2. Check service health before starting
+            // 2. Check cached service health, failing fast while the circuit is open
             logService.info("CuraEngineAdapter", "STEP 2: Checking service health");
-            if (!checkServiceHealth()) {
-                throw new SlicingException("CuraEngine service is not available at: " + curaServiceUrl);
+            if (!isAvailable()) {
+                throw new RetryableSlicingException("No CuraEngine endpoint is available: " + curaServiceUrls);
             }
             logService.info("CuraEngineAdapter", "STEP 2 COMPLETED: Service health check OK");
 
-            // 3. Download STL file
-            logService.info("CuraEngineAdapter", "STEP 3: Downloading STL file");
-            byte[] stlBytes = downloadSTLBytes(model);
+            // 3. Prepare a streaming STL source
+            logService.info("CuraEngineAdapter", "STEP 3: Preparing STL stream");
+            StoredFileResource stl = openSTLResource(model);
             logService.info("CuraEngineAdapter",
-                    String.format("STEP 3 COMPLETED: Downloaded STL: %.2f MB (%d bytes)",
-                            stlBytes.length / 1024.0 / 1024.0, stlBytes.length));
+                    String.format("STEP 3 COMPLETED: STL will be streamed from storage: %.2f MB (%d bytes)",
+                            stl.contentLength() / 1024.0 / 1024.0, stl.contentLength()));
 
             // 4. Build slicing parameters
             logService.info("CuraEngineAdapter", "STEP 4: Building slicing parameters");
@@ -119,26 +192,24 @@ public class CuraEngineAdapter implements SlicingEngine {
                     String.format("Layer: %.2fmm, Speed: %.0fmm/s, Infill: %.0f%%",
                             params.layerHeight, params.speedPrint, params.infillDensity));
 
-            // 5. Call CuraEngine API with retry logic
+            // 5. Call CuraEngine API, spooling the G-code to disk
             logService.info("CuraEngineAdapter", "STEP 5: Calling CuraEngine API");
-            String gcode = callCuraEngineAPIWithRetry(stlBytes, model.getId().toString(), params);
-
-            if (gcode == null || gcode.trim().isEmpty()) {
-                throw new SlicingException("Received empty G-code from CuraEngine");
-            }
+            SlicingResult result;
+            try (GcodeSpool gcode = callCuraEngineAPIOnce(stl, params)) {
 
-            logService.info("CuraEngineAdapter",
-                    String.format("STEP 5 COMPLETED: Received G-code: %d lines, %.2f MB",
-                            gcode.lines().count(), gcode.length() / 1024.0 / 1024.0));
+                logService.info("CuraEngineAdapter",
+                        String.format("STEP 5 COMPLETED: Received G-code: %d lines, %.2f MB",
+                                gcode.getLines(), gcode.getSize() / 1024.0 / 1024.0));
 
-            // 6. Validate G-code output
-            logService.info("CuraEngineAdapter", "STEP 6: Validating G-code");
-            validateGcode(gcode);
-            logService.info("CuraEngineAdapter", "STEP 6 COMPLETED: G-code validation successful");
+                // 6. Validate G-code output
+                logService.info("CuraEngineAdapter", "STEP 6: Validating G-code");
+                validateGcode(gcode);
+                logService.info("CuraEngineAdapter", "STEP 6 COMPLETED: G-code validation successful");
 
-            // 7. Save and return result
-            logService.info("CuraEngineAdapter", "STEP 7: Creating slicing result");
-            SlicingResult result = createSlicingResult(gcode, model, properties);
+                // 7. Save and return result
+                logService.info("CuraEngineAdapter", "STEP 7: Creating slicing result");
+                result = createSlicingResult(gcode, model, properties, startTime);
+            }
 
             Duration processingTime = Duration.between(startTime, Instant.now());
             logService.info("CuraEngineAdapter",
@@ -161,72 +232,60 @@ public class CuraEngineAdapter implements SlicingEngine {
     }
 
     /**
-     * Enhanced API call with retry logic and better error handling
+     * Single API call on the least-loaded available endpoint.
+     * Transient failures surface as {@link RetryableSlicingException}; the queue retries the job later
+     * with backoff instead of holding this worker. The wait for a free endpoint is only a few seconds and
+     * counts towards the latency seen by the concurrency limiter.
      */
-    private String callCuraEngineAPIWithRetry(byte[] stlBytes, String modelName, SlicingParameters params) {
-        int maxRetries = 3;
-        int baseDelayMs = 5000; // 5 seconds
-
-        for (int attempt = 1; attempt <= maxRetries; attempt++) {
-            try {
-                logService.info("CuraEngineAdapter",
-                        String.format("API CALL ATTEMPT %d/%d: %s/slice (timeout: %ds)",
-                                attempt, maxRetries, curaServiceUrl, timeoutSeconds));
-
-                String result = callCuraEngineAPI(stlBytes, modelName, params);
-
-                logService.info("CuraEngineAdapter", "API CALL SUCCESSFUL on attempt " + attempt);
-                return result;
+    private GcodeSpool callCuraEngineAPIOnce(StoredFileResource stl, SlicingParameters params) {
+        Instant callStart = Instant.now();
+        try (EngineEndpointPool.Lease lease = acquireEndpoint()) {
+            EngineEndpointHealth endpoint = lease.getEndpoint();
+            logService.info("CuraEngineAdapter",
+                    String.format("API CALL: %s/slice (timeout: %ds)", endpoint.getUrl(), timeoutSeconds));
 
-            } catch (ResourceAccessException e) {
-                // Network/timeout errors
-                logService.error("CuraEngineAdapter",
-                        String.format("API CALL FAILED (attempt %d/%d): %s", attempt, maxRetries, e.getMessage()));
+            GcodeSpool result = callCuraEngineAPI(endpoint, stl, params);
+            endpoint.getCircuitBreaker().recordSuccess();
+            concurrencyLimiter.onSuccess(Duration.between(callStart, Instant.now()), stl.contentLength());
 
-                if (attempt == maxRetries) {
-                    throw new SlicingException("CuraEngine API timeout after " + maxRetries + " attempts: " + e.getMessage());
-                }
+            logService.info("CuraEngineAdapter", "API CALL SUCCESSFUL on " + endpoint.getUrl());
+            return result;
 
-                int delayMs = baseDelayMs * attempt;
-                logService.warn("CuraEngineAdapter",
-                        String.format("Retrying in %d seconds...", delayMs / 1000));
+        } catch (ResourceAccessException e) {
+            // Network/timeout errors
+            logService.error("CuraEngineAdapter", "API CALL FAILED: " + e.getMessage());
+            throw new RetryableSlicingException("CuraEngine API connection error: " + e.getMessage(), e);
 
-                try {
-                    TimeUnit.MILLISECONDS.sleep(delayMs);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw new SlicingException("Slicing interrupted");
-                }
+        } catch (RestClientException e) {
+            // Other REST errors
+            logService.error("CuraEngineAdapter", "REST CLIENT ERROR: " + e.getMessage());
+            throw new SlicingException("CuraEngine API error: " + e.getMessage());
+        }
+    }
 
-            } catch (RestClientException e) {
-                // Other REST errors
-                logService.error("CuraEngineAdapter", "REST CLIENT ERROR: " + e.getMessage());
-                throw new SlicingException("CuraEngine API error: " + e.getMessage());
+    private EngineEndpointPool.Lease acquireEndpoint() {
+        try {
+            EngineEndpointPool.Lease lease = endpointPool.acquire(Duration.ofSeconds(acquireTimeoutSeconds));
+            if (lease == null) {
+                throw new RetryableSlicingException("No CuraEngine endpoint available, in flight: " + endpointPool.getInFlight());
             }
+            return lease;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SlicingException("Slicing interrupted");
         }
-
-        throw new SlicingException("CuraEngine API failed after all retry attempts");
     }
 
-    private String callCuraEngineAPI(byte[] stlBytes, String modelName, SlicingParameters params) {
-        String url = curaServiceUrl + "/slice";
-
-        // Configura RestTemplate con timeout di 5 minuti
-        RestTemplate customRestTemplate = createRestTemplateWithTimeout(300); // 300 secondi = 5 minuti
+    private GcodeSpool callCuraEngineAPI(EngineEndpointHealth endpoint, StoredFileResource stl, SlicingParameters params) {
+        String url = endpoint.getUrl() + "/slice";
 
         logService.info("CuraEngineAdapter", "PREPARING API CALL to: " + url);
 
         // Prepare form-data request
         MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
 
-        // Add STL file
-        ByteArrayResource stlResource = new ByteArrayResource(stlBytes) {
-            @Override
-            public String getFilename() {
-                return modelName.endsWith(".stl") ? modelName : modelName + ".stl";
-            }
-        };
-        body.add("uploaded_file", stlResource);
+        // Add STL file; the resource opens a fresh storage stream for every attempt
+        body.add("uploaded_file", stl);
 
         // Add all slicing parameters
         addSlicingParameters(body, params);
@@ -239,90 +298,115 @@ public class CuraEngineAdapter implements SlicingEngine {
 
         logService.info("CuraEngineAdapter", String.format(
                 "SENDING REQUEST: URL=%s, Parameters=%d, STL_Size=%.2fMB, Timeout=%ds",
-                url, body.size(), stlBytes.length / 1024.0 / 1024.0, 300));
+                url, body.size(), stl.contentLength() / 1024.0 / 1024.0, timeoutSeconds));
 
         try {
             Instant callStart = Instant.now();
-            ResponseEntity<String> response = customRestTemplate.postForEntity(url, requestEntity, String.class);
-            Duration callTime = Duration.between(callStart, Instant.now());
 
-            logService.info("CuraEngineAdapter", String.format(
-                    "API RESPONSE: Status=%s, Time=%ds, Content-Length=%d",
-                    response.getStatusCode(), callTime.getSeconds(),
-                    response.getBody() != null ? response.getBody().length() : 0));
+            // The response body is streamed straight into a local spool instead of being read into a String
+            GcodeSpool gcode = restTemplate.execute(url, HttpMethod.POST,
+                    restTemplate.httpEntityCallback(requestEntity),
+                    response -> {
+                        if (response.getStatusCode() != HttpStatus.OK) {
+                            throw new SlicingException("CuraEngine HTTP error: " + response.getStatusCode());
+                        }
+                        try {
+                            return GcodeSpool.spool(response.getBody(), Path.of(spoolDirectory));
+                        } catch (GcodeSpool.SpoolException e) {
+                            // A local disk failure, not the endpoint's: thrown as is instead of as a ResourceAccessException
+                            throw new SlicingException(e.getMessage(), e);
+                        }
+                    });
+            Duration callTime = Duration.between(callStart, Instant.now());
 
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                String gcode = response.getBody();
-                logService.info("CuraEngineAdapter",
-                        String.format("SUCCESS: Received G-code: %d lines, %.2f MB",
-                                gcode.lines().count(), gcode.length() / 1024.0 / 1024.0));
-                return gcode;
-            } else {
-                throw new SlicingException("CuraEngine HTTP error: " + response.getStatusCode());
+            if (gcode == null) {
+                throw new SlicingException("CuraEngine returned no response body");
             }
 
+            logService.info("CuraEngineAdapter", String.format(
+                    "API RESPONSE: Time=%ds, Spooled=%d bytes",
+                    callTime.getSeconds(), gcode.getSize()));
+            logService.info("CuraEngineAdapter",
+                    String.format("SUCCESS: Received G-code: %d lines, %.2f MB",
+                            gcode.getLines(), gcode.getSize() / 1024.0 / 1024.0));
+            return gcode;
+
+        } catch (SlicingException e) {
+            throw e;
         } catch (ResourceAccessException e) {
-            // This includes timeout and connection errors
-            if (e.getMessage().contains("Read timed out")) {
-                logService.error("CuraEngineAdapter", "API READ TIMEOUT after 5 minutes");
-                throw new SlicingException("CuraEngine API read timeout after 5 minutes");
-            } else if (e.getMessage().contains("Connection reset")) {
-                logService.error("CuraEngineAdapter", "API CONNECTION RESET - service may be overloaded");
-                throw new SlicingException("CuraEngine API connection reset - service may be overloaded");
-            } else {
-                logService.error("CuraEngineAdapter", "API CONNECTION ERROR: " + e.getMessage());
-                throw new SlicingException("CuraEngine API connection error: " + e.getMessage());
-            }
+            // Timeout and connection errors count against the endpoint and are retried on the pool
+            endpoint.getCircuitBreaker().recordFailure();
+            concurrencyLimiter.onOverload("connection error on " + endpoint.getUrl());
+            logService.error("CuraEngineAdapter", "API CONNECTION ERROR on " + endpoint.getUrl() + ": " + e.getMessage());
+            throw e;
+        } catch (HttpServerErrorException e) {
+            endpoint.getCircuitBreaker().recordFailure();
+            concurrencyLimiter.onOverload("HTTP " + e.getStatusCode() + " from " + endpoint.getUrl());
+            logService.error("CuraEngineAdapter", "API SERVER ERROR on " + endpoint.getUrl() + ": " + e.getStatusCode());
+            throw new RetryableSlicingException("CuraEngine HTTP error: " + e.getStatusCode(), e);
         } catch (Exception e) {
             logService.error("CuraEngineAdapter", "UNEXPECTED API ERROR: " + e.getMessage());
             throw new SlicingException("Unexpected CuraEngine API error: " + e.getMessage());
         }
     }
 
+    @Override
+    public boolean isAvailable() {
+        return endpointPool.isAvailable();
+    }
+
     /**
-     * Check if CuraEngine service is available
+     * Probe the configuration endpoint of every instance, refreshing cached health and version
      */
-    private boolean checkServiceHealth() {
+    @Override
+    public void probeHealth() {
+        endpointPool.getEndpoints().forEach(this::probeEndpoint);
+    }
+
+    private void probeEndpoint(EngineEndpointHealth endpoint) {
         try {
-            String healthUrl = curaServiceUrl + "/config";
-            logService.info("CuraEngineAdapter", "HEALTH CHECK: " + healthUrl);
+            String healthUrl = endpoint.getUrl() + "/config";
+            logService.debug("CuraEngineAdapter", "HEALTH CHECK: " + healthUrl);
 
             ResponseEntity<Map> response = healthCheckRestTemplate.getForEntity(healthUrl, Map.class);
 
-            boolean isHealthy = response.getStatusCode() == HttpStatus.OK;
-            logService.info("CuraEngineAdapter", "HEALTH CHECK RESULT: " +
-                    (isHealthy ? "HEALTHY" : "UNHEALTHY") + " - Status: " + response.getStatusCode());
-
-            if (isHealthy && response.getBody() != null) {
-                logService.info("CuraEngineAdapter", "SERVICE INFO: " + response.getBody());
+            if (response.getStatusCode() == HttpStatus.OK) {
+                Object version = response.getBody() != null ? response.getBody().get("version") : null;
+                endpoint.probeSucceeded(version != null ? version.toString() : null);
+            } else {
+                endpoint.probeFailed("HTTP " + response.getStatusCode());
+                logService.warn("CuraEngineAdapter", "HEALTH CHECK RESULT: UNHEALTHY - " + healthUrl +
+                        " Status: " + response.getStatusCode());
             }
 
-            return isHealthy;
-
         } catch (Exception e) {
-            logService.error("CuraEngineAdapter", "HEALTH CHECK FAILED: " + e.getMessage());
-            return false;
+            endpoint.probeFailed(e.getMessage());
+            logService.warn("CuraEngineAdapter", "HEALTH CHECK FAILED: " + endpoint.getUrl() + " - " + e.getMessage());
         }
     }
 
+    public EngineEndpointPool getEndpointPool() {
+        return endpointPool;
+    }
+
     /**
      * Validate G-code output
      */
-    private void validateGcode(String gcode) {
+    private void validateGcode(GcodeSpool gcode) {
         logService.info("CuraEngineAdapter", "VALIDATING G-CODE...");
 
-        if (gcode == null || gcode.trim().isEmpty()) {
+        if (gcode.isBlank()) {
             throw new SlicingException("Received empty G-code from CuraEngine");
         }
 
-        long lineCount = gcode.lines().count();
+        long lineCount = gcode.getLines();
         if (lineCount < 10) {
             throw new SlicingException("G-code too short, only " + lineCount + " lines");
         }
 
-        // Check for basic G-code structure
-        boolean hasMovement = gcode.contains("G1") || gcode.contains("G0");
-        boolean hasExtrusion = gcode.contains("E");
+        // Basic G-code structure was recorded while spooling
+        boolean hasMovement = gcode.hasMovement();
+        boolean hasExtrusion = gcode.hasExtrusion();
 
         if (!hasMovement) {
             throw new SlicingException("Invalid G-code: no movement commands found");
@@ -366,18 +450,17 @@ public class CuraEngineAdapter implements SlicingEngine {
 
     @Override
     public String getVersion() {
-        try {
-            ResponseEntity<Map> response = healthCheckRestTemplate.getForEntity(
-                    curaServiceUrl + "/config", Map.class);
+        return endpointPool.getVersion();
+    }
 
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                Map<String, Object> config = response.getBody();
-                return config.getOrDefault("version", "5.6.0-Generic").toString();
-            }
-        } catch (Exception e) {
-            logService.debug("CuraEngineAdapter", "Could not get version: " + e.getMessage());
-        }
-        return "5.6.0-Generic";
+    @Override
+    public String getCacheVersion() {
+        return cacheVersion;
+    }
+
+    @Override
+    public String getParameterFingerprint(SlicingProperty properties) {
+        return new TreeMap<>(toEngineSettings(buildSlicingParameters(properties))).toString();
     }
 
     // ======================================
@@ -516,60 +599,74 @@ public class CuraEngineAdapter implements SlicingEngine {
     // API CALL METHODS
     // ======================================
 
-    private byte[] downloadSTLBytes(Model model) throws Exception {
-        logService.info("CuraEngineAdapter", "DOWNLOADING STL for model: " + model.getName());
+    /**
+     * Re-openable STL source streamed from storage straight into the multipart request
+     */
+    private StoredFileResource openSTLResource(Model model) {
+        logService.info("CuraEngineAdapter", "OPENING STL STREAM for model: " + model.getName());
 
-        try (InputStream stlStream = fileResourceService.download(model.getFileResource().getId())) {
-            byte[] bytes = stlStream.readAllBytes();
-            logService.info("CuraEngineAdapter", "STL DOWNLOAD SUCCESS: " + bytes.length + " bytes");
-            return bytes;
-        } catch (Exception e) {
-            logService.error("CuraEngineAdapter", "STL DOWNLOAD FAILED: " + e.getMessage());
-            throw e;
-        }
+        FileResource stlFile = model.getFileResource();
+        String modelName = model.getId().toString();
+        String filename = modelName.endsWith(".stl") ? modelName : modelName + ".stl";
+
+        return new StoredFileResource(() -> {
+            logService.debug("CuraEngineAdapter", "STREAMING STL from storage: " + stlFile.getId());
+            return fileResourceService.download(stlFile.getId());
+        }, filename, stlFile.getFileSize());
     }
 
     private void addSlicingParameters(MultiValueMap<String, Object> body, SlicingParameters params) {
         logService.info("CuraEngineAdapter", "ADDING SLICING PARAMETERS TO REQUEST...");
 
+        toEngineSettings(params).forEach(body::add);
+
+        logService.info("CuraEngineAdapter", String.format(
+                "PARAMETERS ADDED: %d total parameters, Key settings: Layer=%.2f, Speed=%.0f, Infill=%.0f, Temp=%d",
+                body.size(), params.layerHeight, params.speedPrint, params.infillDensity, params.printTemperature));
+    }
+
+    /**
+     * Settings exactly as they are sent to CuraEngine, shared by the request body and the cache fingerprint
+     */
+    private Map<String, Object> toEngineSettings(SlicingParameters params) {
+        Map<String, Object> settings = new LinkedHashMap<>();
+
         // Generic machine settings (printer-independent)
-        body.add("machine_width", params.machineWidth);
-        body.add("machine_depth", params.machineDepth);
-        body.add("machine_height", params.machineHeight);
+        settings.put("machine_width", params.machineWidth);
+        settings.put("machine_depth", params.machineDepth);
+        settings.put("machine_height", params.machineHeight);
 
         // Quality settings
-        body.add("layer_height", params.layerHeight);
-        body.add("line_width", params.lineWidth);
-        body.add("wall_line_count", params.wallLineCount);
-        body.add("wall_thickness", params.wallThickness);
+        settings.put("layer_height", params.layerHeight);
+        settings.put("line_width", params.lineWidth);
+        settings.put("wall_line_count", params.wallLineCount);
+        settings.put("wall_thickness", params.wallThickness);
 
         // Infill settings
-        body.add("infill_sparse_density", params.infillDensity);
-        body.add("infill_pattern", params.infillPattern);
+        settings.put("infill_sparse_density", params.infillDensity);
+        settings.put("infill_pattern", params.infillPattern);
 
         // Speed settings
-        body.add("speed_print", params.speedPrint);
-        body.add("speed_travel", params.speedTravel);
+        settings.put("speed_print", params.speedPrint);
+        settings.put("speed_travel", params.speedTravel);
 
         // Temperature settings (generic - can be overridden by printer)
-        body.add("material_print_temperature", params.printTemperature);
-        body.add("material_bed_temperature", params.bedTemperature);
+        settings.put("material_print_temperature", params.printTemperature);
+        settings.put("material_bed_temperature", params.bedTemperature);
 
         // Support settings
-        body.add("support_enable", params.supportEnabled);
+        settings.put("support_enable", params.supportEnabled);
 
         // Adhesion settings
-        body.add("adhesion_type", determineAdhesionType(params));
+        settings.put("adhesion_type", determineAdhesionType(params));
 
         // Cooling settings
-        body.add("cool_fan_enabled", params.fanEnabled);
+        settings.put("cool_fan_enabled", params.fanEnabled);
 
         // Retraction settings
-        body.add("retraction_enable", params.retractionEnabled);
+        settings.put("retraction_enable", params.retractionEnabled);
 
-        logService.info("CuraEngineAdapter", String.format(
-                "PARAMETERS ADDED: %d total parameters, Key settings: Layer=%.2f, Speed=%.0f, Infill=%.0f, Temp=%d",
-                body.size(), params.layerHeight, params.speedPrint, params.infillDensity, params.printTemperature));
+        return settings;
     }
 
     private String determineAdhesionType(SlicingParameters params) {
@@ -589,27 +686,35 @@ public class CuraEngineAdapter implements SlicingEngine {
         }
     }
 
-    private SlicingResult createSlicingResult(String gcode, Model model, SlicingProperty properties)
-            throws Exception {
+    private SlicingResult createSlicingResult(GcodeSpool gcode, Model model, SlicingProperty properties,
+                                              Instant startTime) throws Exception {
         logService.info("CuraEngineAdapter", "CREATING SLICING RESULT...");
 
-        byte[] gcodeBytes = gcode.getBytes();
-
-        // Save G-code to storage
+        // Save G-code to storage, streaming from the spool; the same bytes are analyzed on the way,
+        // unless the file is large enough to be analyzed in parallel from the spool afterwards
         logService.info("CuraEngineAdapter", "UPLOADING G-CODE TO STORAGE...");
-        UploadResult uploadResult = storageService.upload(
-                new ByteArrayInputStream(gcodeBytes),
-                gcodeBytes.length,
-                "text/plain",
-                PrinterCostants.PRINTER_SLICING_STORAGE_BUCKET_NAME
-        );
-        logService.info("CuraEngineAdapter", "G-CODE UPLOADED: Object key = " + uploadResult.getObjectKey());
+        boolean parallelAnalysis = gcodeAnalyzer.isParallelWorthwhile(gcode.getSize());
+        GcodeScanner scanner = gcodeAnalyzer.newScanner();
+        UploadResult uploadResult;
+        try (InputStream gcodeStream = parallelAnalysis
+                ? gcode.openStream()
+                : new GcodeAnalyzingInputStream(gcode.openStream(), scanner)) {
+            uploadResult = storageService.uploadCompressed(
+                    gcodeStream,
+                    "text/plain",
+                    PrinterCostants.PRINTER_SLICING_STORAGE_BUCKET_NAME
+            );
+        }
+        logService.info("CuraEngineAdapter", String.format("G-CODE UPLOADED: Object key = %s, %d -> %d bytes",
+                uploadResult.getObjectKey(), uploadResult.getSize(), uploadResult.getStoredSize()));
 
         // Create file resource for G-code
         FileResource gcodeFile = fileResourceRepository.save(FileResource.builder()
                 .fileName(model.getName() + ".gcode")
                 .fileType("text/plain")
-                .fileSize(gcodeBytes.length)
+                .fileSize(gcode.getSize())
+                .contentEncoding(uploadResult.getContentEncoding())
+                .compressedSize(uploadResult.getStoredSize())
                 .fileHash(uploadResult.getHashBytes())
                 .objectKey(uploadResult.getObjectKey())
                 .bucketName(PrinterCostants.PRINTER_SLICING_STORAGE_BUCKET_NAME)
@@ -617,12 +722,19 @@ public class CuraEngineAdapter implements SlicingEngine {
                 .build());
         logService.info("CuraEngineAdapter", "G-CODE FILE RESOURCE CREATED: ID = " + gcodeFile.getId());
 
+        int sliceTimeSeconds = (int) Duration.between(startTime, Instant.now()).getSeconds();
+        GcodeAnalyzer.GcodeMetrics analysis = parallelAnalysis
+                ? gcodeAnalyzer.analyzeFile(gcode.getPath())
+                : gcodeAnalyzer.complete(scanner);
+        FileResource binaryFile = binaryGcodeEnabled ? storeBinaryGcode(gcode, model, analysis) : null;
+
         // Create SlicingResult
         SlicingResult result = SlicingResult.builder()
                 .sourceFile(model.getFileResource())
                 .generatedFile(gcodeFile)
+                .binaryFile(binaryFile)
                 .slicingProperty(properties)
-                .lines(gcode.lines().count())
+                .lines(gcode.getLines())
                 .createdAt(Instant.now())
                 .build();
 
@@ -630,9 +742,72 @@ public class CuraEngineAdapter implements SlicingEngine {
         logService.info("CuraEngineAdapter", "SLICING RESULT CREATED: ID = " + savedResult.getId() +
                 ", Lines = " + savedResult.getLines());
 
+        metricsService.recordMetrics(savedResult, analysis, sliceTimeSeconds);
+        if (analysis.getIndex() != null) {
+            gcodeIndexService.store(gcodeFile, analysis.getIndex());
+        }
+
         return savedResult;
     }
 
+    /**
+     * Transcode the spooled G-code to binary G-code for drivers that support it; null when it cannot be stored,
+     * as drivers then get the text file
+     */
+    private FileResource storeBinaryGcode(GcodeSpool gcode, Model model, GcodeAnalyzer.GcodeMetrics analysis) {
+        Path binary = null;
+        try {
+            binary = Files.createTempFile(Path.of(spoolDirectory), "slice-", BinaryGcode.EXTENSION);
+            try (InputStream in = gcode.openStream();
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(binary), 64 * 1024)) {
+                BinaryGcodeWriter writer = new BinaryGcodeWriter(out, binaryMetadata(gcode, analysis));
+                in.transferTo(writer);
+                writer.finish();
+            }
+
+            long size = Files.size(binary);
+            UploadResult uploadResult = storageService.upload(binary, BinaryGcode.CONTENT_TYPE,
+                    PrinterCostants.PRINTER_SLICING_STORAGE_BUCKET_NAME);
+            logService.info("CuraEngineAdapter", String.format("BINARY G-CODE UPLOADED: Object key = %s, %d -> %d bytes",
+                    uploadResult.getObjectKey(), gcode.getSize(), size));
+
+            FileResource existing = fileResourceRepository.findByFileHash(uploadResult.getHashBytes());
+            if (existing != null) {
+                return existing;
+            }
+            return fileResourceRepository.save(FileResource.builder()
+                    .fileName(model.getName() + BinaryGcode.EXTENSION)
+                    .fileType(BinaryGcode.CONTENT_TYPE)
+                    .fileSize(size)
+                    .fileHash(uploadResult.getHashBytes())
+                    .objectKey(uploadResult.getObjectKey())
+                    .bucketName(PrinterCostants.PRINTER_SLICING_STORAGE_BUCKET_NAME)
+                    .uploadedAt(Instant.now())
+                    .build());
+        } catch (Exception e) {
+            logService.warn("CuraEngineAdapter", "BINARY G-CODE NOT STORED: " + e.getMessage());
+            return null;
+        } finally {
+            if (binary != null) {
+                try {
+                    Files.deleteIfExists(binary);
+                } catch (Exception e) {
+                    logService.warn("CuraEngineAdapter", "Failed to delete binary G-code spool " + binary + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private Map<String, String> binaryMetadata(GcodeSpool gcode, GcodeAnalyzer.GcodeMetrics analysis) {
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("lines", String.valueOf(gcode.getLines()));
+        metadata.put("layers", String.valueOf(analysis.getLayerCount()));
+        metadata.put("print_time_minutes", String.valueOf(analysis.getEstimatedPrintTimeMinutes()));
+        metadata.put("filament_length_mm", String.valueOf(analysis.getFilamentLengthMm()));
+        metadata.put("filament_weight_g", analysis.getMaterialWeightG().toPlainString());
+        return metadata;
+    }
+
     // ======================================
     // UTILITY METHODS
     // ======================================
@@ -730,10 +905,16 @@ public class CuraEngineAdapter implements SlicingEngine {
         }
     }
 
-    private RestTemplate createRestTemplateWithTimeout(int timeoutSeconds) {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(30 * 1000);
-        factory.setReadTimeout(timeoutSeconds * 1000);
-        return new RestTemplate(factory);
+    /**
+     * Transient engine failure (unreachable, overloaded, timed out) worth retrying later
+     */
+    public static class RetryableSlicingException extends SlicingException {
+        public RetryableSlicingException(String message) {
+            super(message);
+        }
+
+        public RetryableSlicingException(String message, Throwable cause) {
+            super(message, cause);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+package it.aredegalli.printer.service.slicing.engine.health;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Consecutive-failure circuit breaker for a single engine endpoint.
+ * Opens after {@code failureThreshold} failures, lets a single trial call through once {@code openDuration}
+ * has elapsed, closes again when it succeeds and reopens when it fails.
+ * Only real calls are recorded here; health probes do not open or close the circuit.
+ */
+public class EngineCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final Duration openDuration;
+
+    private int consecutiveFailures = 0;
+    private Instant openedAt;
+    private boolean trialInFlight = false;
+
+    public EngineCircuitBreaker(int failureThreshold, Duration openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Whether a call may be attempted now; checking has no side effects, only recorded outcomes change the state
+     */
+    public synchronized boolean allowRequest() {
+        State state = currentState();
+        return state == State.CLOSED || (state == State.HALF_OPEN && !trialInFlight);
+    }
+
+    /**
+     * Claim permission for a call: always granted while closed, granted to one caller at a time while half-open,
+     * who must then record the outcome or {@link #releaseTrial() release} the trial
+     */
+    public synchronized boolean tryAcquirePermission() {
+        State state = currentState();
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && !trialInFlight) {
+            trialInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Give back a trial that ended without a recorded outcome, e.g. a call rejected as a client error
+     */
+    public synchronized void releaseTrial() {
+        trialInFlight = false;
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        openedAt = null;
+        trialInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        trialInFlight = false;
+        consecutiveFailures++;
+        if (currentState() == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            openedAt = Instant.now();
+        }
+    }
+
+    public synchronized State getState() {
+        return currentState();
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    private State currentState() {
+        if (openedAt == null) {
+            return State.CLOSED;
+        }
+        return Instant.now().isAfter(openedAt.plus(openDuration)) ? State.HALF_OPEN : State.OPEN;
+    }
+}
@@ -0,0 +1,80 @@
+package it.aredegalli.printer.service.slicing.engine.health;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Last known health of an engine endpoint, refreshed in the background so callers never probe inline.
+ * Probes only mark the endpoint healthy or not; the circuit breaker is driven by the outcome of real calls.
+ */
+public class EngineEndpointHealth {
+
+    private final String url;
+    private final EngineCircuitBreaker circuitBreaker;
+    private final Duration ttl;
+
+    private volatile boolean healthy = false;
+    private volatile String version;
+    private volatile Instant checkedAt;
+    private volatile String lastError;
+
+    public EngineEndpointHealth(String url, EngineCircuitBreaker circuitBreaker, Duration ttl, String defaultVersion) {
+        this.url = url;
+        this.circuitBreaker = circuitBreaker;
+        this.ttl = ttl;
+        this.version = defaultVersion;
+    }
+
+    public void probeSucceeded(String version) {
+        if (version != null) {
+            this.version = version;
+        }
+        this.healthy = true;
+        this.lastError = null;
+        this.checkedAt = Instant.now();
+    }
+
+    public void probeFailed(String error) {
+        this.healthy = false;
+        this.lastError = error;
+        this.checkedAt = Instant.now();
+    }
+
+    /**
+     * Usable for a new call: circuit not open, and the last probe, if still fresh, was healthy
+     */
+    public boolean isAvailable() {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
+        return !isFresh() || healthy;
+    }
+
+    public boolean isFresh() {
+        return checkedAt != null && Instant.now().isBefore(checkedAt.plus(ttl));
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public EngineCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public Instant getCheckedAt() {
+        return checkedAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+}
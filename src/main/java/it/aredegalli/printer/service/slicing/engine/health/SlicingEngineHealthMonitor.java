@@ -0,0 +1,60 @@
+package it.aredegalli.printer.service.slicing.engine.health;
+
+import it.aredegalli.printer.service.log.LogService;
+import it.aredegalli.printer.service.slicing.engine.SlicingEngine;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+/**
+ * Probes every slicing engine in the background; the slicing path and health endpoints only read cached state.
+ * Probes run on their own executor so a slow engine never holds the shared scheduler thread, and an engine
+ * whose previous probe is still running is skipped until it finishes.
+ */
+@Component
+@RequiredArgsConstructor
+public class SlicingEngineHealthMonitor {
+
+    private final List<SlicingEngine> engines;
+    private final LogService logService;
+
+    @Qualifier("healthProbeExecutor")
+    private final ThreadPoolTaskExecutor probeExecutor;
+
+    private final Map<String, Future<?>> running = new ConcurrentHashMap<>();
+
+    @Scheduled(fixedDelayString = "${slicing.engines.health.interval-ms:15000}")
+    public void probeEngines() {
+        for (SlicingEngine engine : engines) {
+            Future<?> previous = running.get(engine.getName());
+            if (previous != null && !previous.isDone()) {
+                logService.debug("SlicingEngineHealthMonitor",
+                        "Previous health probe still running for engine " + engine.getName());
+                continue;
+            }
+            try {
+                running.put(engine.getName(), probeExecutor.submit(() -> probe(engine)));
+            } catch (TaskRejectedException e) {
+                logService.warn("SlicingEngineHealthMonitor",
+                        "No probe thread free for engine " + engine.getName());
+            }
+        }
+    }
+
+    private void probe(SlicingEngine engine) {
+        try {
+            engine.probeHealth();
+        } catch (Exception e) {
+            logService.warn("SlicingEngineHealthMonitor",
+                    "Health probe failed for engine " + engine.getName() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package it.aredegalli.printer.service.slicing.engine.pool;
+
+import it.aredegalli.printer.service.slicing.engine.health.EngineCircuitBreaker;
+import it.aredegalli.printer.service.slicing.engine.health.EngineEndpointHealth;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Set of interchangeable engine endpoints with a per-endpoint in-flight limit.
+ * Calls go to the least-loaded endpoint that is available; endpoints whose circuit is open are skipped
+ * until a trial call brings them back, and a half-open endpoint takes a single trial at a time.
+ */
+public class EngineEndpointPool {
+
+    private static final long MAX_WAIT_SLICE_MS = 1000;
+
+    private final List<Member> members;
+
+    public EngineEndpointPool(List<EngineEndpointHealth> endpoints, int maxInFlightPerEndpoint) {
+        this.members = endpoints.stream()
+                .map(endpoint -> new Member(endpoint, maxInFlightPerEndpoint))
+                .toList();
+    }
+
+    /**
+     * Reserve a slot on the least-loaded available endpoint, waiting up to {@code timeout} while all are busy.
+     * Returns null on timeout, or immediately when no endpoint is available at all.
+     */
+    public synchronized Lease acquire(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+
+        while (true) {
+            boolean anyAvailable = false;
+            Member best = null;
+            for (Member member : members) {
+                if (!member.endpoint.isAvailable()) {
+                    continue;
+                }
+                anyAvailable = true;
+                if (member.inFlight < member.maxInFlight
+                        && (best == null || member.inFlight < best.inFlight)) {
+                    best = member;
+                }
+            }
+
+            if (best != null && best.endpoint.getCircuitBreaker().tryAcquirePermission()) {
+                boolean trial = best.endpoint.getCircuitBreaker().getState() != EngineCircuitBreaker.State.CLOSED;
+                best.inFlight++;
+                return new Lease(best, trial);
+            }
+
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (!anyAvailable || remainingMs <= 0) {
+                return null;
+            }
+
+            // Timed slices so that endpoints coming back from an open circuit are picked up too
+            wait(Math.min(remainingMs, MAX_WAIT_SLICE_MS));
+        }
+    }
+
+    private synchronized void release(Member member) {
+        member.inFlight--;
+        notifyAll();
+    }
+
+    public boolean isAvailable() {
+        return members.stream().anyMatch(member -> member.endpoint.isAvailable());
+    }
+
+    public List<EngineEndpointHealth> getEndpoints() {
+        return members.stream().map(member -> member.endpoint).toList();
+    }
+
+    public synchronized Map<String, Integer> getInFlight() {
+        return members.stream().collect(Collectors.toMap(member -> member.endpoint.getUrl(), member -> member.inFlight));
+    }
+
+    /**
+     * Version reported by the freshest healthy endpoint, falling back to the first one
+     */
+    public String getVersion() {
+        return members.stream()
+                .map(member -> member.endpoint)
+                .filter(EngineEndpointHealth::isHealthy)
+                .max(Comparator.comparing(EngineEndpointHealth::getCheckedAt))
+                .orElse(members.get(0).endpoint)
+                .getVersion();
+    }
+
+    private static class Member {
+        final EngineEndpointHealth endpoint;
+        final int maxInFlight;
+        int inFlight = 0;
+
+        Member(EngineEndpointHealth endpoint, int maxInFlight) {
+            this.endpoint = endpoint;
+            this.maxInFlight = maxInFlight;
+        }
+    }
+
+    public class Lease implements AutoCloseable {
+
+        private final Member member;
+        private final boolean trial;
+        private boolean released = false;
+
+        private Lease(Member member, boolean trial) {
+            this.member = member;
+            this.trial = trial;
+        }
+
+        public EngineEndpointHealth getEndpoint() {
+            return member.endpoint;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                if (trial) {
+                    member.endpoint.getCircuitBreaker().releaseTrial();
+                }
+                release(member);
+            }
+        }
+    }
+}
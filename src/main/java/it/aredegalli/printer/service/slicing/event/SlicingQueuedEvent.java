@@ -0,0 +1,19 @@
+package it.aredegalli.printer.service.slicing.event;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Published inside the transaction that puts a job in the slicing queue.
+ * {@code notBefore} is set when the job is a retry that may not be claimed earlier.
+ */
+public record SlicingQueuedEvent(UUID queueId, Instant notBefore) {
+
+    public SlicingQueuedEvent(UUID queueId) {
+        this(queueId, null);
+    }
+
+    public boolean isDue() {
+        return notBefore == null || !notBefore.isAfter(Instant.now());
+    }
+}
@@ -0,0 +1,162 @@
+package it.aredegalli.printer.service.slicing.gcode;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Compact block-based binary G-code, in the spirit of bgcode, served to drivers that advertise support for it.
+ * <pre>
+ * file    := "GCB" version:u8 block*
+ * block   := type:u8 flags:u8 rawLength:varint length:varint payload[length] crc32:u32 (big endian, of payload)
+ * flags   := bit 0 set when the payload is raw deflate with {@link #DICTIONARY} preset; rawLength is its inflated size
+ * METADATA payload := UTF-8 "key=value\n" lines
+ * GCODE payload    := lineCount:varint record*, one record per line of the text G-code
+ * record  := MOVE | TEXT
+ * MOVE    := 00 g mmmmm, then for each axis in the mask, in X Y Z E F order, a zigzag varint delta
+ *            from the previous value of that axis in the block (0 at block start); g set for G1, clear for G0
+ * TEXT    := 0x40 length:varint bytes, any other line as is, without its newline
+ * </pre>
+ * X, Y, Z and F are in thousandths, E in hundred-thousandths. Every block decodes on its own, so blocks
+ * can be copied between files; numbers are written back with the fewest decimals, words in X Y Z E F order.
+ * <p>
+ * A block holds up to 1 MiB of records, the size of the gzip members the text G-code is stored in, so deflate
+ * restarts no more often than it does for the text; with moves delta coded, a file comes out smaller than the
+ * gzipped text. It is stored next to the text, not instead of it, which is why producing it is opt-in
+ * ({@code slicing.binary-gcode.enabled}). {@link BinaryGcodeReader} decodes it back to text.
+ */
+public final class BinaryGcode {
+
+    public static final String CONTENT_TYPE = "application/x-gcode-binary";
+    public static final String EXTENSION = ".gcb";
+    /**
+     * Capability a driver lists in its heartbeat when it accepts this format
+     */
+    public static final String CAPABILITY = "binary-gcode";
+
+    static final byte[] MAGIC = {'G', 'C', 'B'};
+    static final int VERSION = 1;
+
+    public static final int METADATA = 1;
+    public static final int GCODE = 2;
+
+    static final int FLAG_DEFLATED = 1;
+
+    static final int TEXT = 0x40;
+    static final int G1 = 0x20;
+    static final String AXES = "XYZEF";
+    static final int[] DECIMALS = {3, 3, 3, 5, 3};
+
+    /**
+     * Preset deflate dictionary: frequent slicer comments and commands, the most frequent last
+     */
+    static final byte[] DICTIONARY = (";Generated with Cura_SteamEngine\n;FLAVOR:Marlin\n;Filament used: \n"
+            + ";Layer height: \n;MINX:\n;MINY:\n;MINZ:\n;MAXX:\n;MAXY:\n;MAXZ:\nM82 ;absolute extrusion mode\n"
+            + "M83\nM140 S\nM190 S\nM104 S\nM109 S\nG28\nM84\nM107\nG10\nG11\nM117 \n;TYPE:SKIRT\n;TYPE:PRIME-TOWER\n"
+            + ";TYPE:SUPPORT-INTERFACE\n;TYPE:SUPPORT\n;TYPE:SKIN\n;TYPE:FILL\n;TYPE:WALL-INNER\n;TYPE:WALL-OUTER\n"
+            + ";MESH:NONMESH\n;MESH:\n;TIME_ELAPSED:\n;LAYER:\nG92 E0\nM106 S\nM205 X\nM204 S")
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private BinaryGcode() {
+    }
+
+    /**
+     * A block as stored, copied without decoding its payload
+     */
+    public record Block(int type, int flags, long rawLength, byte[] payload, int crc) {
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(type);
+            out.write(flags);
+            writeVarLong(out, rawLength);
+            writeVarLong(out, payload.length);
+            out.write(payload);
+            writeInt(out, crc);
+        }
+    }
+
+    public static void writeHeader(OutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+    }
+
+    public static void readHeader(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a binary G-code file");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary G-code version: " + version);
+        }
+    }
+
+    /**
+     * Next block, its checksum verified, or null at the end of the file
+     */
+    public static Block readBlock(DataInputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return null;
+        }
+        int flags = in.readUnsignedByte();
+        long rawLength = readVarLong(in);
+        byte[] payload = new byte[(int) readVarLong(in)];
+        in.readFully(payload);
+        int crc = in.readInt();
+        if (crc != crc(payload, payload.length)) {
+            throw new IOException("Corrupted binary G-code block");
+        }
+        return new Block(type, flags, rawLength, payload, crc);
+    }
+
+    static int crc(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return (int) crc.getValue();
+    }
+
+    static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated binary G-code");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed binary G-code");
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,196 @@
+package it.aredegalli.printer.service.slicing.gcode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decodes {@link BinaryGcode} back to text G-code, one block at a time; the reference for driver implementations.
+ * Every line comes back terminated by a newline, moves with their words in X Y Z E F order and each number
+ * with the fewest decimals, so the text equals the source move by move rather than byte by byte.
+ */
+public class BinaryGcodeReader extends InputStream {
+
+    private static final long[] POW10 = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L};
+
+    private final DataInputStream in;
+    private final Inflater inflater = new Inflater(true);
+    private final Map<String, String> metadata = new LinkedHashMap<>();
+
+    private byte[] text = new byte[0];
+    private int textLength = 0;
+    private int textPosition = 0;
+    private boolean finished = false;
+
+    /**
+     * Read the file header and the metadata blocks at the start of the file
+     */
+    public BinaryGcodeReader(InputStream source) throws IOException {
+        this.in = new DataInputStream(source);
+        BinaryGcode.readHeader(in);
+        nextBlock();
+    }
+
+    /**
+     * Metadata found so far; complete once the first G-code line is read, as the writer puts it first
+     */
+    public Map<String, String> getMetadata() {
+        return Collections.unmodifiableMap(metadata);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (textPosition == textLength) {
+            if (finished) {
+                return -1;
+            }
+            nextBlock();
+        }
+        int count = Math.min(len, textLength - textPosition);
+        System.arraycopy(text, textPosition, b, off, count);
+        textPosition += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    /**
+     * Decode the next block: metadata is recorded, G-code becomes the text to serve; unknown types are skipped
+     */
+    private void nextBlock() throws IOException {
+        BinaryGcode.Block block = BinaryGcode.readBlock(in);
+        if (block == null) {
+            finished = true;
+            return;
+        }
+
+        byte[] raw = payload(block);
+        if (block.type() == BinaryGcode.METADATA) {
+            for (String line : new String(raw, StandardCharsets.UTF_8).split("\n")) {
+                int separator = line.indexOf('=');
+                if (separator > 0) {
+                    metadata.put(line.substring(0, separator), line.substring(separator + 1));
+                }
+            }
+        } else if (block.type() == BinaryGcode.GCODE) {
+            decode(raw);
+        }
+    }
+
+    private byte[] payload(BinaryGcode.Block block) throws IOException {
+        if ((block.flags() & BinaryGcode.FLAG_DEFLATED) == 0) {
+            return block.payload();
+        }
+
+        byte[] raw = new byte[Math.toIntExact(block.rawLength())];
+        inflater.reset();
+        inflater.setDictionary(BinaryGcode.DICTIONARY);
+        inflater.setInput(block.payload());
+        try {
+            int size = 0;
+            while (size < raw.length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, size, raw.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (size != raw.length) {
+                throw new IOException("Truncated binary G-code block");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Malformed binary G-code block", e);
+        }
+        return raw;
+    }
+
+    private void decode(byte[] raw) throws IOException {
+        ByteArrayInputStream records = new ByteArrayInputStream(raw);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length * 3);
+        long[] previous = new long[BinaryGcode.AXES.length()];
+
+        long lines = BinaryGcode.readVarLong(records);
+        for (long line = 0; line < lines; line++) {
+            int tag = records.read();
+            if (tag == -1) {
+                throw new IOException("Truncated binary G-code block");
+            }
+
+            if (tag == BinaryGcode.TEXT) {
+                int length = Math.toIntExact(BinaryGcode.readVarLong(records));
+                byte[] bytes = records.readNBytes(length);
+                if (bytes.length != length) {
+                    throw new IOException("Truncated binary G-code block");
+                }
+                out.write(bytes);
+            } else if ((tag & ~(BinaryGcode.G1 | 0x1F)) == 0) {
+                out.write('G');
+                out.write((tag & BinaryGcode.G1) != 0 ? '1' : '0');
+                for (int axis = 0; axis < previous.length; axis++) {
+                    if ((tag & (1 << axis)) != 0) {
+                        previous[axis] += BinaryGcode.unzigzag(BinaryGcode.readVarLong(records));
+                        out.write(' ');
+                        out.write(BinaryGcode.AXES.charAt(axis));
+                        writeNumber(out, previous[axis], BinaryGcode.DECIMALS[axis]);
+                    }
+                }
+            } else {
+                throw new IOException("Unknown binary G-code record: " + tag);
+            }
+            out.write('\n');
+        }
+
+        text = out.toByteArray();
+        textLength = text.length;
+        textPosition = 0;
+    }
+
+    /**
+     * Fixed-point value with the fewest decimals, e.g. 10500 with 3 decimals as "10.5"
+     */
+    static void writeNumber(ByteArrayOutputStream out, long value, int decimals) {
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        long scale = POW10[decimals];
+        out.writeBytes(Long.toString(value / scale).getBytes(StandardCharsets.US_ASCII));
+
+        long fraction = value % scale;
+        if (fraction == 0) {
+            return;
+        }
+        int digits = decimals;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        String fractionText = Long.toString(fraction);
+        out.write('.');
+        for (int i = fractionText.length(); i < digits; i++) {
+            out.write('0');
+        }
+        out.writeBytes(fractionText.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,241 @@
+package it.aredegalli.printer.service.slicing.gcode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes text G-code written to it as {@link BinaryGcode}, one block at a time, into the target stream.
+ * Lines may be split across writes anywhere; {@link #finish()} encodes what is pending without closing the target.
+ */
+public class BinaryGcodeWriter extends OutputStream {
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final long MAX_FIXED = 1L << 40;
+
+    private final OutputStream target;
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+
+    private final ByteArrayOutputStream records = new ByteArrayOutputStream(BLOCK_SIZE + 1024);
+    private int blockLines = 0;
+    private final long[] previous = new long[BinaryGcode.AXES.length()];
+    private final long[] values = new long[BinaryGcode.AXES.length()];
+
+    private byte[] line = new byte[256];
+    private int lineLength = 0;
+    private byte[] compressed = new byte[BLOCK_SIZE / 4];
+
+    /**
+     * Write the file header and, when given, a metadata block
+     */
+    public BinaryGcodeWriter(OutputStream target, Map<String, String> metadata) throws IOException {
+        this.target = target;
+        BinaryGcode.writeHeader(target);
+
+        if (metadata != null && !metadata.isEmpty()) {
+            StringBuilder text = new StringBuilder();
+            metadata.forEach((key, value) -> text.append(key).append('=').append(value).append('\n'));
+            byte[] raw = text.toString().getBytes(StandardCharsets.UTF_8);
+            writeBlock(BinaryGcode.METADATA, raw, raw.length);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        int start = off;
+        for (int i = off; i < end; i++) {
+            if (b[i] == '\n') {
+                if (lineLength > 0) {
+                    append(b, start, i);
+                    encode(line, 0, lineLength);
+                    lineLength = 0;
+                } else {
+                    encode(b, start, i);
+                }
+                start = i + 1;
+            }
+        }
+        append(b, start, end);
+    }
+
+    /**
+     * Close the current block, so what follows starts a new one, e.g. blocks copied from another file
+     */
+    public void flushBlock() throws IOException {
+        if (blockLines == 0) {
+            return;
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(records.size() + 8);
+        BinaryGcode.writeVarLong(payload, blockLines);
+        records.writeTo(payload);
+        byte[] raw = payload.toByteArray();
+        writeBlock(BinaryGcode.GCODE, raw, raw.length);
+
+        records.reset();
+        blockLines = 0;
+        Arrays.fill(previous, 0);
+    }
+
+    /**
+     * Encode the unterminated last line, if any, and the pending block
+     */
+    public void finish() throws IOException {
+        if (lineLength > 0) {
+            encode(line, 0, lineLength);
+            lineLength = 0;
+        }
+        flushBlock();
+        deflater.end();
+        target.flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+    }
+
+    private void writeBlock(int type, byte[] raw, int length) throws IOException {
+        deflater.reset();
+        deflater.setDictionary(BinaryGcode.DICTIONARY);
+        deflater.setInput(raw, 0, length);
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            size += deflater.deflate(compressed, size, compressed.length - size);
+        }
+
+        boolean deflated = size < length;
+        byte[] payload = deflated ? compressed : raw;
+        int payloadLength = deflated ? size : length;
+
+        target.write(type);
+        target.write(deflated ? BinaryGcode.FLAG_DEFLATED : 0);
+        BinaryGcode.writeVarLong(target, length);
+        BinaryGcode.writeVarLong(target, payloadLength);
+        target.write(payload, 0, payloadLength);
+        BinaryGcode.writeInt(target, BinaryGcode.crc(payload, payloadLength));
+    }
+
+    private void append(byte[] b, int from, int to) {
+        int length = to - from;
+        if (length <= 0) {
+            return;
+        }
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(b, from, line, lineLength, length);
+        lineLength += length;
+    }
+
+    private void encode(byte[] b, int from, int to) throws IOException {
+        int mask = move(b, from, to);
+        if (mask > 0) {
+            records.write((b[from + 1] == '1' ? BinaryGcode.G1 : 0) | mask);
+            for (int axis = 0; axis < values.length; axis++) {
+                if ((mask & (1 << axis)) != 0) {
+                    BinaryGcode.writeVarLong(records, BinaryGcode.zigzag(values[axis] - previous[axis]));
+                    previous[axis] = values[axis];
+                }
+            }
+        } else {
+            records.write(BinaryGcode.TEXT);
+            BinaryGcode.writeVarLong(records, to - from);
+            records.write(b, from, to - from);
+        }
+
+        blockLines++;
+        if (records.size() >= BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Axis mask of a plain "G0/G1 X.. Y.. Z.. E.. F.." line, its values parsed into {@link #values};
+     * 0 for anything else, e.g. comments, other words or numbers with more decimals than kept, sent as text
+     */
+    private int move(byte[] b, int from, int to) {
+        if (to - from < 5 || b[from] != 'G' || (b[from + 1] != '0' && b[from + 1] != '1') || b[from + 2] != ' ') {
+            return 0;
+        }
+
+        int mask = 0;
+        int i = from + 3;
+        while (true) {
+            if (i >= to) {
+                return 0;
+            }
+            int axis = BinaryGcode.AXES.indexOf(b[i]);
+            if (axis < 0 || (mask & (1 << axis)) != 0) {
+                return 0;
+            }
+            i = number(b, i + 1, to, axis);
+            if (i < 0) {
+                return 0;
+            }
+            mask |= 1 << axis;
+            if (i == to) {
+                return mask;
+            }
+            if (b[i] != ' ') {
+                return 0;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Parse a decimal into {@code values[axis]}; index after it, or -1 if it cannot be kept exactly
+     */
+    private int number(byte[] b, int from, int to, int axis) {
+        int i = from;
+        boolean negative = i < to && b[i] == '-';
+        if (negative) {
+            i++;
+        }
+
+        long value = 0;
+        int decimals = -1;
+        boolean digits = false;
+        for (; i < to; i++) {
+            byte c = b[i];
+            if (c >= '0' && c <= '9') {
+                if (decimals >= 0 && ++decimals > BinaryGcode.DECIMALS[axis]) {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+                if (value > MAX_FIXED) {
+                    return -1;
+                }
+                digits = true;
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                break;
+            }
+        }
+        if (!digits) {
+            return -1;
+        }
+
+        for (int d = Math.max(decimals, 0); d < BinaryGcode.DECIMALS[axis]; d++) {
+            value *= 10;
+        }
+        values[axis] = negative ? -value : value;
+        return i;
+    }
+}
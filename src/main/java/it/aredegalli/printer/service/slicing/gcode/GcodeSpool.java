@@ -0,0 +1,151 @@
+package it.aredegalli.printer.service.slicing.gcode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * G-code spooled to a local temporary file and inspected in the same single pass that writes it,
+ * so the slicer output never has to be held in memory.
+ */
+public class GcodeSpool implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+
+    private long size = 0;
+    private long newlines = 0;
+    private int previous = '\n';
+    private boolean blank = true;
+    private boolean movement = false;
+    private boolean extrusion = false;
+
+    private GcodeSpool(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Copy the source stream into a new spool file under the given directory; failures to write the
+     * spool file are thrown as {@link SpoolException}, other I/O errors come from reading the source
+     */
+    public static GcodeSpool spool(InputStream source, Path directory) throws IOException {
+        GcodeSpool spool;
+        try {
+            Files.createDirectories(directory);
+            spool = new GcodeSpool(Files.createTempFile(directory, "slice-", ".gcode"));
+        } catch (IOException e) {
+            throw new SpoolException(e);
+        }
+
+        OutputStream out;
+        try {
+            out = Files.newOutputStream(spool.file);
+        } catch (IOException e) {
+            spool.close();
+            throw new SpoolException(e);
+        }
+
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = source.read(buffer)) != -1) {
+                spool.inspect(buffer, read);
+                try {
+                    out.write(buffer, 0, read);
+                } catch (IOException e) {
+                    throw new SpoolException(e);
+                }
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new SpoolException(e);
+            }
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(out);
+            spool.close();
+            throw e;
+        }
+
+        return spool;
+    }
+
+    private void inspect(byte[] buffer, int length) {
+        for (int i = 0; i < length; i++) {
+            byte b = buffer[i];
+
+            if (b == '\n') {
+                newlines++;
+            } else if (blank && b != ' ' && b != '\t' && b != '\r') {
+                blank = false;
+            }
+
+            if (previous == 'G' && (b == '0' || b == '1')) {
+                movement = true;
+            }
+            if (b == 'E') {
+                extrusion = true;
+            }
+
+            previous = b;
+        }
+        size += length;
+    }
+
+    public InputStream openStream() throws IOException {
+        return Files.newInputStream(file);
+    }
+
+    public Path getPath() {
+        return file;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Number of lines, counted like {@link String#lines()}: a trailing unterminated line counts too
+     */
+    public long getLines() {
+        return size > 0 && previous != '\n' ? newlines + 1 : newlines;
+    }
+
+    public boolean isBlank() {
+        return blank;
+    }
+
+    public boolean hasMovement() {
+        return movement;
+    }
+
+    public boolean hasExtrusion() {
+        return extrusion;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        try {
+            out.close();
+        } catch (IOException ignored) {
+            // Already failing, the spool file is deleted next
+        }
+    }
+
+    /**
+     * The spool file could not be written locally, as opposed to the source failing while being read
+     */
+    public static class SpoolException extends IOException {
+        public SpoolException(IOException cause) {
+            super("Could not write G-code spool: " + cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package it.aredegalli.printer.service.slicing.index;
+
+import it.aredegalli.printer.model.resource.FileResource;
+import it.aredegalli.printer.service.slicing.analysis.GcodeIndex;
+
+import java.util.Optional;
+import java.util.UUID;
+
+public interface GcodeIndexService {
+
+    /**
+     * Store the index next to its G-code file
+     */
+    void store(FileResource gcodeFile, GcodeIndex index);
+
+    /**
+     * Index of a G-code file, built and stored on first use for files sliced before indexing existed
+     */
+    Optional<GcodeIndex> find(FileResource gcodeFile);
+
+    /**
+     * Progress of a slicing result at a 0-based G-code line, or at the start of a layer when the line is unknown.
+     * Never waits for the index: it is empty while the index is still being loaded or built.
+     */
+    Optional<GcodeProgress> estimate(UUID slicingResultId, Long line, Integer layer);
+}
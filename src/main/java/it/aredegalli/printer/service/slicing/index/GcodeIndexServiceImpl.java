@@ -0,0 +1,267 @@
+package it.aredegalli.printer.service.slicing.index;
+
+import it.aredegalli.printer.model.resource.FileResource;
+import it.aredegalli.printer.model.slicing.metric.SlicingMetric;
+import it.aredegalli.printer.repository.slicing.result.SlicingResultRepository;
+import it.aredegalli.printer.service.log.LogService;
+import it.aredegalli.printer.service.slicing.analysis.GcodeAnalyzer;
+import it.aredegalli.printer.service.slicing.analysis.GcodeIndex;
+import it.aredegalli.printer.service.slicing.metrics.SlicingMetricsService;
+import it.aredegalli.printer.service.storage.StorageService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Indexes are loaded, or built from the G-code when missing, on a background executor. Telemetry never waits for
+ * them: it gets no estimate until the index is ready, and a file whose index failed is not retried for a while.
+ */
+@Service
+@RequiredArgsConstructor
+public class GcodeIndexServiceImpl implements GcodeIndexService {
+
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String INDEX_CONTENT_TYPE = "application/octet-stream";
+    private static final int CACHE_SIZE = 64;
+
+    private final StorageService storageService;
+    private final SlicingResultRepository slicingResultRepository;
+    private final SlicingMetricsService metricsService;
+    private final GcodeAnalyzer gcodeAnalyzer;
+    private final LogService logService;
+
+    @Qualifier("gcodeIndexExecutor")
+    private final ThreadPoolTaskExecutor indexExecutor;
+
+    @Value("${slicing.analysis.index-failure-ttl-minutes:10}")
+    private long failureTtlMinutes;
+
+    /**
+     * Indexes of the files being printed, by file id; telemetry looks them up on every message
+     */
+    private final Map<UUID, GcodeIndex> cache = lru();
+
+    /**
+     * G-code file and total weight of the slicing results being printed, so telemetry does not query them per message
+     */
+    private final Map<UUID, ProgressSource> sources = lru();
+
+    /**
+     * Loads and builds in progress, by file id
+     */
+    private final Map<UUID, CompletableFuture<GcodeIndex>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * Files whose index could not be loaded or built, with the time they may be tried again
+     */
+    private final Map<UUID, Instant> failures = new ConcurrentHashMap<>();
+
+    @Override
+    public void store(FileResource gcodeFile, GcodeIndex index) {
+        try {
+            storageService.put(gcodeFile.getBucketName(), indexKey(gcodeFile), index.toBytes(), INDEX_CONTENT_TYPE);
+            cache.put(gcodeFile.getId(), index);
+            failures.remove(gcodeFile.getId());
+            logService.info("GcodeIndexServiceImpl",
+                    String.format("Stored G-code index for %s: %d checkpoints", gcodeFile.getId(), index.size()));
+        } catch (Exception e) {
+            logService.error("GcodeIndexServiceImpl", "Failed to store G-code index for " + gcodeFile.getId() + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Optional<GcodeIndex> find(FileResource gcodeFile) {
+        GcodeIndex cached = cache.get(gcodeFile.getId());
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        if (recentlyFailed(gcodeFile.getId())) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(loadAsync(gcodeFile).get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<GcodeProgress> estimate(UUID slicingResultId, Long line, Integer layer) {
+        if (line == null && layer == null) {
+            return Optional.empty();
+        }
+
+        ProgressSource source = progressSource(slicingResultId);
+        if (source == null) {
+            return Optional.empty();
+        }
+
+        FileResource gcodeFile = source.gcodeFile();
+        GcodeIndex index = cache.get(gcodeFile.getId());
+        if (index == null) {
+            if (!recentlyFailed(gcodeFile.getId())) {
+                loadAsync(gcodeFile);
+            }
+            return Optional.empty();
+        }
+
+        GcodeIndex.Position position = line != null ? index.atLine(line) : index.atLayer(layer);
+        return Optional.ofNullable(position).map(p -> toProgress(index, p, source.materialWeightG()));
+    }
+
+    private ProgressSource progressSource(UUID slicingResultId) {
+        ProgressSource source = sources.get(slicingResultId);
+        if (source != null) {
+            return source;
+        }
+
+        FileResource gcodeFile = slicingResultRepository.findGeneratedFile(slicingResultId).orElse(null);
+        if (gcodeFile == null) {
+            return null;
+        }
+        SlicingMetric metrics = metricsService.getMetricsBySlicingResultId(slicingResultId);
+        source = new ProgressSource(gcodeFile, metrics != null ? metrics.getMaterialWeightG() : null);
+        sources.put(slicingResultId, source);
+        return source;
+    }
+
+    private GcodeProgress toProgress(GcodeIndex index, GcodeIndex.Position position, BigDecimal materialWeightG) {
+        BigDecimal percentage = null;
+        Integer remainingMinutes = null;
+
+        if (index.isTimed() && index.getTotalSeconds() > 0) {
+            percentage = percent(position.elapsedSeconds(), index.getTotalSeconds());
+            remainingMinutes = (int) Math.ceil(Math.max(0, index.getTotalSeconds() - position.elapsedSeconds()) / 60.0);
+        } else if (index.getTotalLines() > 0) {
+            percentage = percent(position.line(), index.getTotalLines());
+        }
+
+        // Weight follows the stored metrics, split along the file by extruded filament
+        BigDecimal materialUsedG = null;
+        if (materialWeightG != null && index.getTotalExtrudedMm() > 0) {
+            materialUsedG = materialWeightG
+                    .multiply(BigDecimal.valueOf(position.extrudedMm() / index.getTotalExtrudedMm()))
+                    .setScale(3, RoundingMode.HALF_UP);
+        }
+
+        return new GcodeProgress(percentage, remainingMinutes, materialUsedG);
+    }
+
+    private static BigDecimal percent(double value, double total) {
+        return BigDecimal.valueOf(Math.min(100.0, Math.max(0.0, value * 100.0 / total)))
+                .setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Load or build the index in the background, joining a load already in progress for the same file
+     */
+    private CompletableFuture<GcodeIndex> loadAsync(FileResource gcodeFile) {
+        CompletableFuture<GcodeIndex> pending = new CompletableFuture<>();
+        CompletableFuture<GcodeIndex> existing = loading.putIfAbsent(gcodeFile.getId(), pending);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            indexExecutor.execute(() -> loadOrBuild(gcodeFile, pending));
+        } catch (TaskRejectedException e) {
+            loading.remove(gcodeFile.getId(), pending);
+            pending.completeExceptionally(e);
+        }
+        return pending;
+    }
+
+    private void loadOrBuild(FileResource gcodeFile, CompletableFuture<GcodeIndex> pending) {
+        try {
+            GcodeIndex index = storageService.exists(gcodeFile.getBucketName(), indexKey(gcodeFile))
+                    ? load(gcodeFile)
+                    : null;
+            if (index == null) {
+                index = build(gcodeFile);
+            }
+            cache.put(gcodeFile.getId(), index);
+            pending.complete(index);
+        } catch (Exception e) {
+            failures.put(gcodeFile.getId(), Instant.now().plus(Duration.ofMinutes(failureTtlMinutes)));
+            logService.error("GcodeIndexServiceImpl", "G-code index unavailable for " + gcodeFile.getId() + ": " + e.getMessage());
+            pending.completeExceptionally(e);
+        } finally {
+            loading.remove(gcodeFile.getId(), pending);
+        }
+    }
+
+    private boolean recentlyFailed(UUID fileId) {
+        Instant retryAt = failures.get(fileId);
+        if (retryAt == null) {
+            return false;
+        }
+        if (Instant.now().isBefore(retryAt)) {
+            return true;
+        }
+        failures.remove(fileId, retryAt);
+        return false;
+    }
+
+    /**
+     * Stored index, or null when it is unreadable, e.g. written in an older format, and must be rebuilt
+     */
+    private GcodeIndex load(FileResource gcodeFile) {
+        try (InputStream in = storageService.download(gcodeFile.getBucketName(), indexKey(gcodeFile))) {
+            return GcodeIndex.read(in);
+        } catch (IOException e) {
+            logService.warn("GcodeIndexServiceImpl", "Discarding stored G-code index for " + gcodeFile.getId() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private GcodeIndex build(FileResource gcodeFile) throws IOException {
+        logService.info("GcodeIndexServiceImpl", "Building missing G-code index for " + gcodeFile.getId());
+
+        GcodeIndex index;
+        try (InputStream in = storageService.download(gcodeFile.getBucketName(), gcodeFile.getObjectKey(),
+                gcodeFile.getContentEncoding(), 0)) {
+            index = gcodeAnalyzer.analyzeGcode(in).getIndex();
+        }
+
+        store(gcodeFile, index);
+        return index;
+    }
+
+    private static String indexKey(FileResource gcodeFile) {
+        return gcodeFile.getObjectKey() + INDEX_SUFFIX;
+    }
+
+    private static <V> Map<UUID, V> lru() {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, V> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        });
+    }
+
+    private record ProgressSource(FileResource gcodeFile, BigDecimal materialWeightG) {
+    }
+}
@@ -0,0 +1,9 @@
+package it.aredegalli.printer.service.slicing.index;
+
+import java.math.BigDecimal;
+
+/**
+ * Progress of a print at a point of its G-code; fields are null when the file does not allow an estimate
+ */
+public record GcodeProgress(BigDecimal percentage, Integer remainingMinutes, BigDecimal materialUsedG) {
+}
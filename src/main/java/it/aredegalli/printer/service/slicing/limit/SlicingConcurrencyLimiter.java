@@ -0,0 +1,187 @@
+package it.aredegalli.printer.service.slicing.limit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.aredegalli.printer.service.log.LogService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AIMD limit on concurrently running slicing jobs, driven by observed engine latency and overload errors.
+ * <p>
+ * Latency is normalised per MB of STL so that large models do not read as congestion. When the short-term
+ * average drifts above the long-term baseline by more than the tolerance, or the engine times out or fails,
+ * the limit is cut multiplicatively; otherwise it grows by one for every {@code limit} successful calls
+ * made while the limit was fully used. The limit never grows past the capacity of the engines it feeds,
+ * since jobs beyond it would only wait for a free endpoint.
+ */
+@Component
+@RequiredArgsConstructor
+public class SlicingConcurrencyLimiter {
+
+    private static final int HISTORY_SIZE = 100;
+    private static final double SHORT_SMOOTHING = 0.3;
+    private static final double LONG_SMOOTHING = 0.02;
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    private final MeterRegistry meterRegistry;
+    private final LogService logService;
+
+    @Value("${slicing.queue.processing.adaptive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${slicing.queue.processing.max-concurrent:2}")
+    private int initialLimit;
+
+    @Value("${slicing.queue.processing.adaptive.min-limit:1}")
+    private int minLimit;
+
+    @Value("${slicing.queue.processing.adaptive.max-limit:8}")
+    private int maxLimit;
+
+    @Value("${slicing.queue.processing.adaptive.latency-tolerance:2.0}")
+    private double latencyTolerance;
+
+    @Value("${slicing.queue.processing.adaptive.decrease-factor:0.75}")
+    private double decreaseFactor;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final Deque<LimitChange> history = new ArrayDeque<>();
+
+    private volatile int limit;
+    private int capacity = Integer.MAX_VALUE;
+    private double shortLatency = -1;
+    private double longLatency = -1;
+    private double increaseCredit = 0;
+
+    private Counter increases;
+    private Counter decreases;
+
+    @PostConstruct
+    public void init() {
+        limit = enabled ? Math.max(minLimit, Math.min(initialLimit, maxLimit)) : initialLimit;
+
+        Gauge.builder("slicing.concurrency.limit", this, SlicingConcurrencyLimiter::getLimit)
+                .description("Current adaptive limit of concurrently running slicing jobs")
+                .register(meterRegistry);
+        Gauge.builder("slicing.concurrency.in_flight", inFlight, AtomicInteger::get)
+                .description("Slicing jobs counted against the adaptive limit")
+                .register(meterRegistry);
+        increases = Counter.builder("slicing.concurrency.limit.changes").tag("direction", "increase")
+                .register(meterRegistry);
+        decreases = Counter.builder("slicing.concurrency.limit.changes").tag("direction", "decrease")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Cap the limit at the number of calls the engines can run at once
+     */
+    public synchronized void capAt(int engineCapacity) {
+        capacity = Math.max(minLimit, engineCapacity);
+        if (limit > capacity) {
+            change(capacity, "engine capacity " + engineCapacity);
+        }
+    }
+
+    /**
+     * Slots the queue processor may still fill
+     */
+    public int available() {
+        return limit - inFlight.get();
+    }
+
+    public void jobStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    public void jobFinished() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Successful engine call that took {@code latency}, including the wait for a free endpoint,
+     * for {@code inputBytes} of model
+     */
+    public synchronized void onSuccess(Duration latency, long inputBytes) {
+        if (!enabled) {
+            return;
+        }
+
+        double sample = latency.toMillis() / Math.max(inputBytes / BYTES_PER_MB, 1.0);
+        shortLatency = shortLatency < 0 ? sample : shortLatency + SHORT_SMOOTHING * (sample - shortLatency);
+        longLatency = longLatency < 0 ? sample : longLatency + LONG_SMOOTHING * (sample - longLatency);
+
+        if (shortLatency > longLatency * latencyTolerance) {
+            decrease(String.format("latency %.0f ms/MB over baseline %.0f ms/MB", shortLatency, longLatency));
+            return;
+        }
+
+        if (inFlight.get() >= limit) {
+            increaseCredit += 1.0 / limit;
+            if (increaseCredit >= 1.0) {
+                increaseCredit = 0;
+                change(Math.min(Math.min(maxLimit, capacity), limit + 1), "saturated with healthy latency");
+            }
+        }
+    }
+
+    /**
+     * Engine call that timed out or was refused, a sign of overload
+     */
+    public synchronized void onOverload(String reason) {
+        if (enabled) {
+            decrease(reason);
+        }
+    }
+
+    private void decrease(String reason) {
+        increaseCredit = 0;
+        change(Math.max(minLimit, (int) Math.floor(limit * decreaseFactor)), reason);
+        // Re-learn the short-term latency at the new level
+        shortLatency = longLatency;
+    }
+
+    private void change(int newLimit, String reason) {
+        if (newLimit == limit) {
+            return;
+        }
+
+        (newLimit > limit ? increases : decreases).increment();
+        logService.info("SlicingConcurrencyLimiter", String.format("Slicing limit %d -> %d: %s", limit, newLimit, reason));
+
+        history.addLast(new LimitChange(Instant.now(), limit, newLimit, reason));
+        if (history.size() > HISTORY_SIZE) {
+            history.removeFirst();
+        }
+        limit = newLimit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getMaxLimit() {
+        return enabled ? Math.max(initialLimit, maxLimit) : initialLimit;
+    }
+
+    public synchronized List<LimitChange> getHistory() {
+        return List.copyOf(history);
+    }
+
+    public record LimitChange(Instant at, int from, int to, String reason) {
+    }
+}
@@ -1,15 +1,28 @@
 package it.aredegalli.printer.service.slicing.metrics;
 
+import it.aredegalli.printer.dto.slicing.SlicingMaterialQuoteDto;
 import it.aredegalli.printer.model.slicing.metric.SlicingMetric;
 import it.aredegalli.printer.model.slicing.result.SlicingResult;
+import it.aredegalli.printer.service.slicing.analysis.GcodeAnalyzer;
 
+import java.util.List;
 import java.util.UUID;
 
 public interface SlicingMetricsService {
 
     SlicingMetric calculateMetrics(SlicingResult result);
 
+    /**
+     * Persist metrics from an analysis already done while the G-code was stored
+     */
+    SlicingMetric recordMetrics(SlicingResult result, GcodeAnalyzer.GcodeMetrics analysis, int sliceTimeSeconds);
+
     SlicingMetric getMetricsBySlicingResultId(UUID slicingResultId);
 
     void saveMetrics(SlicingMetric metrics);
+
+    /**
+     * Weight and cost of a slicing result in every material of the catalog, from its stored filament length
+     */
+    List<SlicingMaterialQuoteDto> quoteMaterials(UUID slicingResultId);
 }
\ No newline at end of file
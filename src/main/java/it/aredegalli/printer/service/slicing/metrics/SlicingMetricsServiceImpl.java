@@ -1,17 +1,30 @@
 package it.aredegalli.printer.service.slicing.metrics;
 
+import it.aredegalli.common.exception.NotFoundException;
+import it.aredegalli.printer.dto.slicing.SlicingMaterialQuoteDto;
+import it.aredegalli.printer.model.material.Material;
 import it.aredegalli.printer.model.slicing.metric.SlicingMetric;
 import it.aredegalli.printer.model.slicing.result.SlicingResult;
 import it.aredegalli.printer.repository.slicing.metric.SlicingMetricsRepository;
 import it.aredegalli.printer.service.log.LogService;
 import it.aredegalli.printer.service.resource.FileResourceService;
+import it.aredegalli.printer.service.slicing.analysis.ExtrusionFeature;
+import it.aredegalli.printer.service.slicing.analysis.FilamentUsage;
 import it.aredegalli.printer.service.slicing.analysis.GcodeAnalyzer;
+import it.aredegalli.printer.service.slicing.gcode.GcodeSpool;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Service
@@ -25,6 +38,12 @@ public class SlicingMetricsServiceImpl implements SlicingMetricsService {
     private final GcodeAnalyzer gcodeAnalyzer;
     private final FileResourceService fileResourceService;
 
+    @Value("${slicing.spool.directory:${java.io.tmpdir}}")
+    private String spoolDirectory;
+
+    @Value("${slicing.analysis.default-material.diameter-mm:1.75}")
+    private BigDecimal defaultDiameterMm;
+
     @Override
     public SlicingMetric calculateMetrics(SlicingResult result) {
         logService.info("SlicingMetricsServiceImpl", "Calculating real metrics for result: " + result.getId());
@@ -42,6 +61,13 @@ public class SlicingMetricsServiceImpl implements SlicingMetricsService {
         }
     }
 
+    @Override
+    public SlicingMetric recordMetrics(SlicingResult result, GcodeAnalyzer.GcodeMetrics analysis, int sliceTimeSeconds) {
+        SlicingMetric savedMetrics = metricsRepository.save(toMetric(result, analysis, sliceTimeSeconds));
+        logAnalysis(analysis);
+        return savedMetrics;
+    }
+
     @Override
     public SlicingMetric getMetricsBySlicingResultId(UUID slicingResultId) {
         return metricsRepository.findBySlicingResultId(slicingResultId).orElse(null);
@@ -52,39 +78,123 @@ public class SlicingMetricsServiceImpl implements SlicingMetricsService {
         metricsRepository.save(metrics);
     }
 
+    @Override
+    public List<SlicingMaterialQuoteDto> quoteMaterials(UUID slicingResultId) {
+        List<Object[]> rows = metricsRepository.findWithMaterials(slicingResultId);
+        if (rows.isEmpty() && getMetricsBySlicingResultId(slicingResultId) == null) {
+            throw new NotFoundException("Slicing metrics not found");
+        }
+
+        List<SlicingMaterialQuoteDto> quotes = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            SlicingMetric metric = (SlicingMetric) row[0];
+            Material material = (Material) row[1];
+
+            BigDecimal diameter = positiveDecimal(material.getDiameterMm());
+            BigDecimal density = positiveDecimal(material.getDensityGCm3());
+            BigDecimal costPerKg = positiveDecimal(material.getCostPerKg());
+
+            BigDecimal volume = materialVolume(metric, diameter);
+            BigDecimal weight = volume != null && density != null ? FilamentUsage.weightG(volume, density) : null;
+            BigDecimal cost = weight != null && costPerKg != null ? FilamentUsage.cost(weight, costPerKg) : null;
+
+            quotes.add(SlicingMaterialQuoteDto.builder()
+                    .slicingResultId(slicingResultId)
+                    .materialId(material.getId())
+                    .materialName(material.getName())
+                    .typeName((String) row[2])
+                    .brandName((String) row[3])
+                    .diameterMm(diameter)
+                    .filamentLengthMm(metric.getFilamentLengthMm())
+                    .volumeMm3(volume)
+                    .weightG(weight)
+                    .cost(cost)
+                    .build());
+        }
+        return quotes;
+    }
+
+    /**
+     * Volume of the stored filament length at the given diameter; results stored before the length was kept
+     * only have the volume computed at slicing time
+     */
+    private BigDecimal materialVolume(SlicingMetric metric, BigDecimal diameterMm) {
+        if (metric.getFilamentLengthMm() == null) {
+            return metric.getMaterialVolumeMm3();
+        }
+        return FilamentUsage.volumeMm3(metric.getFilamentLengthMm(), diameterMm != null ? diameterMm : defaultDiameterMm);
+    }
+
+    /**
+     * Catalog values are free text: "1.24", "1,24" and " 1.24 " are read alike, anything else is unknown
+     */
+    private static BigDecimal positiveDecimal(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            BigDecimal decimal = new BigDecimal(value.trim().replace(',', '.'));
+            return decimal.signum() > 0 ? decimal : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     // ======================================
     // NEW REAL METRICS CALCULATION
     // ======================================
 
     private SlicingMetric calculateRealMetrics(SlicingResult result) throws Exception {
-        // Download and analyze the actual G-code
+        // Download and analyze the actual G-code; only needed for results stored without inline metrics
         try (InputStream gcodeStream = fileResourceService.download(result.getGeneratedFile().getId())) {
-            GcodeAnalyzer.GcodeMetrics analysis = gcodeAnalyzer.analyzeGcode(gcodeStream);
+            GcodeAnalyzer.GcodeMetrics analysis = gcodeAnalyzer.isParallelWorthwhile(result.getGeneratedFile().getFileSize())
+                    ? analyzeSpooled(gcodeStream)
+                    : gcodeAnalyzer.analyzeGcode(gcodeStream);
+            return recordMetrics(result, analysis, calculateSliceTime(result));
+        }
+    }
 
-            // Create SlicingMetric from real analysis
-            SlicingMetric metrics = SlicingMetric.builder()
-                    .slicingResult(result)
-                    .sliceTimeSeconds(calculateSliceTime(result))
-                    .estimatedPrintTimeMinutes(analysis.getEstimatedPrintTimeMinutes())
-                    .materialVolumeMm3(analysis.getMaterialVolumeMm3())
-                    .materialWeightG(analysis.getMaterialWeightG())
-                    .estimatedCost(analysis.getEstimatedCost())
-                    .layerCount(analysis.getLayerCount())
-                    .supportVolumeMm3(analysis.getSupportVolumeMm3())
-                    .build();
+    /**
+     * Large files are spooled to local disk first so they can be memory-mapped and analyzed in parallel
+     */
+    private GcodeAnalyzer.GcodeMetrics analyzeSpooled(InputStream gcodeStream) throws IOException {
+        try (GcodeSpool spool = GcodeSpool.spool(gcodeStream, Path.of(spoolDirectory))) {
+            return gcodeAnalyzer.analyzeFile(spool.getPath());
+        }
+    }
 
-            // Save to database
-            SlicingMetric savedMetrics = metricsRepository.save(metrics);
+    private SlicingMetric toMetric(SlicingResult result, GcodeAnalyzer.GcodeMetrics analysis, int sliceTimeSeconds) {
+        return SlicingMetric.builder()
+                .slicingResult(result)
+                .sliceTimeSeconds(sliceTimeSeconds)
+                .estimatedPrintTimeMinutes(analysis.getEstimatedPrintTimeMinutes())
+                .materialVolumeMm3(analysis.getMaterialVolumeMm3())
+                .materialWeightG(analysis.getMaterialWeightG())
+                .estimatedCost(analysis.getEstimatedCost())
+                .layerCount(analysis.getLayerCount())
+                .supportVolumeMm3(analysis.getSupportVolumeMm3())
+                .filamentLengthMm(millimetres(analysis.getTotalExtrusion()))
+                .featureExtrusionMm(featureExtrusion(analysis.getFeatureExtrusion()))
+                .build();
+    }
 
-            logService.info("SlicingMetricsServiceImpl",
-                    String.format("Real metrics calculated - Layers: %d, Print time: %d min, Weight: %.2f g, Cost: €%.2f",
-                            analysis.getLayerCount(),
-                            analysis.getEstimatedPrintTimeMinutes(),
-                            analysis.getMaterialWeightG().doubleValue(),
-                            analysis.getEstimatedCost().doubleValue()));
+    private static Map<String, BigDecimal> featureExtrusion(Map<ExtrusionFeature, Double> extrusion) {
+        Map<String, BigDecimal> millimetres = new LinkedHashMap<>();
+        extrusion.forEach((feature, length) -> millimetres.put(feature.name(), millimetres(length)));
+        return millimetres;
+    }
 
-            return savedMetrics;
-        }
+    private static BigDecimal millimetres(double length) {
+        return BigDecimal.valueOf(length).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private void logAnalysis(GcodeAnalyzer.GcodeMetrics analysis) {
+        logService.info("SlicingMetricsServiceImpl",
+                String.format("Real metrics calculated - Layers: %d, Print time: %d min, Weight: %.2f g, Cost: €%.2f",
+                        analysis.getLayerCount(),
+                        analysis.getEstimatedPrintTimeMinutes(),
+                        analysis.getMaterialWeightG().doubleValue(),
+                        analysis.getEstimatedCost().doubleValue()));
     }
 
     // ======================================
@@ -208,32 +318,30 @@ public class SlicingMetricsServiceImpl implements SlicingMetricsService {
      */
     public SlicingMetric calculateMetricsWithMaterial(SlicingResult result, MaterialProperties material) {
         try {
-            // Try real analysis first
-            try (InputStream gcodeStream = fileResourceService.download(result.getGeneratedFile().getId())) {
-                GcodeAnalyzer.GcodeMetrics analysis = gcodeAnalyzer.analyzeGcode(gcodeStream);
-
-                // Recalculate weight and cost based on actual material properties
-                BigDecimal volume = analysis.getMaterialVolumeMm3();
-                BigDecimal weightG = volume
-                        .divide(BigDecimal.valueOf(1000), 4, RoundingMode.HALF_UP)
-                        .multiply(material.getDensityGPerCm3());
-
-                BigDecimal cost = weightG
-                        .divide(BigDecimal.valueOf(1000), 4, RoundingMode.HALF_UP)
-                        .multiply(material.getCostPerKg());
-
-                return SlicingMetric.builder()
-                        .slicingResult(result)
-                        .sliceTimeSeconds(calculateSliceTime(result))
-                        .estimatedPrintTimeMinutes(analysis.getEstimatedPrintTimeMinutes())
-                        .materialVolumeMm3(volume)
-                        .materialWeightG(weightG.setScale(2, RoundingMode.HALF_UP))
-                        .estimatedCost(cost.setScale(2, RoundingMode.HALF_UP))
-                        .layerCount(analysis.getLayerCount())
-                        .supportVolumeMm3(analysis.getSupportVolumeMm3())
-                        .build();
+            // Reuse the stored analysis; the G-code is downloaded only for results that have none
+            SlicingMetric stored = getMetricsBySlicingResultId(result.getId());
+            if (stored == null) {
+                stored = calculateRealMetrics(result);
             }
 
+            // Recalculate volume, weight and cost from the filament length for the actual material
+            BigDecimal volume = materialVolume(stored, material.getDiameterMm());
+            BigDecimal weightG = FilamentUsage.weightG(volume, material.getDensityGPerCm3());
+            BigDecimal cost = FilamentUsage.cost(weightG, material.getCostPerKg());
+
+            return SlicingMetric.builder()
+                    .slicingResult(result)
+                    .sliceTimeSeconds(stored.getSliceTimeSeconds())
+                    .estimatedPrintTimeMinutes(stored.getEstimatedPrintTimeMinutes())
+                    .materialVolumeMm3(volume)
+                    .materialWeightG(weightG)
+                    .estimatedCost(cost)
+                    .layerCount(stored.getLayerCount())
+                    .supportVolumeMm3(stored.getSupportVolumeMm3())
+                    .filamentLengthMm(stored.getFilamentLengthMm())
+                    .featureExtrusionMm(stored.getFeatureExtrusionMm())
+                    .build();
+
         } catch (Exception e) {
             logService.error("SlicingMetricsServiceImpl",
                     "Failed to calculate metrics with material properties using real analysis: " + e.getMessage());
@@ -267,11 +375,17 @@ public class SlicingMetricsServiceImpl implements SlicingMetricsService {
     public static class MaterialProperties {
         private final BigDecimal densityGPerCm3;
         private final BigDecimal costPerKg;
+        private final BigDecimal diameterMm;
         private final String materialType;
 
         public MaterialProperties(double densityGPerCm3, double costPerKg, String materialType) {
+            this(densityGPerCm3, costPerKg, 1.75, materialType);
+        }
+
+        public MaterialProperties(double densityGPerCm3, double costPerKg, double diameterMm, String materialType) {
             this.densityGPerCm3 = BigDecimal.valueOf(densityGPerCm3);
             this.costPerKg = BigDecimal.valueOf(costPerKg);
+            this.diameterMm = BigDecimal.valueOf(diameterMm);
             this.materialType = materialType;
         }
 
@@ -289,6 +403,10 @@ public class SlicingMetricsServiceImpl implements SlicingMetricsService {
             return costPerKg;
         }
 
+        public BigDecimal getDiameterMm() {
+            return diameterMm;
+        }
+
         public String getMaterialType() {
             return materialType;
         }
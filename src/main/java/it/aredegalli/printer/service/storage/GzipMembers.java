@@ -0,0 +1,329 @@
+package it.aredegalli.printer.service.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Member table of a gzip object written as independent members, each compressing a fixed-size slice of the content.
+ * The concatenated members are a regular gzip stream for any client, while the table stored next to the object
+ * lets a reader start decompressing at the member holding a given offset, or pass whole members through as they are.
+ */
+public final class GzipMembers {
+
+    public static final String ENCODING = "gzip";
+    public static final int MEMBER_SIZE = 1024 * 1024;
+
+    private static final byte[] MAGIC = {'G', 'Z', 'I', 'X'};
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int memberSize;
+    private final long size;
+    // Start of each member in the compressed object, followed by the object length
+    private final long[] compressedOffsets;
+
+    private GzipMembers(int memberSize, long size, long[] compressedOffsets) {
+        this.memberSize = memberSize;
+        this.size = size;
+        this.compressedOffsets = compressedOffsets;
+    }
+
+    public int count() {
+        return compressedOffsets.length - 1;
+    }
+
+    /**
+     * Member holding the given uncompressed offset; {@link #count()} at or past the end
+     */
+    public int memberAt(long offset) {
+        return (int) Math.min(offset / memberSize, count());
+    }
+
+    public long uncompressedStart(int member) {
+        return Math.min((long) member * memberSize, size);
+    }
+
+    public long compressedStart(int member) {
+        return compressedOffsets[member];
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getCompressedSize() {
+        return compressedOffsets[compressedOffsets.length - 1];
+    }
+
+    /**
+     * Decompress members in order, starting with the given one, from a stream positioned at its compressed start.
+     * Each member is read as a gzip stream of its own; concatenated members are not left to {@link GZIPInputStream},
+     * which may stop after the first one when the source has no bytes available yet.
+     */
+    public InputStream decompress(InputStream compressed, int firstMember) {
+        return new MemberInputStream(compressed, firstMember);
+    }
+
+    // ======================================
+    // BINARY FORMAT
+    // ======================================
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + compressedOffsets.length * 3);
+        out.writeBytes(MAGIC);
+        out.write(VERSION);
+        writeVarLong(out, memberSize);
+        writeVarLong(out, size);
+        writeVarLong(out, count());
+        for (int i = 1; i < compressedOffsets.length; i++) {
+            writeVarLong(out, compressedOffsets[i] - compressedOffsets[i - 1]);
+        }
+        return out.toByteArray();
+    }
+
+    public static GzipMembers read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a gzip member table");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported gzip member table version: " + version);
+        }
+
+        int memberSize = (int) readVarLong(in);
+        long size = readVarLong(in);
+        int count = (int) readVarLong(in);
+        long[] offsets = new long[count + 1];
+        for (int i = 1; i <= count; i++) {
+            offsets[i] = offsets[i - 1] + readVarLong(in);
+        }
+        return new GzipMembers(memberSize, size, offsets);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated gzip member table");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed gzip member table");
+    }
+
+    /**
+     * Compresses what is written into members of {@code memberSize} uncompressed bytes each.
+     * {@link #finish()} completes the last member without closing the target.
+     */
+    public static final class Writer extends OutputStream {
+
+        private final CountingOutputStream target;
+        private final int memberSize;
+        private long[] offsets = new long[16];
+        private int count = 0;
+        private long size = 0;
+        private MemberOutputStream member;
+        private int memberRemaining = 0;
+
+        public Writer(OutputStream target, int memberSize) {
+            this.target = new CountingOutputStream(target);
+            this.memberSize = memberSize;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (memberRemaining == 0) {
+                    startMember();
+                }
+                int n = Math.min(len, memberRemaining);
+                member.write(b, off, n);
+                memberRemaining -= n;
+                size += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        public GzipMembers finish() throws IOException {
+            endMember();
+            long[] table = Arrays.copyOf(offsets, count + 1);
+            table[count] = target.count;
+            target.flush();
+            return new GzipMembers(memberSize, size, table);
+        }
+
+        private void startMember() throws IOException {
+            endMember();
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = target.count;
+            member = new MemberOutputStream(target);
+            memberRemaining = memberSize;
+        }
+
+        private void endMember() throws IOException {
+            if (member != null) {
+                member.end();
+                member = null;
+                memberRemaining = 0;
+            }
+        }
+    }
+
+    /**
+     * A gzip member written to a stream that stays open once the member is complete
+     */
+    private static final class MemberOutputStream extends GZIPOutputStream {
+
+        private MemberOutputStream(OutputStream out) throws IOException {
+            super(out, BUFFER_SIZE);
+        }
+
+        private void end() throws IOException {
+            finish();
+            def.end();
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count = 0;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private final class MemberInputStream extends InputStream {
+
+        private final InputStream source;
+        private int next;
+        private InputStream member;
+
+        private MemberInputStream(InputStream source, int firstMember) {
+            this.source = source;
+            this.next = firstMember;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (member == null) {
+                    if (next >= count()) {
+                        return -1;
+                    }
+                    member = new GZIPInputStream(new BoundedInputStream(source, compressedOffsets[next + 1] - compressedOffsets[next]), BUFFER_SIZE);
+                    next++;
+                }
+                int read = member.read(b, off, len);
+                if (read != -1) {
+                    return read;
+                }
+                member.close();
+                member = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (member != null) {
+                member.close();
+            }
+            source.close();
+        }
+    }
+
+    /**
+     * The next {@code remaining} bytes of a shared stream, left open on close
+     */
+    private static final class BoundedInputStream extends InputStream {
+
+        private final InputStream source;
+        private long remaining;
+
+        private BoundedInputStream(InputStream source, long remaining) {
+            this.source = source;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = source.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = source.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(source.available(), remaining);
+        }
+    }
+}
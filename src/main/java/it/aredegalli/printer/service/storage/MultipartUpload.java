@@ -0,0 +1,7 @@
+package it.aredegalli.printer.service.storage;
+
+/**
+ * A multipart upload in progress to a staging key, completed into one object once every part is uploaded
+ */
+public record MultipartUpload(String objectKey, String uploadId) {
+}
@@ -0,0 +1,13 @@
+package it.aredegalli.printer.service.storage;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * A signed PUT of one object to a staging key, with the headers the client has to send along
+ *
+ * @param objectKey staging key, moved under the content hash key when the upload is finalized
+ */
+public record PresignedUpload(String objectKey, URI url, Map<String, String> headers, Instant expiresAt) {
+}
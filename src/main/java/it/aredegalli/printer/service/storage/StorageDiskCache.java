@@ -0,0 +1,445 @@
+package it.aredegalli.printer.service.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Node-local, size-capped copy of recently read storage objects, evicting the least recently used.
+ * Objects are keyed by content hash, so an entry never goes stale; keys rewritten in place are invalidated on write.
+ * An object is cached while it is first read through to its end, and later served from disk.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StorageDiskCache {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long MB = 1024L * 1024L;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${storage.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${storage.cache.directory:${java.io.tmpdir}/storage-cache}")
+    private String directory;
+
+    @Value("${storage.cache.max-size-mb:2048}")
+    private long maxSizeMb;
+
+    @Value("${storage.cache.max-object-mb:256}")
+    private long maxObjectMb;
+
+    private Path root;
+    private long maxSize;
+
+    // File name to size, in access order; guarded by this
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+
+    private Counter hits;
+    private Counter misses;
+    private Counter evictions;
+
+    @PostConstruct
+    public void init() throws IOException {
+        hits = Counter.builder("storage.cache.hits")
+                .description("Storage reads served from the local disk cache")
+                .register(meterRegistry);
+        misses = Counter.builder("storage.cache.misses")
+                .description("Storage reads that went to object storage")
+                .register(meterRegistry);
+        evictions = Counter.builder("storage.cache.evictions")
+                .description("Objects evicted from the local disk cache")
+                .register(meterRegistry);
+        Gauge.builder("storage.cache.size", this, StorageDiskCache::getSize)
+                .description("Bytes held by the local disk cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        if (!enabled) {
+            return;
+        }
+
+        root = Path.of(directory);
+        maxSize = maxSizeMb * MB;
+        Files.createDirectories(root);
+        load();
+        log.info("Storage disk cache at {}: {} objects, {} of {} MB", root, entries.size(), size / MB, maxSizeMb);
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * The cached object from the given offset, or null when it is not cached
+     */
+    public InputStream open(String bucket, String objectKey, long fromOffset) {
+        if (!enabled) {
+            return null;
+        }
+
+        String name = fileName(bucket, objectKey);
+        synchronized (this) {
+            if (entries.get(name) == null) {
+                misses.increment();
+                return null;
+            }
+        }
+
+        try {
+            // An entry evicted meanwhile is gone; one evicted while open stays readable until closed
+            FileChannel channel = FileChannel.open(root.resolve(name), StandardOpenOption.READ);
+            hits.increment();
+            return new FileChannelInputStream(channel, Math.max(0, fromOffset));
+        } catch (NoSuchFileException e) {
+            misses.increment();
+            return null;
+        } catch (IOException e) {
+            log.warn("Storage cache entry {} not readable: {}", name, e.getMessage());
+            misses.increment();
+            return null;
+        }
+    }
+
+    /**
+     * The source stream, copied to the cache as it is read; the copy is kept only if the source is read to its end,
+     * and given up as soon as an object of unknown length grows past the largest one cached
+     *
+     * @param length object length, -1 when unknown
+     */
+    public InputStream readThrough(String bucket, String objectKey, InputStream source, long length) {
+        if (!enabled || length > maxObjectSize()) {
+            return source;
+        }
+
+        String name = fileName(bucket, objectKey);
+        try {
+            Path temp = Files.createTempFile(root, name + "-", TEMP_SUFFIX);
+            return new ReadThroughInputStream(source, name, temp, length, maxObjectSize());
+        } catch (IOException e) {
+            log.warn("Storage cache entry {} not created: {}", name, e.getMessage());
+            return source;
+        }
+    }
+
+    /**
+     * Drop an object whose key was written again
+     */
+    public void invalidate(String bucket, String objectKey) {
+        if (!enabled) {
+            return;
+        }
+
+        String name = fileName(bucket, objectKey);
+        synchronized (this) {
+            Long removed = entries.remove(name);
+            if (removed == null) {
+                return;
+            }
+            size -= removed;
+        }
+        delete(root.resolve(name));
+    }
+
+    private void commit(String name, Path temp, long length) {
+        try {
+            Files.move(temp, root.resolve(name), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Storage cache entry {} not stored: {}", name, e.getMessage());
+            delete(temp);
+            return;
+        }
+
+        synchronized (this) {
+            Long previous = entries.put(name, length);
+            size += length - (previous != null ? previous : 0);
+            evict();
+        }
+    }
+
+    /**
+     * Remove the least recently used entries until the cache fits; called holding the lock
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (size > maxSize && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            eldest.remove();
+            size -= entry.getValue();
+            delete(root.resolve(entry.getKey()));
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Register the entries left by a previous run, oldest first, and discard incomplete ones
+     */
+    private void load() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(root)) {
+            files = listing.filter(Files::isRegularFile).toList();
+        }
+
+        List<Path> complete = files.stream()
+                .filter(file -> {
+                    if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                        delete(file);
+                        return false;
+                    }
+                    return true;
+                })
+                .sorted(Comparator.comparing(StorageDiskCache::lastModified))
+                .toList();
+
+        synchronized (this) {
+            for (Path file : complete) {
+                long length = Files.size(file);
+                entries.put(file.getFileName().toString(), length);
+                size += length;
+            }
+            evict();
+        }
+    }
+
+    private long maxObjectSize() {
+        return Math.min(maxObjectMb * MB, maxSize);
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Storage cache file {} not deleted: {}", file, e.getMessage());
+        }
+    }
+
+    private static String fileName(String bucket, String objectKey) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest((bucket + "/" + objectKey).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A cached file. {@link #transferTo(OutputStream)} goes through {@link FileChannel#transferTo}, which the kernel
+     * copies directly only when the target is a file or socket channel; other streams, wrapped by
+     * {@link Channels#newChannel}, still receive the bytes through a user-space buffer
+     */
+    private static final class FileChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+
+        private FileChannelInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.max(0, Math.min(n, channel.size() - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, channel.size() - position));
+        }
+
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            WritableByteChannel target = Channels.newChannel(out);
+            long end = channel.size();
+            long start = position;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, target);
+            }
+            return position - start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Copies what is read to a temporary file, committed to the cache at the end of the source
+     */
+    private final class ReadThroughInputStream extends FilterInputStream {
+
+        private final String name;
+        private final Path temp;
+        private final long length;
+        private final long maxLength;
+        private OutputStream copy;
+        private long copied = 0;
+
+        private ReadThroughInputStream(InputStream source, String name, Path temp, long length, long maxLength)
+                throws IOException {
+            super(source);
+            this.name = name;
+            this.temp = temp;
+            this.length = length;
+            this.maxLength = maxLength;
+            this.copy = new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                append(b, off, read);
+            } else if (read == -1) {
+                complete();
+            }
+            return read;
+        }
+
+        /**
+         * Skipped bytes must be copied too, so they are read
+         */
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(n, 1))];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                abandon();
+            }
+        }
+
+        private void append(byte[] b, int off, int len) {
+            if (copy == null) {
+                return;
+            }
+            if (copied + len > maxLength) {
+                abandon();
+                return;
+            }
+            try {
+                copy.write(b, off, len);
+                copied += len;
+            } catch (IOException e) {
+                log.warn("Storage cache entry {} not copied: {}", name, e.getMessage());
+                abandon();
+            }
+        }
+
+        private void complete() {
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.close();
+                copy = null;
+            } catch (IOException e) {
+                abandon();
+                return;
+            }
+            if (length >= 0 && copied != length) {
+                delete(temp);
+                return;
+            }
+            commit(name, temp, copied);
+        }
+
+        /**
+         * Give up on the copy, e.g. when the reader stops before the end
+         */
+        private void abandon() {
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.close();
+            } catch (IOException ignored) {
+            }
+            copy = null;
+            delete(temp);
+        }
+    }
+}
@@ -4,6 +4,10 @@ import it.aredegalli.printer.dto.storage.UploadResult;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
 
 public interface StorageService {
     /**
@@ -14,8 +18,94 @@ public interface StorageService {
                         String contentType,
                         String bucket) throws IOException;
 
+    /**
+     * Like {@link #upload(InputStream, long, String, String)} for content already in a local file, read from there
+     */
+    UploadResult upload(Path file,
+                        String contentType,
+                        String bucket) throws IOException;
+
+    /**
+     * Stores the stream gzip-compressed in independent members, keyed by the hash of the uncompressed content,
+     * with the member table next to it so the content can later be read from any offset.
+     */
+    UploadResult uploadCompressed(InputStream data,
+                                  String contentType,
+                                  String bucket);
+
     /**
      * Ritorna uno InputStream dei dati salvati con quella chiave.
      */
     InputStream download(String bucket, String objectKey);
+
+    /**
+     * Stream of the object from the given byte offset to its end, without reading what precedes it.
+     */
+    InputStream download(String bucket, String objectKey, long fromOffset);
+
+    /**
+     * Decoded content of an object stored with the given content encoding, or as is without one,
+     * from the given offset of the decoded content.
+     */
+    InputStream download(String bucket, String objectKey, String contentEncoding, long fromOffset);
+
+    /**
+     * {@code length} bytes of the decoded content from the given offset, reading only the stored bytes holding them
+     */
+    InputStream download(String bucket, String objectKey, String contentEncoding, long fromOffset, long length);
+
+    /**
+     * Short-lived URL reading the object as stored straight from object storage, sent as an attachment with the
+     * given name and content encoding; empty when direct downloads are disabled.
+     */
+    Optional<URI> presignDownload(String bucket, String objectKey, String fileName, String contentEncoding);
+
+    /**
+     * Signed URL for a client to upload content of the given size and SHA-256 to a staging key itself;
+     * empty when direct uploads are disabled.
+     */
+    Optional<PresignedUpload> presignUpload(String bucket, long size, byte[] hashBytes, String contentType);
+
+    /**
+     * Checks that the staged object has the announced size and hash and stores it under its hash key,
+     * like {@link #upload(InputStream, long, String, String)} would have.
+     */
+    UploadResult finalizeUpload(String bucket, String stagingKey, long size, byte[] hashBytes);
+
+    /**
+     * Multipart upload to a staging key, for content received in parts, possibly over several requests.
+     */
+    MultipartUpload startMultipartUpload(String bucket, String contentType);
+
+    /**
+     * Uploads a part, numbered from 1, again if it was uploaded before; returns its ETag.
+     */
+    String uploadPart(String bucket, MultipartUpload upload, int partNumber, byte[] data);
+
+    /**
+     * Assembles the parts, in order, checks the size and stores the object under its hash key, computed
+     * from the stored object when not given, like {@link #upload(InputStream, long, String, String)} would have.
+     */
+    UploadResult completeMultipartUpload(String bucket, MultipartUpload upload, List<String> partETags,
+                                         long size, byte[] hashBytes);
+
+    /**
+     * Drops the parts of an upload that will not be completed.
+     */
+    void abortMultipartUpload(String bucket, MultipartUpload upload);
+
+    /**
+     * Member table of an object stored by {@link #uploadCompressed}.
+     */
+    GzipMembers gzipMembers(String bucket, String objectKey);
+
+    /**
+     * Stores a small object under a caller-chosen key, e.g. data derived from a stored file.
+     */
+    void put(String bucket, String objectKey, byte[] data, String contentType);
+
+    /**
+     * Whether an object exists under that key.
+     */
+    boolean exists(String bucket, String objectKey);
 }
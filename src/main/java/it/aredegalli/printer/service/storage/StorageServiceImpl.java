@@ -1,21 +1,57 @@
 package it.aredegalli.printer.service.storage;
 
+import it.aredegalli.common.exception.BadRequestException;
+import it.aredegalli.common.exception.NotFoundException;
 import it.aredegalli.printer.dto.storage.UploadResult;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.ChecksumMode;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
 import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
 
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.security.DigestInputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.IntStream;
 
 /**
  * Servizio che gestisce l'upload e il download su storage S3/MinIO,
@@ -25,90 +61,582 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class StorageServiceImpl implements StorageService {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int IN_MEMORY_UPLOAD_LIMIT = 4 * 1024 * 1024;
+    private static final String COMPRESSED_SUFFIX = ".gz";
+    private static final String MEMBERS_SUFFIX = ".gzi";
+    private static final int MEMBER_TABLE_CACHE_SIZE = 256;
+    private static final String STAGING_PREFIX = "staging/";
+
     private final S3Client s3Client;
+    private final S3Presigner s3Presigner;
+    private final StorageDiskCache diskCache;
+
+    @Value("${slicing.spool.directory:${java.io.tmpdir}}")
+    private String spoolDirectory;
+
+    @Value("${storage.presigned-download.enabled:false}")
+    private boolean presignedDownloadEnabled;
+
+    @Value("${storage.presigned-download.expiration-seconds:300}")
+    private long presignedDownloadExpirationSeconds;
+
+    @Value("${storage.presigned-upload.enabled:false}")
+    private boolean presignedUploadEnabled;
+
+    @Value("${storage.presigned-upload.expiration-seconds:3600}")
+    private long presignedUploadExpirationSeconds;
+
+    @Value("${storage.presigned-upload.max-size-mb:1024}")
+    private long presignedUploadMaxSizeMb;
 
+    /**
+     * Member tables of compressed objects, by bucket and key; every ranged read of one needs it
+     */
+    private final Map<String, GzipMembers> memberTables = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, GzipMembers> eldest) {
+            return size() > MEMBER_TABLE_CACHE_SIZE;
+        }
+    });
+
+    /**
+     * The content is hashed while it is buffered, in memory when small and in a local file otherwise,
+     * so it is written once under its hash key, or not at all when an object with that key already exists.
+     */
     @Override
     public UploadResult upload(InputStream data,
                                long size,
                                String contentType,
                                String bucket) {
-        byte[] hashBytes;
-        String hashHex;
-        String tempKey = UUID.randomUUID().toString();
-
+        Path spool = null;
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
-            DigestInputStream dis = new DigestInputStream(data, md);
+            byte[] content = null;
+            long length = 0;
 
-            PipedOutputStream pos = new PipedOutputStream();
-            PipedInputStream pis = new PipedInputStream(pos, 8 * 1024);
+            if (size >= 0 && size <= IN_MEMORY_UPLOAD_LIMIT) {
+                content = data.readNBytes((int) size + 1);
+                md.update(content);
+                length = content.length;
+            } else {
+                spool = createSpool(".tmp");
+                try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(spool), BUFFER_SIZE)) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = data.read(buffer)) != -1) {
+                        md.update(buffer, 0, read);
+                        file.write(buffer, 0, read);
+                        length += read;
+                    }
+                }
+            }
+            if (size >= 0 && length != size) {
+                throw new IOException("Dimensione dello stream inattesa: " + length + " invece di " + size);
+            }
 
-            Thread pump = getDigestThread(dis, pos);
+            return store(md.digest(), length, contentType, bucket,
+                    content != null ? RequestBody.fromBytes(content) : RequestBody.fromFile(spool));
+        } catch (Exception e) {
+            throw new RuntimeException("Errore durante l'upload dello stream", e);
+        } finally {
+            deleteSpool(spool);
+        }
+    }
+
+    @Override
+    public UploadResult upload(Path file, String contentType, String bucket) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            long length = 0;
+            try (InputStream in = Files.newInputStream(file)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    md.update(buffer, 0, read);
+                    length += read;
+                }
+            }
 
-            PutObjectRequest tempPut = PutObjectRequest.builder()
+            return store(md.digest(), length, contentType, bucket, RequestBody.fromFile(file));
+        } catch (Exception e) {
+            throw new RuntimeException("Errore durante l'upload del file " + file, e);
+        }
+    }
+
+    private UploadResult store(byte[] hashBytes, long length, String contentType, String bucket, RequestBody body) {
+        String hashHex = HexFormat.of().formatHex(hashBytes);
+        if (!exists(bucket, hashHex)) {
+            PutObjectRequest putReq = PutObjectRequest.builder()
                     .bucket(bucket)
-                    .key(tempKey)
+                    .key(hashHex)
                     .contentType(contentType)
-                    .contentLength(size)
+                    .contentLength(length)
                     .build();
-            s3Client.putObject(tempPut, RequestBody.fromInputStream(pis, size));
+            s3Client.putObject(putReq, body);
+        }
+        return new UploadResult(hashHex, hashBytes, length, length, null);
+    }
 
-            pump.join();
-            hashBytes = md.digest();
-            StringBuilder sb = new StringBuilder(2 * hashBytes.length);
-            for (byte b : hashBytes) sb.append(String.format("%02x", b));
-            hashHex = sb.toString();
+    @Override
+    public UploadResult uploadCompressed(InputStream data, String contentType, String bucket) {
+        Path spool = null;
+        try {
+            // Compressed to a local file first: the object length and its hash key are known only at the end
+            spool = createSpool(".gz");
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            GzipMembers members;
+            try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(spool), BUFFER_SIZE)) {
+                GzipMembers.Writer gzip = new GzipMembers.Writer(file, GzipMembers.MEMBER_SIZE);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = data.read(buffer)) != -1) {
+                    md.update(buffer, 0, read);
+                    gzip.write(buffer, 0, read);
+                }
+                members = gzip.finish();
+            }
 
-            CopyObjectRequest copyReq = CopyObjectRequest.builder()
-                    .copySource(bucket + "/" + tempKey)
-                    .destinationBucket(bucket)
-                    .destinationKey(hashHex)
-                    .build();
-            s3Client.copyObject(copyReq);
+            byte[] hashBytes = md.digest();
+            String objectKey = HexFormat.of().formatHex(hashBytes) + COMPRESSED_SUFFIX;
 
-            DeleteObjectRequest delReq = DeleteObjectRequest.builder()
-                    .bucket(bucket)
-                    .key(tempKey)
-                    .build();
-            s3Client.deleteObject(delReq);
+            // Same key, same content: an object already stored is not written again
+            if (!exists(bucket, objectKey + MEMBERS_SUFFIX)) {
+                PutObjectRequest putReq = PutObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(objectKey)
+                        .contentType(contentType)
+                        .contentEncoding(GzipMembers.ENCODING)
+                        .contentLength(members.getCompressedSize())
+                        .build();
+                s3Client.putObject(putReq, RequestBody.fromFile(spool));
+                put(bucket, objectKey + MEMBERS_SUFFIX, members.toBytes(), "application/octet-stream");
+            }
+            memberTables.put(bucket + "/" + objectKey, members);
 
+            return new UploadResult(objectKey, hashBytes, members.getSize(), members.getCompressedSize(), GzipMembers.ENCODING);
         } catch (Exception e) {
-            throw new RuntimeException("Errore durante l'upload dello stream", e);
+            throw new RuntimeException("Errore durante l'upload compresso dello stream", e);
+        } finally {
+            deleteSpool(spool);
         }
+    }
 
-        return new UploadResult(hashHex, hashBytes);
+    /**
+     * Spool file in the configured spool directory, which may be a larger disk than the system temp directory
+     */
+    private Path createSpool(String suffix) throws IOException {
+        Path directory = Path.of(spoolDirectory);
+        Files.createDirectories(directory);
+        return Files.createTempFile(directory, "upload-", suffix);
     }
 
-    private static Thread getDigestThread(DigestInputStream dis, PipedOutputStream pos) {
-        Thread pump = new Thread(() -> {
-            byte[] buffer = new byte[4 * 1024];
-            int read;
+    private static void deleteSpool(Path spool) {
+        if (spool != null) {
             try {
-                while ((read = dis.read(buffer)) != -1) {
-                    pos.write(buffer, 0, read);
-                }
-            } catch (Exception ignored) {
-            } finally {
-                try {
-                    pos.close();
-                } catch (Exception ignored) {
-                }
-                try {
-                    dis.close();
-                } catch (Exception ignored) {
-                }
+                Files.deleteIfExists(spool);
+            } catch (IOException ignored) {
             }
-        }, "s3-hash-pump");
-        pump.start();
-        return pump;
+        }
     }
 
+    /**
+     * Served from the local disk cache when there, otherwise read from storage and cached on the way
+     */
     @Override
     public InputStream download(String bucket, String objectKey) {
+        InputStream cached = diskCache.open(bucket, objectKey, 0);
+        if (cached != null) {
+            return cached;
+        }
+
         GetObjectRequest getReq = GetObjectRequest.builder()
                 .bucket(bucket)
                 .key(objectKey)
                 .build();
+        ResponseInputStream<GetObjectResponse> in = s3Client.getObject(getReq);
+        Long length = in.response().contentLength();
+        return diskCache.readThrough(bucket, objectKey, in, length != null ? length : -1);
+    }
+
+    /**
+     * Ranged reads are served from the disk cache when the object is there, but do not fill it
+     */
+    @Override
+    public InputStream download(String bucket, String objectKey, long fromOffset) {
+        if (fromOffset <= 0) {
+            return download(bucket, objectKey);
+        }
+        InputStream cached = diskCache.open(bucket, objectKey, fromOffset);
+        if (cached != null) {
+            return cached;
+        }
+        GetObjectRequest getReq = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(objectKey)
+                .range("bytes=" + fromOffset + "-")
+                .build();
         return s3Client.getObject(getReq);
     }
-}
\ No newline at end of file
+
+    @Override
+    public InputStream download(String bucket, String objectKey, String contentEncoding, long fromOffset) {
+        if (contentEncoding == null) {
+            return download(bucket, objectKey, fromOffset);
+        }
+        if (!GzipMembers.ENCODING.equals(contentEncoding)) {
+            throw new IllegalArgumentException("Unsupported content encoding: " + contentEncoding);
+        }
+
+        GzipMembers members = gzipMembers(bucket, objectKey);
+        int member = members.memberAt(Math.max(0, fromOffset));
+        InputStream in = members.decompress(download(bucket, objectKey, members.compressedStart(member)), member);
+        try {
+            in.skipNBytes(Math.max(0, fromOffset - members.uncompressedStart(member)));
+            return in;
+        } catch (IOException e) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+            throw new UncheckedIOException("Errore durante la lettura dell'oggetto compresso", e);
+        }
+    }
+
+    @Override
+    public InputStream download(String bucket, String objectKey, String contentEncoding, long fromOffset, long length) {
+        if (contentEncoding == null) {
+            return downloadRange(bucket, objectKey, fromOffset, fromOffset + length);
+        }
+        if (!GzipMembers.ENCODING.equals(contentEncoding)) {
+            throw new IllegalArgumentException("Unsupported content encoding: " + contentEncoding);
+        }
+
+        // Only the members holding the range are fetched; the limit keeps the reader from asking for the next one
+        GzipMembers members = gzipMembers(bucket, objectKey);
+        int first = members.memberAt(Math.max(0, fromOffset));
+        int last = members.memberAt(Math.max(fromOffset, fromOffset + length - 1));
+        InputStream compressed = downloadRange(bucket, objectKey, members.compressedStart(first),
+                members.compressedStart(Math.min(last + 1, members.count())));
+        InputStream in = members.decompress(compressed, first);
+        try {
+            in.skipNBytes(Math.max(0, fromOffset - members.uncompressedStart(first)));
+            return new LimitedInputStream(in, length);
+        } catch (IOException e) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+            throw new UncheckedIOException("Errore durante la lettura dell'oggetto compresso", e);
+        }
+    }
+
+    /**
+     * Stored bytes in [from, to), from the disk cache when the object is there
+     */
+    private InputStream downloadRange(String bucket, String objectKey, long from, long to) {
+        InputStream cached = diskCache.open(bucket, objectKey, from);
+        if (cached != null) {
+            return new LimitedInputStream(cached, to - from);
+        }
+        GetObjectRequest getReq = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(objectKey)
+                .range("bytes=" + from + "-" + (to - 1))
+                .build();
+        return s3Client.getObject(getReq);
+    }
+
+    @Override
+    public Optional<URI> presignDownload(String bucket, String objectKey, String fileName, String contentEncoding) {
+        if (!presignedDownloadEnabled) {
+            return Optional.empty();
+        }
+
+        GetObjectRequest.Builder getReq = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(objectKey)
+                .responseContentType("application/octet-stream")
+                .responseContentDisposition("attachment; filename=\"" + fileName + "\"");
+        if (contentEncoding != null) {
+            getReq.responseContentEncoding(contentEncoding);
+        }
+        GetObjectPresignRequest presignReq = GetObjectPresignRequest.builder()
+                .signatureDuration(Duration.ofSeconds(presignedDownloadExpirationSeconds))
+                .getObjectRequest(getReq.build())
+                .build();
+        return Optional.of(URI.create(s3Presigner.presignGetObject(presignReq).url().toString()));
+    }
+
+    /**
+     * Size, type and checksum are signed, so object storage refuses a PUT of any other content
+     */
+    @Override
+    public Optional<PresignedUpload> presignUpload(String bucket, long size, byte[] hashBytes, String contentType) {
+        if (!presignedUploadEnabled) {
+            return Optional.empty();
+        }
+        if (size <= 0 || size > presignedUploadMaxSizeMb * 1024 * 1024) {
+            throw new BadRequestException("Dimensione dell'upload non ammessa: " + size);
+        }
+
+        String objectKey = STAGING_PREFIX + UUID.randomUUID();
+        PutObjectRequest putReq = PutObjectRequest.builder()
+                .bucket(bucket)
+                .key(objectKey)
+                .contentType(contentType)
+                .contentLength(size)
+                .checksumSHA256(Base64.getEncoder().encodeToString(hashBytes))
+                .build();
+        PresignedPutObjectRequest presigned = s3Presigner.presignPutObject(PutObjectPresignRequest.builder()
+                .signatureDuration(Duration.ofSeconds(presignedUploadExpirationSeconds))
+                .putObjectRequest(putReq)
+                .build());
+
+        // Host and length are set by any HTTP client on its own
+        Map<String, String> headers = new LinkedHashMap<>();
+        presigned.signedHeaders().forEach((name, values) -> {
+            if (!name.equalsIgnoreCase("host") && !name.equalsIgnoreCase("content-length")) {
+                headers.put(name, String.join(",", values));
+            }
+        });
+        return Optional.of(new PresignedUpload(objectKey, URI.create(presigned.url().toString()), headers, presigned.expiration()));
+    }
+
+    /**
+     * The checksum object storage verified on the PUT is trusted when it reports one; otherwise the staged
+     * content is read and hashed here. The staged object is removed once stored or rejected.
+     */
+    @Override
+    public UploadResult finalizeUpload(String bucket, String stagingKey, long size, byte[] hashBytes) {
+        HeadObjectResponse head;
+        try {
+            head = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(stagingKey)
+                    .checksumMode(ChecksumMode.ENABLED)
+                    .build());
+        } catch (NoSuchKeyException e) {
+            throw new BadRequestException("Upload non trovato: " + stagingKey);
+        }
+
+        if (head.contentLength() != size) {
+            deleteStaged(bucket, stagingKey);
+            throw new BadRequestException("Dimensione dell'upload inattesa: " + head.contentLength() + " invece di " + size);
+        }
+        byte[] stagedHash = head.checksumSHA256() != null
+                ? Base64.getDecoder().decode(head.checksumSHA256())
+                : hash(bucket, stagingKey);
+        if (!Arrays.equals(stagedHash, hashBytes)) {
+            deleteStaged(bucket, stagingKey);
+            throw new BadRequestException("Hash dell'upload non corrispondente: " + stagingKey);
+        }
+
+        return moveStaged(bucket, stagingKey, size, hashBytes);
+    }
+
+    @Override
+    public MultipartUpload startMultipartUpload(String bucket, String contentType) {
+        String objectKey = STAGING_PREFIX + UUID.randomUUID();
+        String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(objectKey)
+                .contentType(contentType)
+                .build()).uploadId();
+        return new MultipartUpload(objectKey, uploadId);
+    }
+
+    @Override
+    public String uploadPart(String bucket, MultipartUpload upload, int partNumber, byte[] data) {
+        UploadPartRequest partReq = UploadPartRequest.builder()
+                .bucket(bucket)
+                .key(upload.objectKey())
+                .uploadId(upload.uploadId())
+                .partNumber(partNumber)
+                .contentLength((long) data.length)
+                .build();
+        return s3Client.uploadPart(partReq, RequestBody.fromBytes(data)).eTag();
+    }
+
+    /**
+     * Without a hash, e.g. when the parts were not all seen by this node, the completed object is read and hashed here.
+     * An upload already completed by an earlier call that failed afterwards is finished from the object it left.
+     */
+    @Override
+    public UploadResult completeMultipartUpload(String bucket, MultipartUpload upload, List<String> partETags,
+                                                long size, byte[] hashBytes) {
+        List<CompletedPart> parts = IntStream.range(0, partETags.size())
+                .mapToObj(i -> CompletedPart.builder().partNumber(i + 1).eTag(partETags.get(i)).build())
+                .toList();
+        try {
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(upload.objectKey())
+                    .uploadId(upload.uploadId())
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (NoSuchUploadException e) {
+            if (!exists(bucket, upload.objectKey())) {
+                throw new NotFoundException("Upload non più disponibile: " + upload.objectKey());
+            }
+        }
+
+        long length = s3Client.headObject(HeadObjectRequest.builder()
+                .bucket(bucket)
+                .key(upload.objectKey())
+                .build()).contentLength();
+        if (length != size) {
+            deleteStaged(bucket, upload.objectKey());
+            throw new BadRequestException("Dimensione dell'upload inattesa: " + length + " invece di " + size);
+        }
+        return moveStaged(bucket, upload.objectKey(), size, hashBytes != null ? hashBytes : hash(bucket, upload.objectKey()));
+    }
+
+    @Override
+    public void abortMultipartUpload(String bucket, MultipartUpload upload) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(upload.objectKey())
+                    .uploadId(upload.uploadId())
+                    .build());
+        } catch (NoSuchUploadException ignored) {
+            // Already completed or aborted
+        }
+    }
+
+    /**
+     * Same key, same content: the verified staged object is moved within object storage, or dropped when already stored
+     */
+    private UploadResult moveStaged(String bucket, String stagingKey, long size, byte[] hashBytes) {
+        String hashHex = HexFormat.of().formatHex(hashBytes);
+        if (!exists(bucket, hashHex)) {
+            s3Client.copyObject(CopyObjectRequest.builder()
+                    .sourceBucket(bucket)
+                    .sourceKey(stagingKey)
+                    .destinationBucket(bucket)
+                    .destinationKey(hashHex)
+                    .build());
+        }
+        deleteStaged(bucket, stagingKey);
+        return new UploadResult(hashHex, hashBytes, size, size, null);
+    }
+
+    private void deleteStaged(String bucket, String stagingKey) {
+        s3Client.deleteObject(DeleteObjectRequest.builder()
+                .bucket(bucket)
+                .key(stagingKey)
+                .build());
+    }
+
+    private byte[] hash(String bucket, String objectKey) {
+        try (InputStream in = s3Client.getObject(GetObjectRequest.builder().bucket(bucket).key(objectKey).build())) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md.update(buffer, 0, read);
+            }
+            return md.digest();
+        } catch (Exception e) {
+            throw new RuntimeException("Errore durante la verifica dell'upload " + objectKey, e);
+        }
+    }
+
+    @Override
+    public GzipMembers gzipMembers(String bucket, String objectKey) {
+        String cacheKey = bucket + "/" + objectKey;
+        GzipMembers cached = memberTables.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        try (InputStream in = download(bucket, objectKey + MEMBERS_SUFFIX)) {
+            GzipMembers members = GzipMembers.read(in);
+            memberTables.put(cacheKey, members);
+            return members;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Tabella dei membri gzip non leggibile: " + objectKey, e);
+        }
+    }
+
+    @Override
+    public void put(String bucket, String objectKey, byte[] data, String contentType) {
+        PutObjectRequest putReq = PutObjectRequest.builder()
+                .bucket(bucket)
+                .key(objectKey)
+                .contentType(contentType)
+                .contentLength((long) data.length)
+                .build();
+        s3Client.putObject(putReq, RequestBody.fromBytes(data));
+        diskCache.invalidate(bucket, objectKey);
+    }
+
+    @Override
+    public boolean exists(String bucket, String objectKey) {
+        HeadObjectRequest headReq = HeadObjectRequest.builder()
+                .bucket(bucket)
+                .key(objectKey)
+                .build();
+        try {
+            s3Client.headObject(headReq);
+            return true;
+        } catch (NoSuchKeyException e) {
+            return false;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The first {@code remaining} bytes of a stream, closed with it
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private LimitedInputStream(InputStream in, long remaining) {
+            super(in);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package it.aredegalli.printer.service.slicing.analysis;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link GcodeAnalyzer} on synthetic Cura-style G-code.
+ * The {@code megabytes} secondary result is the scan rate in MB/s.
+ * Run through {@link #main(String[])} on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GcodeAnalyzerBenchmark {
+
+    @Param({"16"})
+    public int sizeMb;
+
+    private final GcodeAnalyzer analyzer = new GcodeAnalyzer();
+    private byte[] gcode;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void generate() {
+        // Derived metrics need the default material the container would inject
+        ReflectionTestUtils.setField(analyzer, "defaultDiameterMm", new BigDecimal("1.75"));
+        ReflectionTestUtils.setField(analyzer, "defaultDensityGCm3", new BigDecimal("1.25"));
+        ReflectionTestUtils.setField(analyzer, "defaultCostPerKg", new BigDecimal("25.0"));
+        gcode = syntheticGcode(sizeMb * 1_000_000L);
+    }
+
+    @Benchmark
+    public GcodeAnalyzer.GcodeMetrics analyze(Throughput throughput) throws IOException {
+        GcodeAnalyzer.GcodeMetrics metrics = analyzer.analyzeGcode(new ByteArrayInputStream(gcode));
+        throughput.megabytes += gcode.length / 1_000_000.0;
+        return metrics;
+    }
+
+    /**
+     * Concurrent callers share the singleton analyzer, as parallel slices do in production
+     */
+    @Benchmark
+    @Threads(4)
+    public GcodeAnalyzer.GcodeMetrics analyzeConcurrently(Throughput throughput) throws IOException {
+        return analyze(throughput);
+    }
+
+    static byte[] syntheticGcode(long targetBytes) {
+        StringBuilder sb = new StringBuilder((int) Math.min(targetBytes + 4096, Integer.MAX_VALUE - 8));
+        sb.append(";FLAVOR:Marlin\n;TIME:5400\n;Filament used: 4.2m\n;Layer height: 0.2\n")
+                .append("M82 ;absolute extrusion mode\nG28\nG92 E0\n");
+
+        double e = 0;
+        int layer = 0;
+        while (sb.length() < targetBytes) {
+            sb.append(";LAYER:").append(layer).append('\n')
+                    .append("G0 F9000 X10 Y10 Z").append(String.format(Locale.ROOT, "%.1f", 0.2 * (layer + 1))).append('\n')
+                    .append(layer % 5 == 0 ? ";TYPE:SUPPORT\n" : ";TYPE:WALL-OUTER\n");
+
+            for (int i = 0; i < 200; i++) {
+                e += 0.03125;
+                sb.append("G1 X").append(String.format(Locale.ROOT, "%.3f", 10 + (i % 50) * 1.7))
+                        .append(" Y").append(String.format(Locale.ROOT, "%.3f", 10 + (i / 50) * 2.3))
+                        .append(" E").append(String.format(Locale.ROOT, "%.5f", e)).append('\n');
+            }
+
+            sb.append("G1 F2700 E").append(String.format(Locale.ROOT, "%.5f", e - 6.5)).append('\n')
+                    .append("G1 F2700 E").append(String.format(Locale.ROOT, "%.5f", e)).append('\n');
+            layer++;
+        }
+
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GcodeAnalyzerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
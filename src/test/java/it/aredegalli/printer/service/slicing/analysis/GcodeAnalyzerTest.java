@@ -0,0 +1,150 @@
+package it.aredegalli.printer.service.slicing.analysis;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GcodeAnalyzerTest {
+
+    private static final long MB = 1024L * 1024L;
+
+    private final GcodeAnalyzer analyzer = new GcodeAnalyzer();
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(analyzer, "parallelism", 4);
+        ReflectionTestUtils.setField(analyzer, "parallelThresholdMb", 1L);
+        ReflectionTestUtils.setField(analyzer, "chunkSizeMb", 1L);
+        ReflectionTestUtils.setField(analyzer, "indexLineInterval", 1000);
+        ReflectionTestUtils.setField(analyzer, "defaultDiameterMm", new BigDecimal("1.75"));
+        ReflectionTestUtils.setField(analyzer, "defaultDensityGCm3", new BigDecimal("1.25"));
+        ReflectionTestUtils.setField(analyzer, "defaultCostPerKg", new BigDecimal("25.0"));
+        analyzer.init();
+    }
+
+    @AfterEach
+    void shutdown() {
+        analyzer.shutdown();
+    }
+
+    /**
+     * The parts of a file cut at layer starts, scanned in parallel and merged, give the same metrics and index
+     * as a single sequential pass, across extrusion mode switches, E resets and state changes between chunks
+     */
+    @Test
+    void parallelAnalysisMatchesSequential() throws IOException {
+        assertParallelMatchesSequential(multiPartGcode(6 * MB, true));
+    }
+
+    /**
+     * Without layer lines there is nowhere to cut a file without shifting its checkpoints, so it is scanned whole
+     */
+    @Test
+    void parallelAnalysisMatchesSequentialWithoutLayers() throws IOException {
+        assertParallelMatchesSequential(multiPartGcode(5 * MB, false));
+    }
+
+    private void assertParallelMatchesSequential(byte[] gcode) throws IOException {
+        Path file = Files.write(directory.resolve("model.gcode"), gcode);
+
+        GcodeAnalyzer.GcodeMetrics sequential = analyzer.analyzeGcode(new ByteArrayInputStream(gcode));
+        GcodeAnalyzer.GcodeMetrics parallel = analyzer.analyzeFile(file);
+
+        assertTrue(sequential.totalExtrusion > 0);
+        assertEquals(sequential.layerCount, parallel.layerCount);
+        assertEquals(sequential.estimatedPrintTimeMinutes, parallel.estimatedPrintTimeMinutes);
+        assertEquals(sequential.layerHeight, parallel.layerHeight);
+        assertEquals(sequential.totalExtrusion, parallel.totalExtrusion);
+        assertEquals(sequential.supportExtrusion, parallel.supportExtrusion);
+        assertEquals(sequential.featureExtrusion, parallel.featureExtrusion);
+        assertEquals(sequential.filamentLengthMm, parallel.filamentLengthMm);
+        assertEquals(sequential.materialVolumeMm3, parallel.materialVolumeMm3);
+        assertEquals(sequential.materialWeightG, parallel.materialWeightG);
+        assertEquals(sequential.estimatedCost, parallel.estimatedCost);
+        assertEquals(sequential.supportVolumeMm3, parallel.supportVolumeMm3);
+
+        assertNotNull(sequential.index);
+        assertNotNull(parallel.index);
+        assertTrue(sequential.index.size() > 1);
+        assertEquals(gcode.length, sequential.index.getTotalBytes());
+        assertArrayEquals(sequential.index.toBytes(), parallel.index.toBytes());
+    }
+
+    /**
+     * Cura-style G-code that switches between absolute and relative extrusion, resets E and changes temperatures
+     * and fan speed, so that chunk boundaries fall while each of them is in effect; optionally without layer lines
+     */
+    private static byte[] multiPartGcode(long targetBytes, boolean layers) {
+        StringBuilder sb = new StringBuilder((int) targetBytes + 4096);
+        sb.append(";FLAVOR:Marlin\n;TIME:5400\n;Filament used: 4.2m\n;Layer height: 0.2\n")
+                .append("M140 S60\nM104 S210\nM190 S60\nM109 S210\nM82 ;absolute extrusion mode\nG28\nG92 E0\n");
+
+        double e = 0;
+        boolean relative = false;
+        int layer = 0;
+        while (sb.length() < targetBytes) {
+            if (layers) {
+                sb.append(";LAYER:").append(layer).append('\n');
+            }
+            sb.append(";TIME_ELAPSED:").append(String.format(Locale.ROOT, "%.3f", layer * 12.5)).append('\n')
+                    .append("G0 F9000 X10 Y10 Z").append(String.format(Locale.ROOT, "%.1f", 0.2 * (layer + 1))).append('\n');
+
+            if (layer == 1) {
+                sb.append("M106 S255\n");
+            }
+            if (layer % 40 == 0) {
+                sb.append("M104 S").append(205 + layer % 3).append('\n');
+            }
+            if (layer % 17 == 0) {
+                relative = !relative;
+                sb.append(relative ? "M83 ;relative extrusion mode\n" : "M82 ;absolute extrusion mode\nG92 E0\n");
+                e = 0;
+            } else if (!relative && layer % 7 == 0) {
+                sb.append("G92 E0\n");
+                e = 0;
+            }
+
+            String[] types = {";TYPE:WALL-OUTER\n", ";TYPE:WALL-INNER\n", ";TYPE:FILL\n", ";TYPE:SUPPORT\n"};
+            for (int section = 0; section < types.length; section++) {
+                sb.append(types[(section + layer) % types.length]);
+                for (int i = 0; i < 60; i++) {
+                    double delta = 0.03125 + (i % 4) * 0.00781;
+                    e += delta;
+                    sb.append("G1 X").append(String.format(Locale.ROOT, "%.3f", 10 + (i % 50) * 1.7))
+                            .append(" Y").append(String.format(Locale.ROOT, "%.3f", 10 + section * 2.3 + (i / 50) * 0.4))
+                            .append(" E").append(String.format(Locale.ROOT, "%.5f", relative ? delta : e)).append('\n');
+                }
+
+                // Retract and prime
+                if (relative) {
+                    sb.append("G1 F2700 E-6.5\nG1 F2700 E6.5\n");
+                } else {
+                    sb.append("G1 F2700 E").append(String.format(Locale.ROOT, "%.5f", e - 6.5)).append('\n')
+                            .append("G1 F2700 E").append(String.format(Locale.ROOT, "%.5f", e)).append('\n');
+                }
+            }
+            layer++;
+        }
+
+        sb.append("M140 S0\nM104 S0\nM107\nM84\n");
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
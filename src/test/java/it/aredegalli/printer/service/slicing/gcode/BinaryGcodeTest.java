@@ -0,0 +1,203 @@
+package it.aredegalli.printer.service.slicing.gcode;
+
+import it.aredegalli.printer.service.storage.GzipMembers;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryGcodeTest {
+
+    private static final List<String> EDGE_CASES = List.of(
+            "G0 F9000 X10 Y10 Z0.2",
+            "G1 X-0.5 Y-12.25 E-6.5",
+            "G1 X100.100 Y0.000 E0.00000",
+            "G1 E1.123456",
+            "G1 F1800",
+            "G1 X1.2345 Y2",
+            "G1 X1 X2",
+            "G1 X1 S3",
+            "G1 X1 ;comment",
+            "G1",
+            "G28",
+            "G92 E0",
+            "M104 S210",
+            ";TYPE:WALL-OUTER",
+            "");
+
+    /**
+     * Decoding gives back every line: moves with the same values, now in X Y Z E F order and with the
+     * fewest decimals, and every other line as it was; across several blocks and a forced block boundary
+     */
+    @Test
+    void roundTripsMoveByMove() throws IOException {
+        String source = gcode(8 * 1024 * 1024);
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("printer", "ender-3");
+        metadata.put("layers", "412");
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        BinaryGcodeWriter writer = new BinaryGcodeWriter(binary, metadata);
+        int split = source.indexOf("\n;LAYER:1\n") + 1;
+        byte[] bytes = source.getBytes(StandardCharsets.US_ASCII);
+        // Lines split across writes, a block closed in the middle of the file and an unterminated last line
+        writer.write(bytes, 0, split - 3);
+        writer.write(bytes, split - 3, 3);
+        writer.flushBlock();
+        writer.write(bytes, split, bytes.length - split);
+        writer.write("G1 X5 Y5".getBytes(StandardCharsets.US_ASCII));
+        writer.finish();
+
+        assertTrue(blocks(binary.toByteArray()) > 3);
+
+        String decoded;
+        try (BinaryGcodeReader reader = new BinaryGcodeReader(new ByteArrayInputStream(binary.toByteArray()))) {
+            decoded = new String(reader.readAllBytes(), StandardCharsets.US_ASCII);
+            assertEquals(metadata, reader.getMetadata());
+        }
+
+        String[] expected = (source + "G1 X5 Y5\n").split("\n", -1);
+        String[] actual = decoded.split("\n", -1);
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(normalize(expected[i]), actual[i], "line " + (i + 1));
+        }
+    }
+
+    /**
+     * Blocks of up to a gzip member's worth of records leave the file smaller than the gzipped text it sits next to
+     */
+    @Test
+    void smallerThanGzippedText() throws IOException {
+        byte[] source = gcode(4 * 1024 * 1024).getBytes(StandardCharsets.US_ASCII);
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        BinaryGcodeWriter writer = new BinaryGcodeWriter(binary, Map.of());
+        writer.write(source);
+        writer.finish();
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        GzipMembers.Writer gzip = new GzipMembers.Writer(text, GzipMembers.MEMBER_SIZE);
+        gzip.write(source);
+        gzip.finish();
+
+        assertTrue(binary.size() < text.size(), binary.size() + " >= " + text.size());
+    }
+
+    @Test
+    void rejectsCorruptedBlock() throws IOException {
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        BinaryGcodeWriter writer = new BinaryGcodeWriter(binary, Map.of());
+        writer.write(gcode(64 * 1024).getBytes(StandardCharsets.US_ASCII));
+        writer.finish();
+
+        byte[] corrupted = binary.toByteArray();
+        corrupted[corrupted.length / 2] ^= 0x10;
+
+        assertThrows(IOException.class, () -> {
+            try (InputStream reader = new BinaryGcodeReader(new ByteArrayInputStream(corrupted))) {
+                reader.readAllBytes();
+            }
+        });
+    }
+
+    /**
+     * The line the decoder is expected to give back: moves the writer keeps rewritten, anything else unchanged
+     */
+    private static String normalize(String line) {
+        if (!line.startsWith("G0 ") && !line.startsWith("G1 ")) {
+            return line;
+        }
+
+        String[] values = new String[BinaryGcode.AXES.length()];
+        for (String word : line.substring(3).split(" ", -1)) {
+            int axis = word.isEmpty() ? -1 : BinaryGcode.AXES.indexOf(word.charAt(0));
+            if (axis < 0 || values[axis] != null) {
+                return line;
+            }
+            BigDecimal value;
+            try {
+                value = new BigDecimal(word.substring(1));
+            } catch (NumberFormatException e) {
+                return line;
+            }
+            if (value.scale() > BinaryGcode.DECIMALS[axis]) {
+                return line;
+            }
+            values[axis] = value.signum() == 0 ? "0" : value.stripTrailingZeros().toPlainString();
+        }
+
+        StringBuilder move = new StringBuilder(line.substring(0, 2));
+        for (int axis = 0; axis < values.length; axis++) {
+            if (values[axis] != null) {
+                move.append(' ').append(BinaryGcode.AXES.charAt(axis)).append(values[axis]);
+            }
+        }
+        return move.toString();
+    }
+
+    private static int blocks(byte[] binary) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(binary));
+        BinaryGcode.readHeader(in);
+        int count = 0;
+        while (BinaryGcode.readBlock(in) != null) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Cura-style G-code with moves wandering over the bed, words in slicer order, retractions and the edge cases
+     */
+    private static String gcode(int targetChars) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(targetChars + 4096);
+        sb.append(";FLAVOR:Marlin\n;Layer height: 0.2\nM140 S60\nM104 S210\nG28\nG92 E0\n");
+        EDGE_CASES.forEach(line -> sb.append(line).append('\n'));
+
+        double x = 110;
+        double y = 110;
+        double e = 0;
+        int layer = 0;
+        while (sb.length() < targetChars) {
+            sb.append(";LAYER:").append(layer).append('\n')
+                    .append("G0 F9000 X").append(decimal(x, 3)).append(" Y").append(decimal(y, 3))
+                    .append(" Z").append(decimal(0.2 * (layer + 1), 3)).append('\n');
+            for (String type : new String[]{";TYPE:WALL-OUTER", ";TYPE:WALL-INNER", ";TYPE:FILL"}) {
+                sb.append(type).append("\nG1 F1800\n");
+                for (int i = 0; i < 300; i++) {
+                    double dx = (random.nextDouble() - 0.5) * 8;
+                    double dy = (random.nextDouble() - 0.5) * 8;
+                    x = Math.max(0, Math.min(220, x + dx));
+                    y = Math.max(0, Math.min(220, y + dy));
+                    e += Math.hypot(dx, dy) * 0.0332;
+                    sb.append("G1 X").append(decimal(x, 3)).append(" Y").append(decimal(y, 3))
+                            .append(" E").append(decimal(e, 5)).append('\n');
+                }
+                sb.append("G1 F2700 E").append(decimal(e - 6.5, 5)).append('\n')
+                        .append("G1 F2700 E").append(decimal(e, 5)).append('\n');
+            }
+            layer++;
+        }
+        sb.append("M140 S0\nM104 S0\nM84\n");
+        return sb.toString();
+    }
+
+    private static String decimal(double value, int decimals) {
+        return BigDecimal.valueOf(value).setScale(decimals, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+    }
+}